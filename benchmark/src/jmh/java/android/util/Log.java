@@ -0,0 +1,36 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package android.util;
+
+/**
+ * A no-op replacement for the Android framework's Log, which is unavailable on the desktop JVM. Only the methods
+ * used by the benchmarked code are implemented.
+ */
+public final class Log {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int ASSERT = 7;
+
+    private Log() {}
+
+    public static boolean isLoggable(final String tag, final int level) { return false; }
+
+    public static int v(final String tag, final String msg) { return 0; }
+    public static int v(final String tag, final String msg, final Throwable tr) { return 0; }
+    public static int d(final String tag, final String msg) { return 0; }
+    public static int d(final String tag, final String msg, final Throwable tr) { return 0; }
+    public static int i(final String tag, final String msg) { return 0; }
+    public static int i(final String tag, final String msg, final Throwable tr) { return 0; }
+    public static int w(final String tag, final String msg) { return 0; }
+    public static int w(final String tag, final String msg, final Throwable tr) { return 0; }
+    public static int w(final String tag, final Throwable tr) { return 0; }
+    public static int e(final String tag, final String msg) { return 0; }
+    public static int e(final String tag, final String msg, final Throwable tr) { return 0; }
+    public static int wtf(final String tag, final String msg) { return 0; }
+    public static int wtf(final String tag, final String msg, final Throwable tr) { return 0; }
+}
@@ -0,0 +1,54 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.mozilla.gecko.background.common.log.Logger;
+import org.mozilla.gecko.sync.repositories.domain.BookmarkRecord;
+import org.mozilla.gecko.sync.repositories.domain.BookmarkRecordFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Measures building the bookmarks tree from the decrypted raw records, which happens after every bookmarks download. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class BookmarksTreeBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int recordCount;
+
+    private List<BookmarkRecord> rawRecords;
+
+    @Setup
+    public void setUp() throws Exception {
+        Logger.stopLoggingToAll();
+        final FirefoxSyncConfig syncConfig = new FirefoxSyncConfig(null, SyncBenchmarkData.newCollectionKeys());
+        final byte[] responseBody = SyncBenchmarkData.newBookmarksResponseBody(recordCount);
+        rawRecords = SyncBaseResourceDelegate.<BookmarkRecord>responseBodyToRawRecords(syncConfig,
+                new ByteArrayInputStream(responseBody), SyncBenchmarkData.BOOKMARKS_COLLECTION, new BookmarkRecordFactory()).getRecords();
+    }
+
+    @Benchmark
+    public BookmarkFolder rawRecordsToBookmarksTree() {
+        // The tree wraps the raw records, rather than modifying them, so we can reuse them.
+        return FirefoxSyncBookmarks.SyncClientBookmarksResourceDelegate.rawRecordsToBookmarksTree(rawRecords);
+    }
+}
@@ -0,0 +1,74 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.mozilla.gecko.background.common.log.Logger;
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord;
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SyncBaseResourceDelegate#responseBodyToRawRecords}, i.e. everything we do with a collection response
+ * body once it's downloaded: streaming the records out of the body, decrypting them and creating the raw records.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ResponseBodyToRawRecordsBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int recordCount;
+
+    /** 1 decrypts on the calling thread; otherwise, see {@link ParallelRecordDecrypter}. */
+    @Param({"1", "4"})
+    public int decryptParallelism;
+
+    /** See {@link ParallelRecordDecrypter}; only has an effect when decrypting in parallel. */
+    @Param({"false", "true"})
+    public boolean preVerifyHMACs;
+
+    /** The number of records, in every thousand, whose HMACs are corrupted, like a partly tampered download. */
+    @Param({"0", "100"})
+    public int corruptPerMille;
+
+    private FirefoxSyncConfig syncConfig;
+    private byte[] responseBody;
+    private int expectedRecordCount;
+
+    @Setup
+    public void setUp() {
+        Logger.stopLoggingToAll();
+        final ParallelRecordDecrypter recordDecrypter = new ParallelRecordDecrypter(decryptParallelism,
+                ParallelRecordDecrypter.DEFAULT_CHUNK_SIZE, preVerifyHMACs);
+        syncConfig = new FirefoxSyncConfig(null, SyncBenchmarkData.newCollectionKeys(), recordDecrypter, null);
+        responseBody = SyncBenchmarkData.newHistoryResponseBody(recordCount, 5, corruptPerMille);
+        expectedRecordCount = recordCount - SyncBenchmarkData.corruptRecordCount(recordCount, corruptPerMille);
+    }
+
+    @Benchmark
+    public List<HistoryRecord> responseBodyToRawRecords() throws Exception {
+        final List<HistoryRecord> records = SyncBaseResourceDelegate.<HistoryRecord>responseBodyToRawRecords(syncConfig,
+                new ByteArrayInputStream(responseBody), SyncBenchmarkData.HISTORY_COLLECTION, new HistoryRecordFactory()).getRecords();
+        if (records.size() != expectedRecordCount) { throw new IllegalStateException("Failed to decrypt all records."); }
+        return records;
+    }
+}
@@ -0,0 +1,182 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.mozilla.apache.commons.codec.binary.Base64;
+import org.mozilla.gecko.sync.CollectionKeys;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.Utils;
+import org.mozilla.gecko.sync.crypto.CryptoException;
+import org.mozilla.gecko.sync.crypto.CryptoInfo;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
+
+import java.nio.charset.Charset;
+
+/**
+ * Generates synthetic Sync collections for the benchmarks. Everything is derived from fixed keys, IVs and timestamps,
+ * so every run benchmarks exactly the same bytes.
+ */
+public final class SyncBenchmarkData {
+
+    public static final String HISTORY_COLLECTION = "history";
+    public static final String BOOKMARKS_COLLECTION = "bookmarks";
+
+    /** The number of bookmarks in each generated folder. */
+    private static final int BOOKMARKS_PER_FOLDER = 20;
+    private static final long BASE_MODIFIED_MILLIS = 1500000000000L;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final KeyBundle KEY_BUNDLE = new KeyBundle(fixedBytes(32, 1), fixedBytes(32, 2));
+
+    private SyncBenchmarkData() {}
+
+    public static CollectionKeys newCollectionKeys() {
+        final CollectionKeys collectionKeys = new CollectionKeys();
+        collectionKeys.setDefaultKeyBundle(KEY_BUNDLE);
+        return collectionKeys;
+    }
+
+    /** @return the cleartext payload of a history record with the given number of visits. */
+    @SuppressWarnings("unchecked") // json-simple containers are raw types.
+    public static ExtendedJSONObject newHistoryPayload(final int index, final int visitCount) {
+        final JSONArray visits = new JSONArray();
+        for (int i = 0; i < visitCount; i++) {
+            final JSONObject visit = new JSONObject();
+            visit.put("date", (BASE_MODIFIED_MILLIS - i * 60000L) * 1000); // microseconds.
+            visit.put("type", 1L);
+            visits.add(visit);
+        }
+
+        final ExtendedJSONObject payload = new ExtendedJSONObject();
+        payload.put("id", guid(index));
+        payload.put("histUri", "https://www.example.com/articles/" + index + "?utm_source=benchmark");
+        payload.put("title", "Example article number " + index + " - The Example Times");
+        payload.put("visits", visits);
+        return payload;
+    }
+
+    /**
+     * @return the cleartext payload of a bookmarks record: every {@link #BOOKMARKS_PER_FOLDER}th record is a folder,
+     *         in the root folder, containing the bookmarks that follow it.
+     */
+    @SuppressWarnings("unchecked") // json-simple containers are raw types.
+    public static ExtendedJSONObject newBookmarkPayload(final int index, final int recordCount) {
+        final ExtendedJSONObject payload = new ExtendedJSONObject();
+        payload.put("id", guid(index));
+        final int folderIndex = index - index % BOOKMARKS_PER_FOLDER;
+        if (index == folderIndex) {
+            final JSONArray children = new JSONArray();
+            for (int i = index + 1; i < Math.min(index + BOOKMARKS_PER_FOLDER, recordCount); i++) {
+                children.add(guid(i));
+            }
+            payload.put("type", "folder");
+            payload.put("title", "Folder " + index);
+            payload.put("parentid", BookmarkFolder.ROOT_FOLDER_GUID);
+            payload.put("parentName", "");
+            payload.put("children", children);
+        } else {
+            payload.put("type", "bookmark");
+            payload.put("title", "Bookmark " + index);
+            payload.put("bmkUri", "https://www.example.com/bookmarks/" + index);
+            payload.put("parentid", guid(folderIndex));
+            payload.put("parentName", "Folder " + folderIndex);
+            payload.put("tags", new JSONArray());
+        }
+        return payload;
+    }
+
+    /** @return the encrypted payload for the given cleartext, as the server stores it. */
+    public static ExtendedJSONObject encryptPayload(final ExtendedJSONObject cleartextPayload, final int index) {
+        final CryptoInfo info;
+        try {
+            info = CryptoInfo.encrypt(cleartextPayload.toJSONString().getBytes(UTF_8), fixedBytes(16, index), KEY_BUNDLE);
+        } catch (final CryptoException e) {
+            throw new IllegalStateException("Unable to encrypt benchmark record.", e);
+        }
+
+        final ExtendedJSONObject encryptedPayload = new ExtendedJSONObject();
+        encryptedPayload.put("ciphertext", new String(Base64.encodeBase64(info.getMessage()), UTF_8));
+        encryptedPayload.put("IV", new String(Base64.encodeBase64(info.getIV()), UTF_8));
+        encryptedPayload.put("hmac", Utils.byte2Hex(info.getHMAC()));
+        return encryptedPayload;
+    }
+
+    /** @return a record as it appears in a server response: its payload is an encrypted, JSON-encoded string. */
+    public static String newEncryptedRecordJSON(final ExtendedJSONObject cleartextPayload, final int index) {
+        return newEncryptedRecordJSON(cleartextPayload, index, false);
+    }
+
+    /** @param isHMACCorrupt true to corrupt the record's HMAC, like a tampered record, so it fails to decrypt. */
+    @SuppressWarnings("unchecked") // json-simple containers are raw types.
+    private static String newEncryptedRecordJSON(final ExtendedJSONObject cleartextPayload, final int index,
+            final boolean isHMACCorrupt) {
+        final ExtendedJSONObject encryptedPayload = encryptPayload(cleartextPayload, index);
+        if (isHMACCorrupt) {
+            final String hmac = encryptedPayload.getString("hmac");
+            encryptedPayload.put("hmac", (hmac.charAt(0) == '0' ? '1' : '0') + hmac.substring(1));
+        }
+
+        final ExtendedJSONObject record = new ExtendedJSONObject();
+        record.put("id", guid(index));
+        record.object.put("modified", Utils.millisecondsToDecimalSeconds(BASE_MODIFIED_MILLIS - index * 10L));
+        record.put("payload", encryptedPayload.toJSONString());
+        return record.toJSONString();
+    }
+
+    /** @return the UTF-8 body of a "full=1" response for a history collection of the given size. */
+    public static byte[] newHistoryResponseBody(final int recordCount, final int visitsPerRecord) {
+        return newHistoryResponseBody(recordCount, visitsPerRecord, 0);
+    }
+
+    /**
+     * @param corruptPerMille The number of records at the start of every thousand whose HMACs are corrupted: see
+     *                        {@link #corruptRecordCount(int, int)}.
+     */
+    public static byte[] newHistoryResponseBody(final int recordCount, final int visitsPerRecord, final int corruptPerMille) {
+        final StringBuilder body = new StringBuilder(recordCount * 1024).append('[');
+        for (int i = 0; i < recordCount; i++) {
+            if (i > 0) { body.append(','); }
+            body.append(newEncryptedRecordJSON(newHistoryPayload(i, visitsPerRecord), i, isCorrupt(i, corruptPerMille)));
+        }
+        return body.append(']').toString().getBytes(UTF_8);
+    }
+
+    /** @return the number of records with corrupt HMACs in a collection from {@link #newHistoryResponseBody(int, int, int)}. */
+    public static int corruptRecordCount(final int recordCount, final int corruptPerMille) {
+        int corruptCount = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (isCorrupt(i, corruptPerMille)) { corruptCount += 1; }
+        }
+        return corruptCount;
+    }
+
+    private static boolean isCorrupt(final int index, final int corruptPerMille) {
+        return index % 1000 < corruptPerMille;
+    }
+
+    /** @return the UTF-8 body of a "full=1" response for a bookmarks collection of the given size. */
+    public static byte[] newBookmarksResponseBody(final int recordCount) {
+        final StringBuilder body = new StringBuilder(recordCount * 768).append('[');
+        for (int i = 0; i < recordCount; i++) {
+            if (i > 0) { body.append(','); }
+            body.append(newEncryptedRecordJSON(newBookmarkPayload(i, recordCount), i));
+        }
+        return body.append(']').toString().getBytes(UTF_8);
+    }
+
+    private static String guid(final int index) {
+        return String.format("bench%07d", index); // Sync guids are 12 characters.
+    }
+
+    private static byte[] fixedBytes(final int length, final int seed) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (seed * 31 + i * 7);
+        }
+        return bytes;
+    }
+}
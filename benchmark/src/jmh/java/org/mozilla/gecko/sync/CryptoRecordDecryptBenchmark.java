@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import org.mozilla.fxa_data.download.SyncBenchmarkData;
+import org.mozilla.gecko.background.common.log.Logger;
+import org.mozilla.gecko.sync.crypto.KeyBundleDecrypter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Measures {@link CryptoRecord#decrypt()} and its variants: HMAC verification, AES decryption and the parse of the cleartext. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CryptoRecordDecryptBenchmark {
+
+    /** The number of visits in the history record, which determines the payload size: ~200B to ~900B. */
+    @Param({"1", "20"})
+    public int visitCount;
+
+    private ExtendedJSONObject encryptedPayload;
+    private KeyBundleDecrypter decrypter;
+
+    @Setup
+    public void setUp() throws Exception {
+        Logger.stopLoggingToAll();
+        encryptedPayload = SyncBenchmarkData.encryptPayload(SyncBenchmarkData.newHistoryPayload(0, visitCount), 0);
+        decrypter = new KeyBundleDecrypter(SyncBenchmarkData.KEY_BUNDLE);
+    }
+
+    @Benchmark
+    public CryptoRecord decrypt() throws Exception {
+        // decrypt replaces the record's payload, rather than modifying it, so we can reuse the encrypted payload.
+        final CryptoRecord record = new CryptoRecord(encryptedPayload);
+        record.setKeyBundle(SyncBenchmarkData.KEY_BUNDLE);
+        return record.decrypt();
+    }
+
+    /** Decrypts with a reused decrypter, as the download path does, rather than creating the crypto objects per record. */
+    @Benchmark
+    public CryptoRecord decryptWithReusedDecrypter() throws Exception {
+        return new CryptoRecord(encryptedPayload).decrypt(decrypter);
+    }
+}
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import org.mozilla.fxa_data.download.SyncBenchmarkData;
+import org.mozilla.gecko.background.common.log.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the {@link ExtendedJSONObject} parses made for each downloaded record: the record envelope, its encrypted
+ * payload and, after decryption, the cleartext payload.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ExtendedJSONObjectParseBenchmark {
+
+    /** The number of visits in the history record, which determines the payload size: ~200B to ~900B. */
+    @Param({"1", "20"})
+    public int visitCount;
+
+    private String recordJSON;
+    private String encryptedPayloadJSON;
+    private byte[] cleartextPayloadUTF8;
+
+    @Setup
+    public void setUp() {
+        Logger.stopLoggingToAll();
+        final ExtendedJSONObject cleartextPayload = SyncBenchmarkData.newHistoryPayload(0, visitCount);
+        recordJSON = SyncBenchmarkData.newEncryptedRecordJSON(cleartextPayload, 0);
+        encryptedPayloadJSON = SyncBenchmarkData.encryptPayload(cleartextPayload, 0).toJSONString();
+        cleartextPayloadUTF8 = cleartextPayload.toJSONString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Benchmark
+    public ExtendedJSONObject parseRecord() throws Exception {
+        return new ExtendedJSONObject(recordJSON);
+    }
+
+    @Benchmark
+    public ExtendedJSONObject parseEncryptedPayload() throws Exception {
+        return new ExtendedJSONObject(encryptedPayloadJSON);
+    }
+
+    @Benchmark
+    public ExtendedJSONObject parseCleartextPayloadUTF8() throws Exception {
+        return ExtendedJSONObject.parseUTF8AsJSONObject(cleartextPayloadUTF8);
+    }
+}
@@ -0,0 +1,68 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.repositories.domain;
+
+import org.mozilla.fxa_data.download.SyncBenchmarkData;
+import org.mozilla.gecko.background.common.log.Logger;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a history record from its decrypted payload: by parsing the payload and initializing the record
+ * from it, or with a {@link RecordPayloadDecoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RecordPayloadDecoderBenchmark {
+
+    /** The number of visits in the history record, which determines the payload size: ~200B to ~900B. */
+    @Param({"1", "20"})
+    public int visitCount;
+
+    private final HistoryRecordFactory recordFactory = new HistoryRecordFactory();
+    private RecordPayloadDecoder payloadDecoder;
+
+    private CryptoRecord envelope;
+    private byte[] cleartextPayloadUTF8;
+
+    @Setup
+    public void setUp() {
+        Logger.stopLoggingToAll();
+        payloadDecoder = recordFactory.newPayloadDecoder();
+        final ExtendedJSONObject cleartextPayload = SyncBenchmarkData.newHistoryPayload(0, visitCount);
+        cleartextPayloadUTF8 = cleartextPayload.toJSONString().getBytes(Charset.forName("UTF-8"));
+        envelope = new CryptoRecord(cleartextPayload);
+        envelope.guid = cleartextPayload.getString("id");
+    }
+
+    @Benchmark
+    public Record createRecordFromParsedPayload() throws Exception {
+        envelope.payload = ExtendedJSONObject.parseUTF8AsJSONObject(cleartextPayloadUTF8);
+        return recordFactory.createRecord(envelope);
+    }
+
+    @Benchmark
+    public Record decodeRecord() throws Exception {
+        return payloadDecoder.decode(envelope, cleartextPayloadUTF8);
+    }
+}
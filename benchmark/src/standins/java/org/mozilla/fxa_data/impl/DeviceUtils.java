@@ -0,0 +1,19 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.impl;
+
+import android.content.Context;
+
+/**
+ * A replacement for the download module's DeviceUtils, which reads a resource from the gecko module's generated R
+ * class: the benchmark doesn't compile the library modules' resources. The benchmarked code never calls it.
+ */
+public class DeviceUtils {
+    private DeviceUtils() {}
+
+    public static void init(final Context context) {}
+
+    public static boolean isTablet() { return false; }
+}
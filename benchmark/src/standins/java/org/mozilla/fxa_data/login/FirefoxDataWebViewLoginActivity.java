@@ -0,0 +1,21 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.login;
+
+import android.app.Activity;
+
+/**
+ * A replacement for the download module's login Activity, which depends on appcompat and the gecko module's generated
+ * R class: only the constants referenced by the rest of the module are kept. The benchmarked code never calls it.
+ */
+public class FirefoxDataWebViewLoginActivity extends Activity {
+    static final String EXTRA_DEBUG_ACCOUNT_CONFIG = "org.mozilla.sync.login.extra.debug-account-config";
+    static final String EXTRA_APPLICATION_NAME = "org.mozilla.sync.login.extra.application-name";
+
+    static final String ACTION_WEB_VIEW_LOGIN_RETURN = "org.mozilla.sync.login.action.web-view-login-return";
+    static final String EXTRA_ACCOUNT = "org.mozilla.sync.login.extra.account";
+    static final String EXTRA_FAILURE_REASON = "org.mozilla.sync.login.extra.failure-reason";
+    static final int RESULT_ERROR = -2; // CANCELED (0) & OK (-1) on Activity super class.
+}
@@ -7,6 +7,7 @@ package org.mozilla.fxa_data.download;
 import android.support.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -20,6 +21,10 @@ public class BookmarkFolder extends BookmarkBase {
     private final List<BookmarkFolder> subfolders = new ArrayList<>(); // will mutate the list to populate.
     private final List<BookmarkRecord> bookmarks = new ArrayList<>(); // will mutate the list to populate.
 
+    // Identical calls share their results, e.g. when two threads get all bookmarks at once, so callers can't modify them.
+    private final List<BookmarkFolder> unmodifiableSubfolders = Collections.unmodifiableList(subfolders);
+    private final List<BookmarkRecord> unmodifiableBookmarks = Collections.unmodifiableList(bookmarks);
+
     BookmarkFolder(@NonNull final org.mozilla.gecko.sync.repositories.domain.BookmarkRecord bookmarkRecord) {
         super(bookmarkRecord);
     }
@@ -28,13 +33,17 @@ public class BookmarkFolder extends BookmarkBase {
      * Returns an immutable list of bookmark folders inside this folder.
      * @return a list of bookmark folders, or an empty list if there are no items.
      */
-    @NonNull public List<BookmarkFolder> getSubfolders() { return subfolders; }
+    @NonNull public List<BookmarkFolder> getSubfolders() { return unmodifiableSubfolders; }
 
     /**
      * Returns an immutable list of bookmarks inside this folder.
      * @return a list of bookmarks, or an empty list if there are no items.
      * */
-    @NonNull public List<BookmarkRecord> getBookmarks() { return bookmarks; }
+    @NonNull public List<BookmarkRecord> getBookmarks() { return unmodifiableBookmarks; }
+
+    void addSubfolder(@NonNull final BookmarkFolder folder) { subfolders.add(folder); }
+
+    void addBookmark(@NonNull final BookmarkRecord bookmark) { bookmarks.add(bookmark); }
 
     /** @return a folder representing the root folder. */
     static BookmarkFolder createRootFolder() {
@@ -20,11 +20,10 @@ import static org.mozilla.fxa_data.impl.FirefoxDataShared.LOGTAG;
  */
 public class BookmarkRecord extends BookmarkBase {
 
-    private final List<String> tags;
+    private List<String> tags; // Converted on first use: most callers don't use them.
 
     BookmarkRecord(@NonNull final org.mozilla.gecko.sync.repositories.domain.BookmarkRecord bookmarkRecord) {
         super(bookmarkRecord);
-        tags = tagsJSONToList(underlyingRecord.tags);
     }
 
     /**
@@ -40,10 +39,15 @@ public class BookmarkRecord extends BookmarkBase {
     @NonNull public String getKeyword() { return StringUtils.emptyStrIfNull(underlyingRecord.keyword); }
 
     /**
-     * Gets a list of tags the user has associated with this bookmark.
+     * Gets an immutable list of tags the user has associated with this bookmark.
      * @return a list of tags for this bookmark or an empty list if there are no tags.
      */
-    @NonNull public List<String> getTags() { return tags; }
+    @NonNull public synchronized List<String> getTags() {
+        if (tags == null) {
+            tags = tagsJSONToList(underlyingRecord.tags);
+        }
+        return tags;
+    }
 
     private static List<String> tagsJSONToList(@Nullable final JSONArray tags) {
         if (tags == null || tags.size() == 0) { return Collections.emptyList(); }
@@ -57,6 +61,6 @@ public class BookmarkRecord extends BookmarkBase {
 
             stringList.add((String) tagObj);
         }
-        return stringList;
+        return Collections.unmodifiableList(stringList);
     }
 }
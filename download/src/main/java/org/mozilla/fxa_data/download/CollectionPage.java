@@ -0,0 +1,29 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.Nullable;
+
+import java.util.List;
+
+/** A single page of records from a Sync collection, along with the offset to retrieve the next page. */
+class CollectionPage<R> {
+    final List<R> records;
+
+    /** The server-provided X-Weave-Next-Offset to pass as the "offset" of the next page or null if this is the last page. */
+    @Nullable final String nextOffset;
+
+    /**
+     * The server-provided X-Last-Modified of the collection when this page was retrieved, or null if the server didn't
+     * send it. The next pages are only valid if the collection is still unmodified.
+     */
+    @Nullable final String collectionLastModified;
+
+    CollectionPage(final List<R> records, @Nullable final String nextOffset, @Nullable final String collectionLastModified) {
+        this.records = records;
+        this.nextOffset = nextOffset;
+        this.collectionLastModified = collectionLastModified;
+    }
+}
@@ -0,0 +1,315 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact, read-only list of history entries, as returned by {@link FirefoxDataClient#getAllHistoryCompact()}.
+ *
+ * A {@link HistoryRecord} keeps the whole Sync record, and its visits, alive: a few objects and Strings per entry and
+ * a few more per visit. This list instead stores the same data in a handful of arrays: the URIs, as UTF-8, and the
+ * titles share one arena each and are found by their offsets, and the visit dates are stored in one long[] column.
+ * Large histories take a fraction of the memory and are cheap for the garbage collector to scan.
+ *
+ * The elements of this list are {@link Entry} flyweights that read from these arrays: the Strings they return are
+ * created on each call, so callers that need them repeatedly should keep them.
+ *
+ * The client caches the full history in this form, to fetch only the history that changed next time, and returns the
+ * cached instance: see {@link IncrementalHistoryCache}.
+ *
+ * This class is immutable and thread-safe.
+ */
+public class CompactHistory extends AbstractList<CompactHistory.Entry> implements RandomAccess {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final int size;
+
+    /** The Sync GUIDs as UTF-8: the GUID at index i is at [guidOffsets[i], guidOffsets[i + 1]). */
+    private final byte[] guidArena;
+    private final int[] guidOffsets;
+
+    /** The server last-modified times of the records, in milliseconds. */
+    private final long[] lastModifiedMillis;
+
+    /** The URIs as UTF-8: the URI at index i is at [uriOffsets[i], uriOffsets[i + 1]). */
+    private final byte[] uriArena;
+    private final int[] uriOffsets;
+
+    /** The titles: the title at index i is at [titleOffsets[i], titleOffsets[i + 1]). */
+    private final char[] titleArena;
+    private final int[] titleOffsets;
+
+    /**
+     * The visit dates, in microseconds, and types: the visits at index i are at [visitOffsets[i], visitOffsets[i + 1])
+     * of both.
+     */
+    private final long[] visitDates;
+    private final int[] visitTypes;
+    private final int[] visitOffsets;
+
+    private CompactHistory(final int size, final byte[] guidArena, final int[] guidOffsets, final long[] lastModifiedMillis,
+            final byte[] uriArena, final int[] uriOffsets, final char[] titleArena, final int[] titleOffsets,
+            final long[] visitDates, final int[] visitTypes, final int[] visitOffsets) {
+        this.size = size;
+        this.guidArena = guidArena;
+        this.guidOffsets = guidOffsets;
+        this.lastModifiedMillis = lastModifiedMillis;
+        this.uriArena = uriArena;
+        this.uriOffsets = uriOffsets;
+        this.titleArena = titleArena;
+        this.titleOffsets = titleOffsets;
+        this.visitDates = visitDates;
+        this.visitTypes = visitTypes;
+        this.visitOffsets = visitOffsets;
+    }
+
+    /** Creates a compact copy of the given records, in the same order. */
+    @NonNull
+    static CompactHistory fromRecords(@NonNull final List<HistoryRecord> records) {
+        final Builder builder = new Builder(records.size());
+        for (final HistoryRecord record : records) {
+            builder.add(record);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the records of this list, in the same order, as they were downloaded: the records only have the fields
+     * this list stores, which are the fields {@link HistoryRecord} exposes.
+     */
+    @NonNull
+    List<HistoryRecord> toRecords() {
+        final ArrayList<HistoryRecord> records = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final int visitStart = visitOffsets[i];
+            final int visitEnd = visitOffsets[i + 1];
+            final HistoryVisits visits = HistoryVisits.of(Arrays.copyOfRange(visitDates, visitStart, visitEnd),
+                    Arrays.copyOfRange(visitTypes, visitStart, visitEnd));
+            records.add(new HistoryRecord(LazyHistoryRecord.fromColumns(getGUID(i), lastModifiedMillis[i], getURI(i),
+                    getTitle(i), visits)));
+        }
+        return records;
+    }
+
+    @Override
+    public int size() { return size; }
+
+    @Override
+    public Entry get(final int index) {
+        checkIndex(index);
+        return new Entry(index);
+    }
+
+    /** @return the Sync GUID of the entry at the given index. */
+    @NonNull
+    String getGUID(final int index) {
+        checkIndex(index);
+        return new String(guidArena, guidOffsets[index], guidOffsets[index + 1] - guidOffsets[index], UTF_8);
+    }
+
+    /**
+     * The URI of the entry at the given index, as {@link HistoryRecord#getURI()} returns it.
+     * @return The URI of the visited page or the empty String if it does not exist.
+     */
+    @NonNull
+    public String getURI(final int index) {
+        checkIndex(index);
+        return new String(uriArena, uriOffsets[index], uriOffsets[index + 1] - uriOffsets[index], UTF_8);
+    }
+
+    /**
+     * The title of the entry at the given index, as {@link HistoryRecord#getTitle()} returns it.
+     * @return The title of the visited page or the empty String if it does not exist.
+     */
+    @NonNull
+    public String getTitle(final int index) {
+        checkIndex(index);
+        return new String(titleArena, titleOffsets[index], titleOffsets[index + 1] - titleOffsets[index]);
+    }
+
+    /** @return the number of visits of the entry at the given index. */
+    public int getVisitCount(final int index) {
+        checkIndex(index);
+        return visitOffsets[index + 1] - visitOffsets[index];
+    }
+
+    /**
+     * Returns the date of one visit of the entry at the given index, in the order the visits are stored in the Sync
+     * record.
+     * @return the date of the visit, in microseconds since the epoch.
+     */
+    public long getVisitDate(final int index, final int visitIndex) {
+        if (visitIndex < 0 || visitIndex >= getVisitCount(index)) {
+            throw new IndexOutOfBoundsException("Visit index: " + visitIndex + ", visit count: " + getVisitCount(index));
+        }
+        return visitDates[visitOffsets[index] + visitIndex];
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    /**
+     * A history entry, which represents a visited URI, as {@link HistoryRecord} does. It only holds its index in the
+     * {@link CompactHistory} it was retrieved from.
+     */
+    public class Entry {
+        private final int index;
+
+        private Entry(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * The title of the visited page.
+         * @return The title of the visited page or the empty String if it does not exist.
+         */
+        @NonNull public String getTitle() { return CompactHistory.this.getTitle(index); }
+
+        /**
+         * The URI of the visited page.
+         * @return The URI of the visited page or the empty String if it does not exist.
+         */
+        @NonNull public String getURI() { return CompactHistory.this.getURI(index); }
+
+        /** @return the number of visits to this page. */
+        public int getVisitCount() { return CompactHistory.this.getVisitCount(index); }
+
+        /** @return the date of the given visit to this page, in microseconds since the epoch. */
+        public long getVisitDate(final int visitIndex) { return CompactHistory.this.getVisitDate(index, visitIndex); }
+    }
+
+    /** Appends entries to growing columns, which are trimmed to size when the {@link CompactHistory} is built. */
+    static class Builder {
+        private int size = 0;
+
+        private byte[] guidArena;
+        private int guidArenaSize = 0;
+        private int[] guidOffsets;
+
+        private long[] lastModifiedMillis;
+
+        private byte[] uriArena;
+        private int uriArenaSize = 0;
+        private int[] uriOffsets;
+
+        private char[] titleArena;
+        private int titleArenaSize = 0;
+        private int[] titleOffsets;
+
+        private long[] visitDates;
+        private int[] visitTypes;
+        private int visitCount = 0;
+        private int[] visitOffsets;
+
+        Builder(final int expectedSize) {
+            // Typical URIs & titles are a few dozen characters: we start there and grow as needed. GUIDs are 12.
+            guidArena = new byte[Math.max(16, expectedSize * 12)];
+            guidOffsets = new int[expectedSize + 1];
+            lastModifiedMillis = new long[expectedSize];
+            uriArena = new byte[Math.max(16, expectedSize * 64)];
+            uriOffsets = new int[expectedSize + 1];
+            titleArena = new char[Math.max(16, expectedSize * 32)];
+            titleOffsets = new int[expectedSize + 1];
+            visitDates = new long[Math.max(16, expectedSize * 2)];
+            visitTypes = new int[visitDates.length];
+            visitOffsets = new int[expectedSize + 1];
+        }
+
+        /** Appends the given record. */
+        void add(final HistoryRecord record) {
+            final byte[] guid = StringUtils.emptyStrIfNull(record.underlyingRecord.guid).getBytes(UTF_8);
+            final byte[] uri = record.getURI().getBytes(UTF_8);
+            final String title = record.getTitle();
+            final char[] titleChars = title.toCharArray();
+            final HistoryVisits visits = record.visits;
+            append(guid, 0, guid.length, record.underlyingRecord.lastModified, uri, 0, uri.length,
+                    titleChars, 0, titleChars.length, visits.dates, visits.types, 0, visits.dates.length);
+        }
+
+        /** Appends the entry at the given index of the given history. */
+        void add(final CompactHistory history, final int index) {
+            history.checkIndex(index);
+            append(history.guidArena, history.guidOffsets[index], history.guidOffsets[index + 1] - history.guidOffsets[index],
+                    history.lastModifiedMillis[index],
+                    history.uriArena, history.uriOffsets[index], history.uriOffsets[index + 1] - history.uriOffsets[index],
+                    history.titleArena, history.titleOffsets[index], history.titleOffsets[index + 1] - history.titleOffsets[index],
+                    history.visitDates, history.visitTypes, history.visitOffsets[index],
+                    history.visitOffsets[index + 1] - history.visitOffsets[index]);
+        }
+
+        private void append(final byte[] guid, final int guidStart, final int guidLength, final long lastModified,
+                final byte[] uri, final int uriStart, final int uriLength,
+                final char[] title, final int titleStart, final int titleLength,
+                final long[] dates, final int[] types, final int visitStart, final int visitLength) {
+            if (size + 1 >= uriOffsets.length) {
+                final int newLength = uriOffsets.length * 2;
+                guidOffsets = Arrays.copyOf(guidOffsets, newLength);
+                lastModifiedMillis = Arrays.copyOf(lastModifiedMillis, newLength);
+                uriOffsets = Arrays.copyOf(uriOffsets, newLength);
+                titleOffsets = Arrays.copyOf(titleOffsets, newLength);
+                visitOffsets = Arrays.copyOf(visitOffsets, newLength);
+            }
+
+            guidArena = ensureCapacity(guidArena, guidArenaSize + guidLength);
+            System.arraycopy(guid, guidStart, guidArena, guidArenaSize, guidLength);
+            guidArenaSize += guidLength;
+
+            lastModifiedMillis[size] = lastModified;
+
+            uriArena = ensureCapacity(uriArena, uriArenaSize + uriLength);
+            System.arraycopy(uri, uriStart, uriArena, uriArenaSize, uriLength);
+            uriArenaSize += uriLength;
+
+            titleArena = ensureCapacity(titleArena, titleArenaSize + titleLength);
+            System.arraycopy(title, titleStart, titleArena, titleArenaSize, titleLength);
+            titleArenaSize += titleLength;
+
+            if (visitCount + visitLength > visitDates.length) {
+                final int newLength = Math.max(visitCount + visitLength, visitDates.length * 2);
+                visitDates = Arrays.copyOf(visitDates, newLength);
+                visitTypes = Arrays.copyOf(visitTypes, newLength);
+            }
+            System.arraycopy(dates, visitStart, visitDates, visitCount, visitLength);
+            System.arraycopy(types, visitStart, visitTypes, visitCount, visitLength);
+            visitCount += visitLength;
+
+            size += 1;
+            guidOffsets[size] = guidArenaSize;
+            uriOffsets[size] = uriArenaSize;
+            titleOffsets[size] = titleArenaSize;
+            visitOffsets[size] = visitCount;
+        }
+
+        CompactHistory build() {
+            return new CompactHistory(size,
+                    Arrays.copyOf(guidArena, guidArenaSize), Arrays.copyOf(guidOffsets, size + 1),
+                    Arrays.copyOf(lastModifiedMillis, size),
+                    Arrays.copyOf(uriArena, uriArenaSize), Arrays.copyOf(uriOffsets, size + 1),
+                    Arrays.copyOf(titleArena, titleArenaSize), Arrays.copyOf(titleOffsets, size + 1),
+                    Arrays.copyOf(visitDates, visitCount), Arrays.copyOf(visitTypes, visitCount),
+                    Arrays.copyOf(visitOffsets, size + 1));
+        }
+
+        private static byte[] ensureCapacity(final byte[] array, final int capacity) {
+            return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+
+        private static char[] ensureCapacity(final char[] array, final int capacity) {
+            return capacity <= array.length ? array : Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The records decrypted by {@link ParallelRecordDecrypter}, in the order they were read, and a count of the records
+ * that were skipped because they could not be decrypted.
+ *
+ * Callers must not treat a collection with skipped records as the full collection, e.g. by caching it: the skipped
+ * records would be missing until the collection changes on the server again.
+ *
+ * This class is not thread-safe: it's filled by a single thread, then handed off.
+ */
+class DecryptedRecords<R> {
+
+    private final ArrayList<R> records;
+    private int skippedRecordCount = 0;
+    private int hmacFailureCount = 0;
+
+    DecryptedRecords() {
+        this.records = new ArrayList<>();
+    }
+
+    DecryptedRecords(final int expectedRecordCount) {
+        this.records = new ArrayList<>(expectedRecordCount);
+    }
+
+    void add(final R record) {
+        records.add(record);
+    }
+
+    /** @param failedHMAC true if the record was skipped because its HMAC did not validate. */
+    void addSkipped(final boolean failedHMAC) {
+        skippedRecordCount += 1;
+        if (failedHMAC) {
+            hmacFailureCount += 1;
+        }
+    }
+
+    void addAll(final DecryptedRecords<R> other) {
+        records.addAll(other.records);
+        skippedRecordCount += other.skippedRecordCount;
+        hmacFailureCount += other.hmacFailureCount;
+    }
+
+    /** @return the decrypted records, in the order they were read; the list is owned by the caller. */
+    List<R> getRecords() { return records; }
+
+    int getSkippedRecordCount() { return skippedRecordCount; }
+
+    /** @return true if no records were skipped. */
+    boolean isComplete() { return skippedRecordCount == 0; }
+
+    /**
+     * @return true if there were records and every one of them failed HMAC verification. Records are tampered with or
+     * corrupted one at a time so this means they were encrypted with other keys than ours, i.e. the collection keys
+     * changed on the server.
+     */
+    boolean didAllRecordsFailHMAC() {
+        return records.isEmpty() && hmacFailureCount > 0 && hmacFailureCount == skippedRecordCount;
+    }
+}
@@ -0,0 +1,47 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.Nullable;
+
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * A container with the results of retrieving several collections at once with
+ * {@link FirefoxDataClient#getAll(EnumSet)}. Each collection has its own {@link FirefoxDataResult}, which is null if
+ * that collection was not requested.
+ */
+public class FirefoxDataBulkResult {
+    @Nullable private final FirefoxDataResult<BookmarkFolder> bookmarks;
+    @Nullable private final FirefoxDataResult<List<HistoryRecord>> history;
+    @Nullable private final FirefoxDataResult<List<PasswordRecord>> passwords;
+
+    FirefoxDataBulkResult(@Nullable final FirefoxDataResult<BookmarkFolder> bookmarks,
+            @Nullable final FirefoxDataResult<List<HistoryRecord>> history,
+            @Nullable final FirefoxDataResult<List<PasswordRecord>> passwords) {
+        this.bookmarks = bookmarks;
+        this.history = history;
+        this.passwords = passwords;
+    }
+
+    /**
+     * Returns the bookmarks, as returned by {@link FirefoxDataClient#getAllBookmarks()}.
+     * @return the bookmarks or null if {@link FirefoxDataCollection#BOOKMARKS} was not requested.
+     */
+    @Nullable public FirefoxDataResult<BookmarkFolder> getBookmarks() { return bookmarks; }
+
+    /**
+     * Returns the history, as returned by {@link FirefoxDataClient#getAllHistory()}.
+     * @return the history or null if {@link FirefoxDataCollection#HISTORY} was not requested.
+     */
+    @Nullable public FirefoxDataResult<List<HistoryRecord>> getHistory() { return history; }
+
+    /**
+     * Returns the passwords, as returned by {@link FirefoxDataClient#getAllPasswords()}.
+     * @return the passwords or null if {@link FirefoxDataCollection#PASSWORDS} was not requested.
+     */
+    @Nullable public FirefoxDataResult<List<PasswordRecord>> getPasswords() { return passwords; }
+}
@@ -0,0 +1,21 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import org.mozilla.fxa_data.FirefoxDataException;
+
+/**
+ * Callback for the asynchronous methods of {@link FirefoxDataClient}, e.g.
+ * {@link FirefoxDataClient#getAllHistoryAsync(FirefoxDataCallback)}.
+ *
+ * Exactly one of these methods will be called when the request completes, on a background thread. Neither will be
+ * called if the request is cancelled.
+ */
+public interface FirefoxDataCallback<T> {
+    @WorkerThread void onSuccess(@NonNull FirefoxDataResult<T> result);
+    @WorkerThread void onException(@NonNull FirefoxDataException e);
+}
@@ -10,13 +10,22 @@ import org.mozilla.fxa_data.FirefoxData;
 import org.mozilla.fxa_data.FirefoxDataException;
 import org.mozilla.fxa_data.login.FirefoxDataLoginManager;
 
+import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Future;
 
 /**
  * An interface which allows a caller to retrieve data associated with a Sync account.
  *
  * Retrieve an instance through {@link FirefoxDataLoginManager}, which
  * can be obtained from the primary {@link FirefoxData} entry point.
+ *
+ * Identical calls made while one is in progress, e.g. two {@link #getAllBookmarks()} calls from different threads,
+ * share its download and its {@link FirefoxDataResult}, so the results are immutable.
+ *
+ * If the user's Sync keys change on the server, the methods that download a collection throw
+ * {@link FirefoxDataKeysChangedException}: get a new client with {@link FirefoxDataLoginManager#loadStoredAccount}.
+ * Likewise, if the storage server rejects the client's token, they throw {@link FirefoxDataTokenRejectedException}.
  */
 public interface FirefoxDataClient {
 
@@ -83,6 +92,36 @@ public interface FirefoxDataClient {
     @NonNull @WorkerThread
     FirefoxDataResult<List<HistoryRecord>> getHistoryWithLimit(int itemLimit) throws FirefoxDataException;
 
+    /**
+     * Retrieves all the history entries a user has created from visiting pages, as {@link #getAllHistory()} does, in
+     * a compact form: the entries share a few large arrays rather than each being its own objects, so large histories
+     * use less memory and are cheaper for the garbage collector.
+     *
+     * The client keeps the full history in this form, to only download what changed on the next call, and returns it
+     * without copying it.
+     *
+     * This method is blocking and can time out.
+     *
+     * @return a container with the requested sync data; never null.
+     * @throws FirefoxDataException if there was an error retrieving the results.
+     */
+    @NonNull @WorkerThread
+    FirefoxDataResult<CompactHistory> getAllHistoryCompact() throws FirefoxDataException;
+
+    /**
+     * Opens a cursor to retrieve all the history entries a user has created from visiting pages, one page at a
+     * time. The results will be returned in most-recently visited to least-recently visited order.
+     *
+     * Unlike {@link #getAllHistory()}, the first results can be displayed before the full history is downloaded.
+     *
+     * This method does not make any network requests: they are made by {@link FirefoxDataCursor#nextPage()}.
+     *
+     * @param pageSize The maximum number of history items to retrieve in each page; must be > 0.
+     * @return a cursor positioned before the first page of history; never null.
+     */
+    @NonNull
+    FirefoxDataCursor<HistoryRecord> openHistoryCursor(int pageSize);
+
     // --- PASSWORDS --- //
     /**
      * Retrieves all the passwords the user has saved.
@@ -107,6 +146,60 @@ public interface FirefoxDataClient {
     @NonNull @WorkerThread
     FirefoxDataResult<List<PasswordRecord>> getPasswordsWithLimit(int itemLimit) throws FirefoxDataException;
 
+    // --- ASYNC --- //
+    /**
+     * Retrieves all bookmarks associated with this Sync account, as {@link #getAllBookmarks()} does, without blocking
+     * the calling thread.
+     *
+     * Cancelling the returned Future aborts the underlying network requests.
+     *
+     * @param callback The callback to notify, on a background thread, when the request completes.
+     * @return a Future for the requested sync data; never null.
+     */
+    @NonNull
+    Future<FirefoxDataResult<BookmarkFolder>> getAllBookmarksAsync(@NonNull FirefoxDataCallback<BookmarkFolder> callback);
+
+    /**
+     * Retrieves all the history entries a user has created from visiting pages, as {@link #getAllHistory()} does,
+     * without blocking the calling thread.
+     *
+     * Cancelling the returned Future aborts the underlying network requests.
+     *
+     * @param callback The callback to notify, on a background thread, when the request completes.
+     * @return a Future for the requested sync data; never null.
+     */
+    @NonNull
+    Future<FirefoxDataResult<List<HistoryRecord>>> getAllHistoryAsync(@NonNull FirefoxDataCallback<List<HistoryRecord>> callback);
+
+    /**
+     * Retrieves all the passwords the user has saved, as {@link #getAllPasswords()} does, without blocking the
+     * calling thread.
+     *
+     * Cancelling the returned Future aborts the underlying network requests.
+     *
+     * @param callback The callback to notify, on a background thread, when the request completes.
+     * @return a Future for the requested sync data; never null.
+     */
+    @NonNull
+    Future<FirefoxDataResult<List<PasswordRecord>>> getAllPasswordsAsync(@NonNull FirefoxDataCallback<List<PasswordRecord>> callback);
+
+    // --- BULK --- //
+    /**
+     * Retrieves all the data of the given collections, e.g. bookmarks and history, as returned by
+     * {@link #getAllBookmarks()}, {@link #getAllHistory()} and {@link #getAllPasswords()}.
+     *
+     * The collections are retrieved concurrently so this takes about as long as the slowest collection, rather than
+     * as long as retrieving each collection in turn.
+     *
+     * This method is blocking and can time out. If any collection fails, the others are abandoned.
+     *
+     * @param collections The collections to retrieve.
+     * @return a container with the requested sync data; never null.
+     * @throws FirefoxDataException if there was an error retrieving any of the results.
+     */
+    @NonNull @WorkerThread
+    FirefoxDataBulkResult getAll(@NonNull EnumSet<FirefoxDataCollection> collections) throws FirefoxDataException;
+
     /**
      * Gets the email associated with this Sync Client. It is intended to be used in the UI to
      * notify a user which account they have logged in.
@@ -117,4 +210,13 @@ public interface FirefoxDataClient {
      * @throws FirefoxDataException if there was a failure retrieving the email address.
      */
     @NonNull String getEmail() throws FirefoxDataException;
+
+    // --- STATS --- //
+    /**
+     * Returns the number of bytes this client has downloaded so far, as received from the server and as decompressed.
+     *
+     * @return a snapshot of the counts; never null.
+     */
+    @NonNull
+    FirefoxDataTransferStats getTransferStats();
 }
@@ -0,0 +1,14 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import java.util.EnumSet;
+
+/** The types of data that can be retrieved together with {@link FirefoxDataClient#getAll(EnumSet)}. */
+public enum FirefoxDataCollection {
+    BOOKMARKS,
+    HISTORY,
+    PASSWORDS,
+}
@@ -0,0 +1,16 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.mozilla.fxa_data.FirefoxDataException;
+
+/**
+ * Thrown by {@link FirefoxDataCursor#nextPage()} when the collection changed on the server after the cursor retrieved
+ * its first page, e.g. because another device synced. The remaining pages' offsets no longer match the pages already
+ * retrieved, so continuing would skip or duplicate records: open a new cursor to start over.
+ */
+public class FirefoxDataCollectionModifiedException extends FirefoxDataException {
+    FirefoxDataCollectionModifiedException(final String message) { super(message, null); }
+}
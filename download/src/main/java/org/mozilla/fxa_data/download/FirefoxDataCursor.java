@@ -0,0 +1,43 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import org.mozilla.fxa_data.FirefoxDataException;
+
+import java.util.List;
+
+/**
+ * A cursor over the records of a Sync collection, which retrieves the collection one page of records at a time.
+ *
+ * This allows a caller to display the first records of a large collection without waiting for the whole
+ * collection to download. Retrieve an instance from a {@link FirefoxDataClient}, e.g.
+ * {@link FirefoxDataClient#openHistoryCursor(int)}.
+ *
+ * This class is not thread-safe.
+ */
+public interface FirefoxDataCursor<T> {
+
+    /**
+     * Returns whether there are more pages to retrieve. This is true before the first page is retrieved, even if
+     * the collection is empty.
+     */
+    boolean hasNextPage();
+
+    /**
+     * Retrieves the next page of records.
+     *
+     * This method is blocking and can time out. If it fails, it is safe to call again to retry the same page.
+     *
+     * @return a container with the next page of records; never null. The list may be empty if the collection is empty.
+     * @throws FirefoxDataException if there was an error retrieving the results.
+     * @throws FirefoxDataCollectionModifiedException if the collection changed on the server since the first page was
+     *                                                retrieved: open a new cursor to start over.
+     * @throws java.util.NoSuchElementException if there are no more pages, i.e. {@link #hasNextPage()} is false.
+     */
+    @NonNull @WorkerThread
+    FirefoxDataResult<List<T>> nextPage() throws FirefoxDataException;
+}
@@ -6,6 +6,7 @@ package org.mozilla.fxa_data.download;
 
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import org.mozilla.gecko.fxa.login.State;
 import org.mozilla.gecko.sync.CollectionKeys;
 import org.mozilla.gecko.tokenserver.TokenServerToken;
@@ -13,8 +14,18 @@ import org.mozilla.fxa_data.FirefoxDataException;
 import org.mozilla.fxa_data.impl.FirefoxAccount;
 import org.mozilla.fxa_data.impl.IOUtils;
 
+import java.io.File;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -25,36 +36,89 @@ class FirefoxDataFirefoxAccountClient implements FirefoxDataClient {
 
     private static final long REQUEST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60); // This doesn't work - see usage for details.
 
+    /**
+     * Runs the requests of the async methods, e.g. {@link #getAllHistoryAsync(FirefoxDataCallback)}. These threads
+     * mostly wait on the network so we don't bound their number: a request should never wait for another request's thread.
+     */
+    private static final ExecutorService requestExecutor = newRequestExecutor();
+
     private final FirefoxAccount account;
     private final FirefoxSyncConfig syncConfig;
 
+    /** Shares the result of a collection request with the identical requests made while it's in flight. */
+    private final SingleFlight singleFlight = new SingleFlight();
+
+    @Nullable private final InternalFirefoxDataClientFactory.OnKeysChangedListener onKeysChangedListener;
+    @Nullable private final InternalFirefoxDataClientFactory.OnTokenRejectedListener onTokenRejectedListener;
+
     FirefoxDataFirefoxAccountClient(final FirefoxAccount account, final TokenServerToken token, final CollectionKeys collectionKeys) {
+        this(account, token, collectionKeys, null, null);
+    }
+
+    FirefoxDataFirefoxAccountClient(final FirefoxAccount account, final TokenServerToken token, final CollectionKeys collectionKeys,
+            @Nullable final File recordCacheDir, @Nullable final InternalFirefoxDataClientFactory.OnKeysChangedListener onKeysChangedListener) {
+        this(account, token, collectionKeys, recordCacheDir, onKeysChangedListener, null);
+    }
+
+    /**
+     * @param recordCacheDir The directory to cache downloaded records in or null to not cache records on disk.
+     * @param onKeysChangedListener Notified, before the failure is thrown, when a request fails because the collection
+     *                              keys changed on the server.
+     * @param onTokenRejectedListener Notified, before the failure is thrown, when a request fails because the storage
+     *                                server rejected the token.
+     */
+    FirefoxDataFirefoxAccountClient(final FirefoxAccount account, final TokenServerToken token, final CollectionKeys collectionKeys,
+            @Nullable final File recordCacheDir, @Nullable final InternalFirefoxDataClientFactory.OnKeysChangedListener onKeysChangedListener,
+            @Nullable final InternalFirefoxDataClientFactory.OnTokenRejectedListener onTokenRejectedListener) {
         if (account.accountState.getStateLabel() != State.StateLabel.Married) {
             throw new IllegalArgumentException("Expected married account. Instead: " + account.accountState.getStateLabel().toString());
         }
 
         this.account = account;
-        this.syncConfig = new FirefoxSyncConfig(token, collectionKeys);
+        final SyncRecordDiskCache diskCache = (recordCacheDir != null && account.uid != null) ?
+                new SyncRecordDiskCache(recordCacheDir, account.uid) :
+                null;
+        this.syncConfig = new FirefoxSyncConfig(token, collectionKeys, diskCache);
+        this.onKeysChangedListener = onKeysChangedListener;
+        this.onTokenRejectedListener = onTokenRejectedListener;
     }
 
     @NonNull
     @Override
     public FirefoxDataResult<BookmarkFolder> getAllBookmarks() throws FirefoxDataException {
-        return getBookmarks(-1);
+        return getBookmarks(syncConfig, -1);
     }
 
     @NonNull
     @Override
     public FirefoxDataResult<BookmarkFolder> getBookmarksWithLimit(final int itemLimit) throws FirefoxDataException {
-        return getBookmarks(itemLimit);
+        return getBookmarks(syncConfig, itemLimit);
+    }
+
+    @NonNull
+    @Override
+    public Future<FirefoxDataResult<BookmarkFolder>> getAllBookmarksAsync(@NonNull final FirefoxDataCallback<BookmarkFolder> callback) {
+        return submitCancellable(new CancellableCall<BookmarkFolder>() {
+            @Override
+            public FirefoxDataResult<BookmarkFolder> call(final FirefoxSyncConfig cancellableSyncConfig) throws FirefoxDataException {
+                return getBookmarks(cancellableSyncConfig, -1);
+            }
+        }, callback);
     }
 
     @NonNull
-    private FirefoxDataResult<BookmarkFolder> getBookmarks(final int itemLimit) throws FirefoxDataException {
-        return getCollectionSync(new GetCollectionCall<BookmarkFolder>() {
+    private FirefoxDataResult<BookmarkFolder> getBookmarks(final FirefoxSyncConfig requestSyncConfig, final int itemLimit)
+            throws FirefoxDataException {
+        return singleFlight.run("bookmarks?limit=" + itemLimit, requestSyncConfig.canceller, new SingleFlight.Call<BookmarkFolder>() {
+            @NonNull
             @Override
-            public void getCollectionAsync(final OnSyncComplete<BookmarkFolder> onComplete) {
-                FirefoxSyncBookmarks.getBlocking(syncConfig, itemLimit, onComplete);
+            public FirefoxDataResult<BookmarkFolder> call() throws FirefoxDataException {
+                return getCollectionSync(new GetCollectionCall<BookmarkFolder>() {
+                    @Override
+                    public void getCollectionAsync(final OnSyncComplete<BookmarkFolder> onComplete) {
+                        FirefoxSyncBookmarks.getBlocking(requestSyncConfig, itemLimit, onComplete);
+                    }
+                });
             }
         });
     }
@@ -62,21 +126,40 @@ class FirefoxDataFirefoxAccountClient implements FirefoxDataClient {
     @NonNull
     @Override
     public FirefoxDataResult<List<PasswordRecord>> getAllPasswords() throws FirefoxDataException {
-        return getPasswords(-1);
+        return getPasswords(syncConfig, -1);
     }
 
     @NonNull
     @Override
     public FirefoxDataResult<List<PasswordRecord>> getPasswordsWithLimit(final int itemLimit) throws FirefoxDataException {
-        return getPasswords(itemLimit);
+        return getPasswords(syncConfig, itemLimit);
+    }
+
+    @NonNull
+    @Override
+    public Future<FirefoxDataResult<List<PasswordRecord>>> getAllPasswordsAsync(
+            @NonNull final FirefoxDataCallback<List<PasswordRecord>> callback) {
+        return submitCancellable(new CancellableCall<List<PasswordRecord>>() {
+            @Override
+            public FirefoxDataResult<List<PasswordRecord>> call(final FirefoxSyncConfig cancellableSyncConfig) throws FirefoxDataException {
+                return getPasswords(cancellableSyncConfig, -1);
+            }
+        }, callback);
     }
 
     @NonNull
-    private FirefoxDataResult<List<PasswordRecord>> getPasswords(final int itemLimit) throws FirefoxDataException {
-        return getCollectionSync(new GetCollectionCall<List<PasswordRecord>>() {
+    private FirefoxDataResult<List<PasswordRecord>> getPasswords(final FirefoxSyncConfig requestSyncConfig, final int itemLimit)
+            throws FirefoxDataException {
+        return singleFlight.run("passwords?limit=" + itemLimit, requestSyncConfig.canceller, new SingleFlight.Call<List<PasswordRecord>>() {
+            @NonNull
             @Override
-            public void getCollectionAsync(final OnSyncComplete<List<PasswordRecord>> onComplete) {
-                FirefoxSyncPasswords.getBlocking(syncConfig, itemLimit, onComplete);
+            public FirefoxDataResult<List<PasswordRecord>> call() throws FirefoxDataException {
+                return unmodifiableResult(getCollectionSync(new GetCollectionCall<List<PasswordRecord>>() {
+                    @Override
+                    public void getCollectionAsync(final OnSyncComplete<List<PasswordRecord>> onComplete) {
+                        FirefoxSyncPasswords.getBlocking(requestSyncConfig, itemLimit, onComplete);
+                    }
+                }));
             }
         });
     }
@@ -84,25 +167,127 @@ class FirefoxDataFirefoxAccountClient implements FirefoxDataClient {
     @NonNull
     @Override
     public FirefoxDataResult<List<HistoryRecord>> getAllHistory() throws FirefoxDataException {
-        return getHistory(-1);
+        return getHistory(syncConfig, -1);
     }
 
     @NonNull
     @Override
     public FirefoxDataResult<List<HistoryRecord>> getHistoryWithLimit(final int itemLimit) throws FirefoxDataException {
-        return getHistory(itemLimit);
+        return getHistory(syncConfig, itemLimit);
     }
 
     @NonNull
-    private FirefoxDataResult<List<HistoryRecord>> getHistory(final int itemLimit) throws FirefoxDataException {
-        return getCollectionSync(new GetCollectionCall<List<HistoryRecord>>() {
+    @Override
+    public FirefoxDataResult<CompactHistory> getAllHistoryCompact() throws FirefoxDataException {
+        return singleFlight.run("history-compact", syncConfig.canceller, new SingleFlight.Call<CompactHistory>() {
+            @NonNull
             @Override
-            public void getCollectionAsync(final OnSyncComplete<List<HistoryRecord>> onComplete) {
-                FirefoxSyncHistory.getBlocking(syncConfig, itemLimit, onComplete);
+            public FirefoxDataResult<CompactHistory> call() throws FirefoxDataException {
+                return getCollectionSync(new GetCollectionCall<CompactHistory>() {
+                    @Override
+                    public void getCollectionAsync(final OnSyncComplete<CompactHistory> onComplete) {
+                        FirefoxSyncHistory.getAllCompactBlocking(syncConfig, onComplete);
+                    }
+                });
             }
         });
     }
 
+    @NonNull
+    @Override
+    public Future<FirefoxDataResult<List<HistoryRecord>>> getAllHistoryAsync(
+            @NonNull final FirefoxDataCallback<List<HistoryRecord>> callback) {
+        return submitCancellable(new CancellableCall<List<HistoryRecord>>() {
+            @Override
+            public FirefoxDataResult<List<HistoryRecord>> call(final FirefoxSyncConfig cancellableSyncConfig) throws FirefoxDataException {
+                return getHistory(cancellableSyncConfig, -1);
+            }
+        }, callback);
+    }
+
+    @NonNull
+    private FirefoxDataResult<List<HistoryRecord>> getHistory(final FirefoxSyncConfig requestSyncConfig, final int itemLimit)
+            throws FirefoxDataException {
+        return singleFlight.run("history?limit=" + itemLimit, requestSyncConfig.canceller, new SingleFlight.Call<List<HistoryRecord>>() {
+            @NonNull
+            @Override
+            public FirefoxDataResult<List<HistoryRecord>> call() throws FirefoxDataException {
+                return unmodifiableResult(getCollectionSync(new GetCollectionCall<List<HistoryRecord>>() {
+                    @Override
+                    public void getCollectionAsync(final OnSyncComplete<List<HistoryRecord>> onComplete) {
+                        FirefoxSyncHistory.getBlocking(requestSyncConfig, itemLimit, onComplete);
+                    }
+                }));
+            }
+        });
+    }
+
+    /** Identical calls share their results, through {@link SingleFlight}, so a caller must not modify another's results. */
+    @NonNull
+    private static <T> FirefoxDataResult<List<T>> unmodifiableResult(@NonNull final FirefoxDataResult<List<T>> result) {
+        return new FirefoxDataResult<>(Collections.unmodifiableList(result.getResult()));
+    }
+
+    @NonNull
+    @Override
+    public FirefoxDataCursor<HistoryRecord> openHistoryCursor(final int pageSize) {
+        if (pageSize <= 0) { throw new IllegalArgumentException("Expected page size larger than 0. Got: " + pageSize); }
+        return new CollectionCursor<>(new GetPageCall<HistoryRecord>() {
+            @Override
+            public void getPageAsync(@Nullable final String offset, @Nullable final String collectionLastModified,
+                    final OnSyncComplete<CollectionPage<HistoryRecord>> onComplete) {
+                FirefoxSyncHistory.getPageBlocking(syncConfig, pageSize, offset, collectionLastModified, onComplete);
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    public FirefoxDataTransferStats getTransferStats() {
+        return syncConfig.responseByteCounter.getStats();
+    }
+
+    @NonNull
+    @Override
+    public FirefoxDataBulkResult getAll(@NonNull final EnumSet<FirefoxDataCollection> collections) throws FirefoxDataException {
+        // The requests share BaseResource's connection pool so concurrent requests to the same storage server each
+        // get their own connection.
+        final Future<FirefoxDataResult<BookmarkFolder>> bookmarksFuture = !collections.contains(FirefoxDataCollection.BOOKMARKS) ? null :
+                getAllBookmarksAsync(new NoOpCallback<BookmarkFolder>());
+        final Future<FirefoxDataResult<List<HistoryRecord>>> historyFuture = !collections.contains(FirefoxDataCollection.HISTORY) ? null :
+                getAllHistoryAsync(new NoOpCallback<List<HistoryRecord>>());
+        final Future<FirefoxDataResult<List<PasswordRecord>>> passwordsFuture = !collections.contains(FirefoxDataCollection.PASSWORDS) ? null :
+                getAllPasswordsAsync(new NoOpCallback<List<PasswordRecord>>());
+
+        try {
+            return new FirefoxDataBulkResult(awaitResult(bookmarksFuture), awaitResult(historyFuture), awaitResult(passwordsFuture));
+        } finally {
+            // If one collection failed, there's no reason to keep downloading the others. This is a no-op on success.
+            cancel(bookmarksFuture);
+            cancel(historyFuture);
+            cancel(passwordsFuture);
+        }
+    }
+
+    @Nullable
+    private static <T> T awaitResult(@Nullable final Future<T> future) throws FirefoxDataException {
+        if (future == null) { return null; }
+        try {
+            return future.get(); // Each request has its own time out.
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FirefoxDataException("Interrupted while waiting for collections.", e);
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof FirefoxDataException) { throw (FirefoxDataException) cause; }
+            throw new FirefoxDataException("Unexpected exception while retrieving collections.", cause);
+        }
+    }
+
+    private static void cancel(@Nullable final Future<?> future) {
+        if (future != null) { future.cancel(true); }
+    }
+
     /**
      * Convenience method to share the code to turn the async get collection calls into synchronous calls & handle errors.
      *
@@ -124,6 +309,21 @@ class FirefoxDataFirefoxAccountClient implements FirefoxDataClient {
                 }
             });
         } catch (final ExecutionException e) {
+            if (e.getCause() instanceof FirefoxDataCollectionModifiedException) {
+                throw (FirefoxDataCollectionModifiedException) e.getCause(); // Typed so callers can start over.
+            }
+            if (e.getCause() instanceof FirefoxDataKeysChangedException) {
+                if (onKeysChangedListener != null) {
+                    onKeysChangedListener.onKeysChanged();
+                }
+                throw (FirefoxDataKeysChangedException) e.getCause(); // Typed so callers can get a client with the new keys.
+            }
+            if (e.getCause() instanceof FirefoxDataTokenRejectedException) {
+                if (onTokenRejectedListener != null) {
+                    onTokenRejectedListener.onTokenRejected();
+                }
+                throw (FirefoxDataTokenRejectedException) e.getCause(); // Typed so callers can get a client with a new token.
+            }
             throw new FirefoxDataException("Exception occurred during request.", e);
         } catch (final TimeoutException e) {
             throw new FirefoxDataException("Request timed out.", e);
@@ -136,7 +336,125 @@ class FirefoxDataFirefoxAccountClient implements FirefoxDataClient {
         return account.email; // We cache the email but it can change (issue #11).
     }
 
+    /**
+     * Runs the given call on a background thread with a copy of our sync config whose requests are aborted if the
+     * returned Future is cancelled.
+     */
+    private <T> Future<FirefoxDataResult<T>> submitCancellable(final CancellableCall<T> call, final FirefoxDataCallback<T> callback) {
+        final SyncRequestCanceller canceller = new SyncRequestCanceller();
+        final FirefoxSyncConfig cancellableSyncConfig = syncConfig.withCanceller(canceller);
+        final CancellableRequestFuture<T> future = new CancellableRequestFuture<>(new Callable<FirefoxDataResult<T>>() {
+            @Override
+            public FirefoxDataResult<T> call() throws FirefoxDataException {
+                return call.call(cancellableSyncConfig);
+            }
+        }, canceller, callback);
+        requestExecutor.execute(future);
+        return future;
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        // Like Executors.newCachedThreadPool: idle threads time out so we don't hold onto threads between downloads.
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                FirefoxSyncUtils.newDaemonThreadFactory("FirefoxData-request-"));
+    }
+
+    private interface CancellableCall<T> {
+        FirefoxDataResult<T> call(final FirefoxSyncConfig cancellableSyncConfig) throws FirefoxDataException;
+    }
+
+    /** A Future that aborts its requests when it's cancelled and notifies its callback when it completes. */
+    private static class CancellableRequestFuture<T> extends FutureTask<FirefoxDataResult<T>> {
+        private final SyncRequestCanceller canceller;
+        private final FirefoxDataCallback<T> callback;
+
+        private CancellableRequestFuture(final Callable<FirefoxDataResult<T>> callable, final SyncRequestCanceller canceller,
+                final FirefoxDataCallback<T> callback) {
+            super(callable);
+            this.canceller = canceller;
+            this.callback = callback;
+        }
+
+        @Override
+        public boolean cancel(final boolean mayInterruptIfRunning) {
+            final boolean isCancelled = super.cancel(mayInterruptIfRunning);
+            if (isCancelled) {
+                // Interrupts don't stop blocking network reads so we also abort the requests.
+                canceller.cancel();
+            }
+            return isCancelled;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) { return; }
+
+            final FirefoxDataResult<T> result;
+            try {
+                result = awaitResult(this); // Won't block: we're done.
+            } catch (final FirefoxDataException e) {
+                callback.onException(e);
+                return;
+            }
+            callback.onSuccess(result);
+        }
+    }
+
+    private static class NoOpCallback<T> implements FirefoxDataCallback<T> {
+        @Override public void onSuccess(@NonNull final FirefoxDataResult<T> result) { }
+        @Override public void onException(@NonNull final FirefoxDataException e) { }
+    }
+
     private interface GetCollectionCall<T> {
         void getCollectionAsync(final OnSyncComplete<T> onComplete);
     }
+
+    private interface GetPageCall<R> {
+        void getPageAsync(@Nullable final String offset, @Nullable final String collectionLastModified,
+                final OnSyncComplete<CollectionPage<R>> onComplete);
+    }
+
+    /**
+     * A cursor that follows the server's next offset from page to page until there are no pages remaining. The pages
+     * after the first are only retrieved if the collection is unmodified since the first page.
+     */
+    private class CollectionCursor<R> implements FirefoxDataCursor<R> {
+        private final GetPageCall<R> getPageCall;
+
+        private boolean isFirstPage = true;
+        @Nullable private String nextOffset;
+        @Nullable private String collectionLastModified;
+
+        private CollectionCursor(final GetPageCall<R> getPageCall) {
+            this.getPageCall = getPageCall;
+        }
+
+        @Override
+        public boolean hasNextPage() {
+            return isFirstPage || nextOffset != null;
+        }
+
+        @NonNull
+        @Override
+        public FirefoxDataResult<List<R>> nextPage() throws FirefoxDataException {
+            if (!hasNextPage()) { throw new NoSuchElementException("No pages remaining."); }
+
+            final String offset = nextOffset;
+            final String pageCollectionLastModified = collectionLastModified;
+            final CollectionPage<R> page = getCollectionSync(new GetCollectionCall<CollectionPage<R>>() {
+                @Override
+                public void getCollectionAsync(final OnSyncComplete<CollectionPage<R>> onComplete) {
+                    getPageCall.getPageAsync(offset, pageCollectionLastModified, onComplete);
+                }
+            }).getResult();
+
+            // Only advance once the request succeeds so callers can retry a failed page.
+            if (isFirstPage) {
+                collectionLastModified = page.collectionLastModified;
+            }
+            isFirstPage = false;
+            nextOffset = page.nextOffset;
+            return new FirefoxDataResult<>(page.records);
+        }
+    }
 }
@@ -0,0 +1,18 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.mozilla.fxa_data.FirefoxDataException;
+import org.mozilla.fxa_data.login.FirefoxDataLoginManager;
+
+/**
+ * Thrown by the {@link FirefoxDataClient} methods when none of a collection's records can be decrypted with the
+ * client's keys: the user's Sync keys changed on the server, e.g. because they reset their Sync data from another
+ * device. This client will keep failing: get a new one with {@link FirefoxDataLoginManager#loadStoredAccount}, which
+ * uses the new keys.
+ */
+public class FirefoxDataKeysChangedException extends FirefoxDataException {
+    FirefoxDataKeysChangedException(final String message) { super(message, null); }
+}
@@ -0,0 +1,17 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import org.mozilla.fxa_data.FirefoxDataException;
+import org.mozilla.fxa_data.login.FirefoxDataLoginManager;
+
+/**
+ * Thrown by the {@link FirefoxDataClient} methods when the Sync storage server rejects the client's token, e.g.
+ * because the user's data moved to another server or they changed their password. This client will keep failing:
+ * get a new one with {@link FirefoxDataLoginManager#loadStoredAccount}, which gets a new token.
+ */
+public class FirefoxDataTokenRejectedException extends FirefoxDataException {
+    FirefoxDataTokenRejectedException(final String message) { super(message, null); }
+}
@@ -0,0 +1,28 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+/**
+ * A snapshot of the bytes a {@link FirefoxDataClient} has downloaded, as returned by
+ * {@link FirefoxDataClient#getTransferStats()}.
+ *
+ * The server compresses its responses when it can, so fewer bytes are received than are decoded: the difference is
+ * the data compression saved, e.g. on metered connections.
+ */
+public class FirefoxDataTransferStats {
+    private final long bytesReceived;
+    private final long bytesDecoded;
+
+    FirefoxDataTransferStats(final long bytesReceived, final long bytesDecoded) {
+        this.bytesReceived = bytesReceived;
+        this.bytesDecoded = bytesDecoded;
+    }
+
+    /** @return the number of response body bytes received from the server, possibly compressed. */
+    public long getBytesReceived() { return bytesReceived; }
+
+    /** @return the number of response body bytes after they were decompressed. */
+    public long getBytesDecoded() { return bytesDecoded; }
+}
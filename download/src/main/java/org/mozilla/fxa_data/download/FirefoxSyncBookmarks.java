@@ -10,6 +10,7 @@ import ch.boye.httpclientandroidlib.HttpResponse;
 import org.mozilla.gecko.sync.repositories.domain.BookmarkRecordFactory;
 import org.mozilla.fxa_data.FirefoxDataException;
 
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -28,11 +29,24 @@ class FirefoxSyncBookmarks {
      *
      * Both the request and the callback occur on the calling thread (this is unintuitive: issue #3).
      *
+     * When all items are fetched, they are cached on disk and the cached items will be returned if the bookmarks have
+     * not changed on the server.
+     *
      * @param itemLimit The number of items to fetch. If < 0, fetches all items.
      */
     @WorkerThread // network request.
     static void getBlocking(final FirefoxSyncConfig syncConfig, final int itemLimit, final OnSyncComplete<BookmarkFolder> onComplete) {
-        final SyncClientBookmarksResourceDelegate resourceDelegate = new SyncClientBookmarksResourceDelegate(syncConfig, onComplete);
+        if (itemLimit < 0) {
+            final List<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> cachedRecords =
+                    FirefoxSyncUtils.loadUnchangedCollectionFromDiskCache(syncConfig, BOOKMARKS_COLLECTION, new BookmarkRecordFactory());
+            if (cachedRecords != null) {
+                onComplete.onSuccess(new FirefoxDataResult<>(SyncClientBookmarksResourceDelegate.rawRecordsToBookmarksTree(cachedRecords)));
+                return;
+            }
+        }
+
+        final SyncClientBookmarksResourceDelegate resourceDelegate =
+                new SyncClientBookmarksResourceDelegate(syncConfig, itemLimit < 0, onComplete);
         try {
             FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, BOOKMARKS_COLLECTION, getArgs(itemLimit), resourceDelegate);
         } catch (final FirefoxDataException e) {
@@ -48,26 +62,35 @@ class FirefoxSyncBookmarks {
         return args;
     }
 
-    private static class SyncClientBookmarksResourceDelegate extends SyncBaseResourceDelegate<BookmarkFolder> {
-        SyncClientBookmarksResourceDelegate(final FirefoxSyncConfig syncConfig, final OnSyncComplete<BookmarkFolder> onComplete) {
+    static class SyncClientBookmarksResourceDelegate extends SyncBaseResourceDelegate<BookmarkFolder> {
+        private final boolean isFetchingAll;
+
+        SyncClientBookmarksResourceDelegate(final FirefoxSyncConfig syncConfig, final boolean isFetchingAll,
+                final OnSyncComplete<BookmarkFolder> onComplete) {
             super(syncConfig, onComplete);
+            this.isFetchingAll = isFetchingAll;
         }
 
         @Override
-        public void handleResponse(final HttpResponse response, final String responseBody) {
-            final List<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> rawRecords;
+        public void handleResponse(final HttpResponse response, final InputStream responseBody) {
+            final DecryptedRecords<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> decryptedRecords;
             try {
-                rawRecords = responseBodyToRawRecords(syncConfig, responseBody, BOOKMARKS_COLLECTION, new BookmarkRecordFactory());
+                decryptedRecords = responseBodyToRawRecords(syncConfig, responseBody, BOOKMARKS_COLLECTION, new BookmarkRecordFactory());
             } catch (final FirefoxDataException e) {
                 onComplete.onException(e);
                 return;
             }
 
+            final List<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> rawRecords = decryptedRecords.getRecords();
+            if (isFetchingAll) {
+                FirefoxSyncUtils.saveCollectionToDiskCache(syncConfig, response, BOOKMARKS_COLLECTION, decryptedRecords, false);
+            }
+
             final BookmarkFolder rootBookmarkFolder = rawRecordsToBookmarksTree(rawRecords);
             onComplete.onSuccess(new FirefoxDataResult<>(rootBookmarkFolder));
         }
 
-        private static BookmarkFolder rawRecordsToBookmarksTree(final List<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> rawRecords) {
+        static BookmarkFolder rawRecordsToBookmarksTree(final List<org.mozilla.gecko.sync.repositories.domain.BookmarkRecord> rawRecords) {
             // Iterating over these a second time is inefficient (the first time creates the raw records list), but it
             // makes for cleaner code: fix if there are perf issues.
             //
@@ -108,7 +131,7 @@ class FirefoxSyncBookmarks {
             final BookmarkFolder parentFolder = idToSeenFolders.get(folder.underlyingRecord.parentID);
             if (parentFolder != null) {
                 folder.parentFolder = parentFolder;
-                parentFolder.getSubfolders().add(folder);
+                parentFolder.addSubfolder(folder);
             }
 
             for (final Object childIDObj : folder.underlyingRecord.children) {
@@ -120,7 +143,7 @@ class FirefoxSyncBookmarks {
 
                 final BookmarkRecord childRecord = idToSeenBookmarks.get(childID);
                 if (childRecord != null) {
-                    folder.getBookmarks().add(childRecord);
+                    folder.addBookmark(childRecord);
                     childRecord.parentFolder = folder;
                 }
             }
@@ -131,7 +154,7 @@ class FirefoxSyncBookmarks {
             final BookmarkFolder parentFolder = idToSeenFolders.get(bookmark.underlyingRecord.parentID);
             if (parentFolder != null) {
                 bookmark.parentFolder = parentFolder;
-                parentFolder.getBookmarks().add(bookmark);
+                parentFolder.addBookmark(bookmark);
             }
         }
 
@@ -145,14 +168,14 @@ class FirefoxSyncBookmarks {
             for (final BookmarkRecord bookmark : idToSeenBookmarks.values()) {
                 if (bookmark.underlyingRecord.parentID.equals(BookmarkFolder.ROOT_FOLDER_GUID) ||
                         bookmark.getParentFolder() == null) { // orphan.
-                    rootFolder.getBookmarks().add(bookmark);
+                    rootFolder.addBookmark(bookmark);
                 }
             }
 
             for (final BookmarkFolder folder : idToSeenFolders.values()) {
                 if (folder.underlyingRecord.parentID.equals(BookmarkFolder.ROOT_FOLDER_GUID) ||
                         folder.getParentFolder() == null) { // orphan.
-                    rootFolder.getSubfolders().add(folder);
+                    rootFolder.addSubfolder(folder);
                 }
             }
 
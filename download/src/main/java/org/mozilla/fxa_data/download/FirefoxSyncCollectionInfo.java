@@ -0,0 +1,59 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import org.mozilla.fxa_data.impl.FirefoxDataRequestUtils;
+import org.mozilla.fxa_data.impl.FirefoxDataShared;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.JSONRecordFetcher;
+import org.mozilla.gecko.sync.Utils;
+import org.mozilla.gecko.sync.net.SyncStorageRecordRequest;
+
+/** Static functions to access the info/collections endpoint for the account associated with a sync config. */
+class FirefoxSyncCollectionInfo {
+
+    private static final String LOGTAG = FirefoxDataShared.LOGTAG;
+
+    static final long UNKNOWN_MODIFIED = -1;
+
+    private FirefoxSyncCollectionInfo() {}
+
+    /**
+     * Gets the time the given collection was last modified on the server, which will change when any record in the
+     * collection changes.
+     *
+     * @return the last modified time in milliseconds or {@link #UNKNOWN_MODIFIED} if the collection does not exist or
+     *         the request failed.
+     */
+    @WorkerThread // network request.
+    static long getCollectionModifiedMillisBlocking(final FirefoxSyncConfig syncConfig, final String collectionName) {
+        final ExtendedJSONObject collectionInfo;
+        try {
+            final String collectionInfoURI = FirefoxDataRequestUtils.getServerURI(syncConfig.token).toString() + "/info/collections";
+            final JSONRecordFetcher fetcher = new JSONRecordFetcher(collectionInfoURI,
+                    FirefoxDataRequestUtils.getAuthHeaderProvider(syncConfig.token)) {
+                @Override
+                protected void onRequestCreated(final SyncStorageRecordRequest request) {
+                    // Like the collection requests, so cancelling a call doesn't wait for this request to time out.
+                    if (syncConfig.canceller != null) { syncConfig.canceller.register(request.getResource()); }
+                }
+            };
+            collectionInfo = fetcher.fetchBlocking();
+        } catch (final Exception e) { // fetchBlocking throws Exception.
+            Log.w(LOGTAG, "Unable to retrieve collection info."); // Don't log exception to avoid leaking user data.
+            return UNKNOWN_MODIFIED;
+        }
+
+        final Object modifiedSeconds = collectionInfo.get(collectionName);
+        if (!(modifiedSeconds instanceof Number)) { return UNKNOWN_MODIFIED; }
+
+        // The server returns decimal seconds, which is parsed into a double: we go through the String representation,
+        // rather than multiplying, so we get the same milliseconds as the X-Last-Modified header without rounding error.
+        final long modifiedMillis = Utils.decimalSecondsToMilliseconds(modifiedSeconds.toString());
+        return modifiedMillis >= 0 ? modifiedMillis : UNKNOWN_MODIFIED;
+    }
+}
@@ -4,6 +4,8 @@
 
 package org.mozilla.fxa_data.download;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import org.mozilla.gecko.sync.CollectionKeys;
 import org.mozilla.gecko.tokenserver.TokenServerToken;
 
@@ -12,8 +14,53 @@ class FirefoxSyncConfig {
     final TokenServerToken token;
     final CollectionKeys collectionKeys;
 
+    /** How the downloaded records are decrypted: see {@link ParallelRecordDecrypter}. */
+    final ParallelRecordDecrypter recordDecrypter;
+
+    /** The history from previous fetches, used to only fetch changed history: see {@link FirefoxSyncHistory}. */
+    final IncrementalHistoryCache historyCache;
+
+    /** The records from previous full collection downloads, persisted across app runs, or null to not cache on disk. */
+    @Nullable final SyncRecordDiskCache diskCache;
+
+    /** Counts the response bytes read by the requests made with this config and its copies. */
+    final ResponseByteCounter responseByteCounter;
+
+    /** Aborts the requests made with this config when the caller cancels them or null if they can't be cancelled. */
+    @Nullable final SyncRequestCanceller canceller;
+
     FirefoxSyncConfig(final TokenServerToken token, final CollectionKeys collectionKeys) {
+        this(token, collectionKeys, null);
+    }
+
+    FirefoxSyncConfig(final TokenServerToken token, final CollectionKeys collectionKeys, @Nullable final SyncRecordDiskCache diskCache) {
+        this(token, collectionKeys, new ParallelRecordDecrypter(ParallelRecordDecrypter.DEFAULT_PARALLELISM,
+                ParallelRecordDecrypter.DEFAULT_CHUNK_SIZE, ParallelRecordDecrypter.DEFAULT_PRE_VERIFY_HMACS), diskCache);
+    }
+
+    FirefoxSyncConfig(final TokenServerToken token, final CollectionKeys collectionKeys,
+            @NonNull final ParallelRecordDecrypter recordDecrypter, @Nullable final SyncRecordDiskCache diskCache) {
         this.token = token;
         this.collectionKeys = collectionKeys;
+        this.recordDecrypter = recordDecrypter;
+        this.historyCache = new IncrementalHistoryCache();
+        this.diskCache = diskCache;
+        this.responseByteCounter = new ResponseByteCounter();
+        this.canceller = null;
+    }
+
+    private FirefoxSyncConfig(final FirefoxSyncConfig config, final SyncRequestCanceller canceller) {
+        this.token = config.token;
+        this.collectionKeys = config.collectionKeys;
+        this.recordDecrypter = config.recordDecrypter;
+        this.historyCache = config.historyCache;
+        this.diskCache = config.diskCache;
+        this.responseByteCounter = config.responseByteCounter;
+        this.canceller = canceller;
+    }
+
+    /** @return a copy of this config, sharing its caches & counters, whose requests can be aborted with the given canceller. */
+    FirefoxSyncConfig withCanceller(@NonNull final SyncRequestCanceller canceller) {
+        return new FirefoxSyncConfig(this, canceller);
     }
 }
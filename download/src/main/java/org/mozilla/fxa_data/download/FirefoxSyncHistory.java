@@ -4,11 +4,17 @@
 
 package org.mozilla.fxa_data.download;
 
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
+import ch.boye.httpclientandroidlib.Header;
 import ch.boye.httpclientandroidlib.HttpResponse;
-import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory;
+import ch.boye.httpclientandroidlib.client.methods.HttpRequestBase;
+import ch.boye.httpclientandroidlib.impl.client.DefaultHttpClient;
+import org.mozilla.gecko.sync.Utils;
+import org.mozilla.gecko.sync.net.SyncResponse;
 import org.mozilla.fxa_data.FirefoxDataException;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -20,6 +26,7 @@ import java.util.Map;
 class FirefoxSyncHistory {
 
     private static final String HISTORY_COLLECTION = "history";
+    private static final String X_IF_UNMODIFIED_SINCE = "X-If-Unmodified-Since";
 
     private FirefoxSyncHistory() {}
 
@@ -28,56 +35,269 @@ class FirefoxSyncHistory {
      *
      * Both the request and the callback will run on the given thread (this is unintuitive: issue #3).
      *
+     * When all items are fetched, they're fetched as {@link #getAllCompactBlocking(FirefoxSyncConfig, OnSyncComplete)}
+     * does and the records are created from the compact history.
+     *
      * @param itemLimit The number of items to fetch. If < 0, all items will be fetched.
      */
     @WorkerThread // network request.
     static void getBlocking(final FirefoxSyncConfig syncConfig, final int itemLimit, final OnSyncComplete<List<HistoryRecord>> onComplete) {
+        if (itemLimit < 0) {
+            getAllCompactBlocking(syncConfig, new OnSyncComplete<CompactHistory>() {
+                @Override
+                public void onSuccess(final FirefoxDataResult<CompactHistory> result) {
+                    onComplete.onSuccess(new FirefoxDataResult<>(result.getResult().toRecords()));
+                }
+
+                @Override
+                public void onException(final FirefoxDataException e) {
+                    onComplete.onException(e);
+                }
+            });
+            return;
+        }
+
+        // Limited requests don't return the full collection so we can't use them to update the cache.
         final SyncHistoryResourceDelegate resourceDelegate = new SyncHistoryResourceDelegate(syncConfig, onComplete);
         try {
-            FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, HISTORY_COLLECTION, getArgs(itemLimit), resourceDelegate);
+            FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, HISTORY_COLLECTION,
+                    getArgs(itemLimit, IncrementalHistoryCache.NO_WATERMARK), resourceDelegate);
+        } catch (final FirefoxDataException e) {
+            onComplete.onException(e);
+        }
+    }
+
+    /**
+     * Gets all the history for the given sync config, with the most-recently visited first, as a
+     * {@link CompactHistory}.
+     *
+     * Both the request and the callback will run on the given thread (this is unintuitive: issue #3).
+     *
+     * The results are stored in {@link FirefoxSyncConfig#historyCache} so that subsequent fetches only download the
+     * history that changed since the last fetch: the downloaded records are only held until they're merged into the
+     * cached history. The results are also saved to {@link FirefoxSyncConfig#diskCache} so the first fetch after the
+     * app restarts can be incremental too.
+     */
+    @WorkerThread // network request.
+    static void getAllCompactBlocking(final FirefoxSyncConfig syncConfig, final OnSyncComplete<CompactHistory> onComplete) {
+        restoreHistoryCacheFromDisk(syncConfig);
+
+        getAllCompactSinceBlocking(syncConfig, syncConfig.historyCache.getLastModifiedMillis(), onComplete);
+    }
+
+    /** Gets the history changed since the given watermark, or all of it for NO_WATERMARK, and updates the cache. */
+    @WorkerThread // network request.
+    private static void getAllCompactSinceBlocking(final FirefoxSyncConfig syncConfig, final long sinceLastModifiedMillis,
+            final OnSyncComplete<CompactHistory> onComplete) {
+        final SyncAllHistoryResourceDelegate resourceDelegate =
+                new SyncAllHistoryResourceDelegate(syncConfig, sinceLastModifiedMillis, onComplete);
+        try {
+            FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, HISTORY_COLLECTION,
+                    getArgs(-1, sinceLastModifiedMillis), resourceDelegate);
         } catch (final FirefoxDataException e) {
             onComplete.onException(e);
         }
     }
 
-    private static Map<String, String> getArgs(final int itemLimit) {
-        final Map<String, String> args = new HashMap<>(1);
+    private static void restoreHistoryCacheFromDisk(final FirefoxSyncConfig syncConfig) {
+        final SyncRecordDiskCache diskCache = syncConfig.diskCache;
+        if (diskCache == null || syncConfig.historyCache.getLastModifiedMillis() != IncrementalHistoryCache.NO_WATERMARK) {
+            return;
+        }
+
+        // We don't need to check if the cached history is up-to-date: if it isn't, we'll fetch what changed.
+        final long cachedModifiedMillis = diskCache.getModifiedMillis(HISTORY_COLLECTION);
+        if (cachedModifiedMillis == SyncRecordDiskCache.NOT_CACHED) { return; }
+
+        final List<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> cachedRecords =
+                diskCache.load(syncConfig, HISTORY_COLLECTION, new LazyHistoryRecord.Factory());
+        if (cachedRecords != null) {
+            syncConfig.historyCache.restore(rawRecordsToResultRecords(cachedRecords), cachedModifiedMillis);
+        }
+    }
+
+    private static Map<String, String> getArgs(final int itemLimit, final long sinceLastModifiedMillis) {
+        final Map<String, String> args = new HashMap<>(2);
         if (itemLimit >= 0) { // Fetch all items if < 0.
             args.put("limit", String.valueOf(itemLimit));
         }
+        if (sinceLastModifiedMillis != IncrementalHistoryCache.NO_WATERMARK) {
+            args.put("newer", Utils.millisecondsToDecimalSecondsString(sinceLastModifiedMillis));
+        }
         args.put("sort", "newest"); // sort history in the order users would see in their browser.
         return args;
     }
 
+    /**
+     * Gets a single page of history for the given sync config, with the most-recently visited first.
+     *
+     * Both the request and the callback will run on the given thread (this is unintuitive: issue #3).
+     *
+     * The offsets are only valid while the collection is unmodified so the pages after the first are requested with
+     * X-If-Unmodified-Since: if the collection changed, the request fails with a
+     * {@link FirefoxDataCollectionModifiedException}.
+     *
+     * @param pageSize The maximum number of items to fetch.
+     * @param offset The {@link CollectionPage#nextOffset} of the previous page, or null to fetch the first page.
+     * @param collectionLastModified The {@link CollectionPage#collectionLastModified} of the first page, or null to
+     *                               fetch the page regardless of changes to the collection.
+     */
+    @WorkerThread // network request.
+    static void getPageBlocking(final FirefoxSyncConfig syncConfig, final int pageSize, @Nullable final String offset,
+            @Nullable final String collectionLastModified, final OnSyncComplete<CollectionPage<HistoryRecord>> onComplete) {
+        final Map<String, String> args = getArgs(pageSize, IncrementalHistoryCache.NO_WATERMARK);
+        if (offset != null) {
+            args.put("offset", offset);
+        }
+
+        final SyncHistoryPageResourceDelegate resourceDelegate =
+                new SyncHistoryPageResourceDelegate(syncConfig, collectionLastModified, onComplete);
+        try {
+            FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, HISTORY_COLLECTION, args, resourceDelegate);
+        } catch (final FirefoxDataException e) {
+            onComplete.onException(e);
+        }
+    }
+
     private static class SyncHistoryResourceDelegate extends SyncBaseResourceDelegate<List<HistoryRecord>> {
         SyncHistoryResourceDelegate(final FirefoxSyncConfig syncConfig, final OnSyncComplete<List<HistoryRecord>> onComplete) {
             super(syncConfig, onComplete);
         }
 
         @Override
-        public void handleResponse(final HttpResponse response, final String responseBody) {
-            final List<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> rawRecords;
+        public void handleResponse(final HttpResponse response, final InputStream responseBody) {
+            final DecryptedRecords<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> decryptedRecords;
             try {
-                rawRecords = responseBodyToRawRecords(syncConfig, responseBody, HISTORY_COLLECTION, new HistoryRecordFactory());
+                decryptedRecords = responseBodyToRawRecords(syncConfig, responseBody, HISTORY_COLLECTION, new LazyHistoryRecord.Factory());
             } catch (final FirefoxDataException e) {
                 onComplete.onException(e);
                 return;
             }
 
-            final List<HistoryRecord> resultRecords = rawRecordsToResultRecords(rawRecords);
-            onComplete.onSuccess(new FirefoxDataResult<>(resultRecords));
+            onComplete.onSuccess(new FirefoxDataResult<>(rawRecordsToResultRecords(decryptedRecords.getRecords())));
         }
+    }
+
+    private static class SyncAllHistoryResourceDelegate extends SyncBaseResourceDelegate<CompactHistory> {
+        private final long sinceLastModifiedMillis;
 
-        private List<HistoryRecord> rawRecordsToResultRecords(final List<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> rawRecords) {
-            // Iterating over these a second time is inefficient (the first time creates the raw records list), but it
-            // makes for cleaner code: fix if there are perf issues.
-            //
-            // We assume the result records are already in the desired sort order.
-            final ArrayList<HistoryRecord> resultRecords = new ArrayList<>(rawRecords.size());
-            for (final org.mozilla.gecko.sync.repositories.domain.HistoryRecord rawRecord : rawRecords) {
-                resultRecords.add(new HistoryRecord(rawRecord));
+        SyncAllHistoryResourceDelegate(final FirefoxSyncConfig syncConfig, final long sinceLastModifiedMillis,
+                final OnSyncComplete<CompactHistory> onComplete) {
+            super(syncConfig, onComplete);
+            this.sinceLastModifiedMillis = sinceLastModifiedMillis;
+        }
+
+        @Override
+        public void handleResponse(final HttpResponse response, final InputStream responseBody) {
+            final DecryptedRecords<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> decryptedRecords;
+            try {
+                decryptedRecords = responseBodyToRawRecords(syncConfig, responseBody, HISTORY_COLLECTION, new LazyHistoryRecord.Factory());
+            } catch (final FirefoxDataException e) {
+                onComplete.onException(e);
+                return;
+            }
+
+            final List<HistoryRecord> resultRecords = rawRecordsToResultRecords(decryptedRecords.getRecords());
+            final long newLastModifiedMillis = getLastModifiedMillis(new SyncResponse(response));
+            final CompactHistory allHistory;
+            if (sinceLastModifiedMillis == IncrementalHistoryCache.NO_WATERMARK) {
+                allHistory = syncConfig.historyCache.replace(resultRecords, newLastModifiedMillis);
+            } else {
+                allHistory = syncConfig.historyCache.merge(sinceLastModifiedMillis, resultRecords, newLastModifiedMillis);
+                if (allHistory == null) {
+                    // The cache was cleared while we fetched the changes, e.g. by a concurrent fetch that skipped
+                    // records, so there's nothing to merge them into.
+                    getAllCompactSinceBlocking(syncConfig, IncrementalHistoryCache.NO_WATERMARK, onComplete);
+                    return;
+                }
+            }
+
+            if (!decryptedRecords.isComplete()) {
+                // The next fetch would only download what changed since this one so it'd never retrieve the skipped
+                // records: make it a full fetch and don't save the partial history to disk.
+                syncConfig.historyCache.clear();
+            } else if (syncConfig.diskCache != null && newLastModifiedMillis != sinceLastModifiedMillis) { // i.e. history changed.
+                saveHistoryToDiskCache(syncConfig.diskCache, allHistory, newLastModifiedMillis);
+            }
+            onComplete.onSuccess(new FirefoxDataResult<>(allHistory));
+        }
+
+        private static void saveHistoryToDiskCache(final SyncRecordDiskCache diskCache, final CompactHistory allHistory,
+                final long lastModifiedMillis) {
+            // The records are only created to be written: they're collected once they're saved.
+            final List<HistoryRecord> allRecords = allHistory.toRecords();
+            final ArrayList<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> rawRecords = new ArrayList<>(allRecords.size());
+            for (final HistoryRecord record : allRecords) {
+                rawRecords.add(record.underlyingRecord);
             }
-            return resultRecords;
+            diskCache.save(HISTORY_COLLECTION, lastModifiedMillis, rawRecords, null);
+        }
+
+        private static long getLastModifiedMillis(final SyncResponse response) {
+            // X-Last-Modified is the modified time of the collection; the server timestamp is a fallback that is
+            // guaranteed to be no older than the collection.
+            final long lastModifiedMillis = response.normalizedTimestampForHeader(SyncResponse.X_LAST_MODIFIED);
+            if (lastModifiedMillis >= 0) { return lastModifiedMillis; }
+
+            final long serverTimestampMillis = response.normalizedWeaveTimestamp();
+            return serverTimestampMillis >= 0 ? serverTimestampMillis : IncrementalHistoryCache.NO_WATERMARK;
+        }
+    }
+
+    private static class SyncHistoryPageResourceDelegate extends SyncBaseResourceDelegate<CollectionPage<HistoryRecord>> {
+        private static final int HTTP_PRECONDITION_FAILED = 412;
+
+        @Nullable private final String ifUnmodifiedSince;
+
+        SyncHistoryPageResourceDelegate(final FirefoxSyncConfig syncConfig, @Nullable final String ifUnmodifiedSince,
+                final OnSyncComplete<CollectionPage<HistoryRecord>> onComplete) {
+            super(syncConfig, onComplete);
+            this.ifUnmodifiedSince = ifUnmodifiedSince;
+        }
+
+        @Override
+        public void addHeaders(final HttpRequestBase request, final DefaultHttpClient client) {
+            super.addHeaders(request, client);
+            if (ifUnmodifiedSince != null) {
+                request.setHeader(X_IF_UNMODIFIED_SINCE, ifUnmodifiedSince);
+            }
+        }
+
+        @Override
+        public void handleResponse(final HttpResponse response, final InputStream responseBody) {
+            if (response.getStatusLine().getStatusCode() == HTTP_PRECONDITION_FAILED) {
+                onComplete.onException(new FirefoxDataCollectionModifiedException(
+                        "History changed on the server since the first page was retrieved."));
+                return;
+            }
+
+            final DecryptedRecords<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> decryptedRecords;
+            try {
+                decryptedRecords = responseBodyToRawRecords(syncConfig, responseBody, HISTORY_COLLECTION, new LazyHistoryRecord.Factory());
+            } catch (final FirefoxDataException e) {
+                onComplete.onException(e);
+                return;
+            }
+
+            // The server only sends the offset header if there are more records after this page.
+            final String nextOffset = new SyncResponse(response).weaveOffset();
+            final Header lastModifiedHeader = response.getFirstHeader(SyncResponse.X_LAST_MODIFIED);
+            final String collectionLastModified = (lastModifiedHeader != null) ? lastModifiedHeader.getValue() : null;
+            final CollectionPage<HistoryRecord> page =
+                    new CollectionPage<>(rawRecordsToResultRecords(decryptedRecords.getRecords()), nextOffset, collectionLastModified);
+            onComplete.onSuccess(new FirefoxDataResult<>(page));
+        }
+    }
+
+    private static List<HistoryRecord> rawRecordsToResultRecords(final List<org.mozilla.gecko.sync.repositories.domain.HistoryRecord> rawRecords) {
+        // Iterating over these a second time is inefficient (the first time creates the raw records list), but it
+        // makes for cleaner code: fix if there are perf issues.
+        //
+        // We assume the result records are already in the desired sort order.
+        final ArrayList<HistoryRecord> resultRecords = new ArrayList<>(rawRecords.size());
+        for (final org.mozilla.gecko.sync.repositories.domain.HistoryRecord rawRecord : rawRecords) {
+            resultRecords.add(new HistoryRecord(rawRecord));
         }
+        return resultRecords;
     }
 }
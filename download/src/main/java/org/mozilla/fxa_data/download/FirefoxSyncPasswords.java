@@ -9,6 +9,7 @@ import ch.boye.httpclientandroidlib.HttpResponse;
 import org.mozilla.gecko.sync.repositories.domain.PasswordRecordFactory;
 import org.mozilla.fxa_data.FirefoxDataException;
 
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -28,11 +29,23 @@ class FirefoxSyncPasswords {
      *
      * Both the request and callback occur on the calling thread (this is unintuitive: issue #3).
      *
+     * When all items are fetched, they are cached on disk, encrypted, and the cached items will be returned if the
+     * passwords have not changed on the server.
+     *
      * @param itemLimit The number of items to fetch. If < 0, returns all items.
      */
     @WorkerThread // network request.
     static void getBlocking(final FirefoxSyncConfig syncConfig, final int itemLimit, final OnSyncComplete<List<PasswordRecord>> onComplete) {
-        final SyncPasswordsResourceDelegate resourceDelegate = new SyncPasswordsResourceDelegate(syncConfig, onComplete);
+        if (itemLimit < 0) {
+            final List<org.mozilla.gecko.sync.repositories.domain.PasswordRecord> cachedRecords =
+                    FirefoxSyncUtils.loadUnchangedCollectionFromDiskCache(syncConfig, PASSWORDS_COLLECTION, new PasswordRecordFactory());
+            if (cachedRecords != null) {
+                onComplete.onSuccess(new FirefoxDataResult<>(rawRecordsToResultRecords(cachedRecords)));
+                return;
+            }
+        }
+
+        final SyncPasswordsResourceDelegate resourceDelegate = new SyncPasswordsResourceDelegate(syncConfig, itemLimit < 0, onComplete);
         try {
             FirefoxSyncUtils.makeGetRequestForCollection(syncConfig, PASSWORDS_COLLECTION, getArgs(itemLimit), resourceDelegate);
         } catch (final FirefoxDataException e) {
@@ -49,32 +62,40 @@ class FirefoxSyncPasswords {
     }
 
     private static class SyncPasswordsResourceDelegate extends SyncBaseResourceDelegate<List<PasswordRecord>> {
-        private SyncPasswordsResourceDelegate(final FirefoxSyncConfig syncConfig, final OnSyncComplete<List<PasswordRecord>> onComplete) {
+        private final boolean isFetchingAll;
+
+        private SyncPasswordsResourceDelegate(final FirefoxSyncConfig syncConfig, final boolean isFetchingAll,
+                final OnSyncComplete<List<PasswordRecord>> onComplete) {
             super(syncConfig, onComplete);
+            this.isFetchingAll = isFetchingAll;
         }
 
         @Override
-        public void handleResponse(final HttpResponse response, final String responseBody) {
-            final List<org.mozilla.gecko.sync.repositories.domain.PasswordRecord> rawRecords;
+        public void handleResponse(final HttpResponse response, final InputStream responseBody) {
+            final DecryptedRecords<org.mozilla.gecko.sync.repositories.domain.PasswordRecord> decryptedRecords;
             try {
-                rawRecords = responseBodyToRawRecords(syncConfig, responseBody, PASSWORDS_COLLECTION, new PasswordRecordFactory());
+                decryptedRecords = responseBodyToRawRecords(syncConfig, responseBody, PASSWORDS_COLLECTION, new PasswordRecordFactory());
             } catch (final FirefoxDataException e) {
                 onComplete.onException(e);
                 return;
             }
 
-            final List<PasswordRecord> resultRecords = rawRecordsToResultRecords(rawRecords);
+            if (isFetchingAll) {
+                FirefoxSyncUtils.saveCollectionToDiskCache(syncConfig, response, PASSWORDS_COLLECTION, decryptedRecords, true);
+            }
+
+            final List<PasswordRecord> resultRecords = rawRecordsToResultRecords(decryptedRecords.getRecords());
             onComplete.onSuccess(new FirefoxDataResult<>(resultRecords));
         }
+    }
 
-        private List<PasswordRecord> rawRecordsToResultRecords(final List<org.mozilla.gecko.sync.repositories.domain.PasswordRecord> rawRecords) {
-            // Iterating over these a second time is inefficient (the first time creates the raw records list), but it
-            // makes for cleaner code: fix if there are perf issues.
-            final ArrayList<PasswordRecord> resultRecords = new ArrayList<>(rawRecords.size());
-            for (final org.mozilla.gecko.sync.repositories.domain.PasswordRecord rawRecord : rawRecords) {
-                resultRecords.add(new PasswordRecord(rawRecord));
-            }
-            return resultRecords;
+    private static List<PasswordRecord> rawRecordsToResultRecords(final List<org.mozilla.gecko.sync.repositories.domain.PasswordRecord> rawRecords) {
+        // Iterating over these a second time is inefficient (the first time creates the raw records list), but it
+        // makes for cleaner code: fix if there are perf issues.
+        final ArrayList<PasswordRecord> resultRecords = new ArrayList<>(rawRecords.size());
+        for (final org.mozilla.gecko.sync.repositories.domain.PasswordRecord rawRecord : rawRecords) {
+            resultRecords.add(new PasswordRecord(rawRecord));
         }
+        return resultRecords;
     }
 }
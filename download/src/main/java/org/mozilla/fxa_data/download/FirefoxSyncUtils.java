@@ -5,19 +5,33 @@
 package org.mozilla.fxa_data.download;
 
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import ch.boye.httpclientandroidlib.HttpResponse;
+import org.mozilla.gecko.sync.NoCollectionKeysSetException;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
 import org.mozilla.gecko.sync.net.BaseResource;
+import org.mozilla.gecko.sync.net.SyncResponse;
+import org.mozilla.gecko.sync.repositories.RecordFactory;
+import org.mozilla.gecko.sync.repositories.domain.Record;
 import org.mozilla.fxa_data.FirefoxDataException;
 import org.mozilla.fxa_data.impl.FirefoxDataRequestUtils;
+import org.mozilla.fxa_data.impl.FirefoxDataShared;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A collection of internal static functions for the Sync package.
  */
 class FirefoxSyncUtils {
+    private static final String LOGTAG = FirefoxDataShared.LOGTAG;
+
     private FirefoxSyncUtils() {}
 
     /**
@@ -42,9 +56,84 @@ class FirefoxSyncUtils {
         }
         final BaseResource resource = new BaseResource(uri);
         resource.delegate = delegate;
+        if (syncConfig.canceller != null) { syncConfig.canceller.register(resource); }
         resource.get();
     }
 
+    /**
+     * Loads the records of the given collection from {@link FirefoxSyncConfig#diskCache} if the collection has not
+     * changed on the server since it was cached. This makes a small info/collections request to check.
+     *
+     * @return the cached records or null if the collection is not cached, has changed, or we were unable to check.
+     */
+    @Nullable
+    @WorkerThread // network request & disk access.
+    static <R> List<R> loadUnchangedCollectionFromDiskCache(final FirefoxSyncConfig syncConfig, final String collectionName,
+            final RecordFactory recordFactory) {
+        final SyncRecordDiskCache diskCache = syncConfig.diskCache;
+        if (diskCache == null) { return null; }
+
+        final long cachedModifiedMillis = diskCache.getModifiedMillis(collectionName);
+        if (cachedModifiedMillis == SyncRecordDiskCache.NOT_CACHED) { return null; }
+
+        final long serverModifiedMillis = FirefoxSyncCollectionInfo.getCollectionModifiedMillisBlocking(syncConfig, collectionName);
+        if (serverModifiedMillis != cachedModifiedMillis) { return null; }
+
+        return diskCache.load(syncConfig, collectionName, recordFactory);
+    }
+
+    /**
+     * Saves the records of a full collection download to {@link FirefoxSyncConfig#diskCache}, if there is one.
+     *
+     * If any records could not be decrypted, the records are not saved: the cache would be served as the unchanged
+     * collection by {@link #loadUnchangedCollectionFromDiskCache(FirefoxSyncConfig, String, RecordFactory)} and the
+     * skipped records would be missing until the collection changed again.
+     *
+     * @param response The response the records were downloaded in, which contains the collection's modified time.
+     * @param encryptAtRest true if the records should be encrypted on disk with the collection's keys.
+     */
+    @WorkerThread // disk access.
+    static void saveCollectionToDiskCache(final FirefoxSyncConfig syncConfig, final HttpResponse response,
+            final String collectionName, final DecryptedRecords<? extends Record> decryptedRecords, final boolean encryptAtRest) {
+        final SyncRecordDiskCache diskCache = syncConfig.diskCache;
+        if (diskCache == null) { return; }
+
+        if (!decryptedRecords.isComplete()) {
+            Log.w(LOGTAG, "Skipped " + decryptedRecords.getSkippedRecordCount() + " records: not caching collection.");
+            return;
+        }
+
+        KeyBundle encryptionKeyBundle = null;
+        if (encryptAtRest) {
+            try {
+                encryptionKeyBundle = syncConfig.collectionKeys.keyBundleForCollection(collectionName);
+            } catch (final NoCollectionKeysSetException e) {
+                Log.w(LOGTAG, "Unable to get key bundle to encrypt cached collection: not caching.");
+                return;
+            }
+        }
+
+        final long modifiedMillis = new SyncResponse(response).normalizedTimestampForHeader(SyncResponse.X_LAST_MODIFIED);
+        diskCache.save(collectionName, modifiedMillis, decryptedRecords.getRecords(), encryptionKeyBundle);
+    }
+
+    /**
+     * Creates a factory for daemon threads, so idle pool threads don't keep the process alive, named with the given
+     * prefix followed by a count, e.g. "FirefoxData-decrypt-1".
+     */
+    static ThreadFactory newDaemonThreadFactory(final String threadNamePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, threadNamePrefix + threadCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     private static Map<String, String> getDefaultArgs() {
         final Map<String, String> args = new HashMap<String, String>();
         args.put("full", "1"); // get full data, not just IDs.
@@ -11,10 +11,20 @@ import android.support.annotation.NonNull;
  */
 public class HistoryRecord {
 
-    private final org.mozilla.gecko.sync.repositories.domain.HistoryRecord underlyingRecord;
+    /** The visit type of a visit whose transition type is not known. Known types are the Places transition types. */
+    public static final int VISIT_TYPE_UNKNOWN = 0;
+
+    /** The most recent visit date of a history entry with no visits. */
+    public static final long NO_VISIT_DATE = -1;
+
+    final org.mozilla.gecko.sync.repositories.domain.HistoryRecord underlyingRecord;
+    final HistoryVisits visits;
 
     HistoryRecord(final org.mozilla.gecko.sync.repositories.domain.HistoryRecord underlyingRecord) {
         this.underlyingRecord = underlyingRecord;
+        this.visits = (underlyingRecord instanceof LazyHistoryRecord) ?
+                ((LazyHistoryRecord) underlyingRecord).getVisitColumns() :
+                HistoryVisits.fromJSONArray(underlyingRecord.visits);
     }
 
     /**
@@ -29,8 +39,36 @@ public class HistoryRecord {
      */
     @NonNull public String getURI() { return StringUtils.emptyStrIfNull(underlyingRecord.histURI); }
 
+    /** @return the number of visits to this page. */
+    public int getVisitCount() { return visits.dates.length; }
+
+    /**
+     * The date of the most recent visit to this page.
+     * @return The date, in microseconds since the epoch, or {@link #NO_VISIT_DATE} if there are no visits.
+     */
+    public long getMostRecentVisitDate() { return visits.mostRecentDate; }
+
+    /**
+     * The dates of the visits to this page, in the order they're stored in the Sync record, which is usually, but not
+     * necessarily, most-recent first.
+     * @return A new array with the dates, in microseconds since the epoch; never null.
+     */
+    @NonNull public long[] getVisitDates() { return visits.dates.clone(); }
+
+    /**
+     * The transition types of the visits to this page, e.g. a link or a typed URI, in the same order as
+     * {@link #getVisitDates()}.
+     * @return A new array with the Places transition types or {@link #VISIT_TYPE_UNKNOWN}; never null.
+     */
+    @NonNull public int[] getVisitTypes() { return visits.types.clone(); }
+
+    /** @return the date of the given visit, as {@link #getVisitDates()} returns it, without copying the dates. */
+    public long getVisitDate(final int visitIndex) { return visits.dates[visitIndex]; }
+
+    /** @return the type of the given visit, as {@link #getVisitTypes()} returns it, without copying the types. */
+    public int getVisitType(final int visitIndex) { return visits.types[visitIndex]; }
+
     // Additional fields we can add:
-    // - visits array (date & type?)
     // - fennecDateVisited (do these rely on fennec data stores?)
     // - fennecVisitCount
 }
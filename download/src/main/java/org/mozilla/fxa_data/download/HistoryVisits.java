@@ -0,0 +1,157 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.mozilla.gecko.sync.JSONTokenReader;
+import org.mozilla.gecko.sync.UnexpectedJSONException;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The visits of a history record as primitive columns: the dates and transition types of the visits, in the order
+ * they're stored in the record, along with the values callers rank history by.
+ *
+ * Visits without an integer date are skipped, as are non-object visits. Visits without an integer type have type
+ * {@link HistoryRecord#VISIT_TYPE_UNKNOWN}.
+ *
+ * This class is immutable: callers must not modify its arrays.
+ */
+class HistoryVisits {
+    static final HistoryVisits NONE = new HistoryVisits(new long[0], new int[0]);
+
+    private static final String KEY_DATE = "date";
+    private static final String KEY_TYPE = "type";
+
+    /** The visit dates, in microseconds since the epoch. */
+    final long[] dates;
+    final int[] types;
+
+    /** The most recent of {@link #dates} or {@link HistoryRecord#NO_VISIT_DATE} if there are no visits. */
+    final long mostRecentDate;
+
+    private HistoryVisits(final long[] dates, final int[] types) {
+        this.dates = dates;
+        this.types = types;
+
+        long mostRecentDate = HistoryRecord.NO_VISIT_DATE;
+        for (final long date : dates) {
+            mostRecentDate = Math.max(mostRecentDate, date);
+        }
+        this.mostRecentDate = mostRecentDate;
+    }
+
+    /** @return the visits with the given dates and types, which the caller must not modify. */
+    @NonNull
+    static HistoryVisits of(@NonNull final long[] dates, @NonNull final int[] types) {
+        return dates.length == 0 ? NONE : new HistoryVisits(dates, types);
+    }
+
+    /** @return the visits in the given visits array, as parsed into a gecko history record. */
+    @NonNull
+    static HistoryVisits fromJSONArray(@Nullable final JSONArray visits) {
+        if (visits == null || visits.isEmpty()) { return NONE; }
+
+        final Builder builder = new Builder(visits.size());
+        for (final Object visit : visits) {
+            if (visit instanceof Map) {
+                final Map<?, ?> visitMap = (Map<?, ?>) visit;
+                builder.add(visitMap.get(KEY_DATE), visitMap.get(KEY_TYPE));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the visits as a visits array of a gecko history record. Visits of type
+     * {@link HistoryRecord#VISIT_TYPE_UNKNOWN} have no type, as they did in the payload they were read from.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked") // json-simple containers are raw types.
+    JSONArray toJSONArray() {
+        final JSONArray visits = new JSONArray();
+        for (int i = 0; i < dates.length; i++) {
+            final JSONObject visit = new JSONObject();
+            visit.put(KEY_DATE, dates[i]);
+            if (types[i] != HistoryRecord.VISIT_TYPE_UNKNOWN) {
+                visit.put(KEY_TYPE, (long) types[i]);
+            }
+            visits.add(visit);
+        }
+        return visits;
+    }
+
+    /**
+     * Reads the visits array at the current position of the given reader without building the visits. Like a gecko
+     * history record, a visits value that isn't an array is read as no visits.
+     */
+    @NonNull
+    static HistoryVisits read(@NonNull final JSONTokenReader reader) throws UnexpectedJSONException {
+        if (reader.peek() != JSONTokenReader.Token.BEGIN_ARRAY) {
+            reader.skipValue();
+            return NONE;
+        }
+
+        final Builder builder = new Builder(8);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() != JSONTokenReader.Token.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+
+            Object date = null;
+            Object type = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (KEY_DATE.equals(name)) {
+                    date = reader.nextValue();
+                } else if (KEY_TYPE.equals(name)) {
+                    type = reader.nextValue();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            builder.add(date, type);
+        }
+        reader.endArray();
+        return builder.build();
+    }
+
+    private static class Builder {
+        private long[] dates;
+        private int[] types;
+        private int count = 0;
+
+        private Builder(final int expectedCount) {
+            dates = new long[expectedCount];
+            types = new int[expectedCount];
+        }
+
+        private void add(@Nullable final Object date, @Nullable final Object type) {
+            // The dates and types are integers: the same values a gecko history record would parse as Longs.
+            if (!(date instanceof Long)) { return; }
+            if (count == dates.length) {
+                final int newLength = Math.max(8, dates.length * 2);
+                dates = Arrays.copyOf(dates, newLength);
+                types = Arrays.copyOf(types, newLength);
+            }
+            dates[count] = (Long) date;
+            types[count] = (type instanceof Long) ? ((Long) type).intValue() : HistoryRecord.VISIT_TYPE_UNKNOWN;
+            count += 1;
+        }
+
+        private HistoryVisits build() {
+            if (count == 0) { return NONE; }
+            return new HistoryVisits(Arrays.copyOf(dates, count), Arrays.copyOf(types, count));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An in-memory copy of the full history collection from the last time it was fetched, along with the server's
+ * last-modified time of the collection at that fetch (the "watermark").
+ *
+ * Once we have a watermark, subsequent fetches only need to request the records modified since then (with the
+ * "newer" argument) and merge them into the cached records, rather than downloading the whole collection again.
+ *
+ * The history is held as a {@link CompactHistory} rather than as records, since it's held for as long as the client
+ * is: a few arrays rather than a few objects per record and per visit. The histories this cache returns are immutable
+ * so they're returned as-is.
+ *
+ * This class is thread-safe.
+ */
+class IncrementalHistoryCache {
+
+    static final long NO_WATERMARK = -1;
+
+    private static final CompactHistory EMPTY = CompactHistory.fromRecords(Collections.<HistoryRecord>emptyList());
+
+    private long lastModifiedMillis = NO_WATERMARK;
+    private CompactHistory history = EMPTY;
+
+    /** @return the server last-modified time in milliseconds of the cached history or {@link #NO_WATERMARK}. */
+    synchronized long getLastModifiedMillis() {
+        return lastModifiedMillis;
+    }
+
+    /**
+     * Restores the cached history from a previous fetch, e.g. from disk, if nothing has been fetched since this cache
+     * was created.
+     *
+     * @return true if the history was restored.
+     */
+    synchronized boolean restore(@NonNull final List<HistoryRecord> allRecords, final long lastModifiedMillis) {
+        if (this.lastModifiedMillis != NO_WATERMARK || lastModifiedMillis == NO_WATERMARK) { return false; }
+
+        this.lastModifiedMillis = lastModifiedMillis;
+        history = CompactHistory.fromRecords(allRecords);
+        return true;
+    }
+
+    /** Replaces the cached history with the given result of a full fetch. */
+    @NonNull
+    synchronized CompactHistory replace(@NonNull final List<HistoryRecord> allRecords, final long newLastModifiedMillis) {
+        if (newLastModifiedMillis == NO_WATERMARK) {
+            // We can't make incremental requests without a watermark so there's no reason to hold onto the history.
+            clear();
+            return CompactHistory.fromRecords(allRecords);
+        }
+
+        lastModifiedMillis = newLastModifiedMillis;
+        history = CompactHistory.fromRecords(allRecords);
+        return history;
+    }
+
+    /**
+     * Merges the records that changed since the given watermark into the cached history.
+     *
+     * Changed records replace their cached versions. Since the server returns history sorted newest first, and all of
+     * the changed records are newer than every cached record, the changed records are placed before the cached
+     * records. The result is the same as if we had fetched the full collection.
+     *
+     * @param sinceLastModifiedMillis The watermark the changed records were requested with.
+     * @param changedRecords The records modified since the watermark, in the order the server returned them.
+     * @param newLastModifiedMillis The server last-modified time of the collection including the changed records.
+     * @return the merged history, or null if the cache no longer holds the history the changes were requested
+     * against, e.g. because it was cleared in the meantime: the cache is left as-is and the caller should fetch the
+     * full history instead.
+     */
+    @Nullable
+    synchronized CompactHistory merge(final long sinceLastModifiedMillis, @NonNull final List<HistoryRecord> changedRecords,
+            final long newLastModifiedMillis) {
+        if (lastModifiedMillis == NO_WATERMARK || sinceLastModifiedMillis > lastModifiedMillis) {
+            // The changes alone aren't the full history: merging them would make the cache claim it holds it.
+            return null;
+        }
+
+        if (sinceLastModifiedMillis != lastModifiedMillis && newLastModifiedMillis <= lastModifiedMillis) {
+            // A concurrent request already merged changes at least as recent as these: the cache is up-to-date.
+            return history;
+        }
+
+        if (changedRecords.isEmpty()) {
+            lastModifiedMillis = newLastModifiedMillis == NO_WATERMARK ? lastModifiedMillis : newLastModifiedMillis;
+            return history;
+        }
+
+        final Set<String> changedGUIDs = new HashSet<>(changedRecords.size());
+        final CompactHistory.Builder builder = new CompactHistory.Builder(history.size() + changedRecords.size());
+        for (final HistoryRecord changedRecord : changedRecords) {
+            changedGUIDs.add(changedRecord.underlyingRecord.guid);
+            builder.add(changedRecord);
+        }
+        for (int i = 0; i < history.size(); i++) {
+            if (!changedGUIDs.contains(history.getGUID(i))) {
+                builder.add(history, i);
+            }
+        }
+
+        history = builder.build();
+        lastModifiedMillis = newLastModifiedMillis == NO_WATERMARK ? lastModifiedMillis : newLastModifiedMillis;
+        return history;
+    }
+
+    synchronized void clear() {
+        lastModifiedMillis = NO_WATERMARK;
+        history = EMPTY;
+    }
+}
@@ -4,11 +4,15 @@
 
 package org.mozilla.fxa_data.download;
 
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import org.mozilla.fxa_data.FirefoxData;
 import org.mozilla.gecko.sync.CollectionKeys;
 import org.mozilla.gecko.tokenserver.TokenServerToken;
 import org.mozilla.fxa_data.impl.FirefoxAccount;
 
+import java.io.File;
+
 /**
  * <b>NON-PUBLIC API:</b> please use {@link FirefoxData} instead. This class is used to escalate
  * visibility of {@code protected} components for internal library use.
@@ -16,9 +20,55 @@ import org.mozilla.fxa_data.impl.FirefoxAccount;
 public class InternalFirefoxDataClientFactory {
     private InternalFirefoxDataClientFactory() {}
 
+    /** Please don't use directly. */
+    public interface OnKeysChangedListener {
+        /**
+         * Called when a data client's request fails because the collection keys it was created with changed on the
+         * server, before the {@link FirefoxDataKeysChangedException} is thrown to the caller.
+         */
+        @WorkerThread void onKeysChanged();
+    }
+
+    /** Please don't use directly. */
+    public interface OnTokenRejectedListener {
+        /**
+         * Called when a data client's request fails because the storage server rejected the token it was created with,
+         * before the {@link FirefoxDataTokenRejectedException} is thrown to the caller.
+         */
+        @WorkerThread void onTokenRejected();
+    }
+
     /** Please don't use directly. */
     public static FirefoxDataClient getDataClient(final FirefoxAccount account, final TokenServerToken token,
             final CollectionKeys collectionKeys) {
-        return new FirefoxDataFirefoxAccountClient(account, token, collectionKeys);
+        return getDataClient(account, token, collectionKeys, null);
+    }
+
+    /** Please don't use directly. */
+    public static FirefoxDataClient getDataClient(final FirefoxAccount account, final TokenServerToken token,
+            final CollectionKeys collectionKeys, @Nullable final File recordCacheDir) {
+        return getDataClient(account, token, collectionKeys, recordCacheDir, null);
+    }
+
+    /** Please don't use directly. */
+    public static FirefoxDataClient getDataClient(final FirefoxAccount account, final TokenServerToken token,
+            final CollectionKeys collectionKeys, @Nullable final File recordCacheDir,
+            @Nullable final OnKeysChangedListener onKeysChangedListener) {
+        return getDataClient(account, token, collectionKeys, recordCacheDir, onKeysChangedListener, null);
+    }
+
+    /** Please don't use directly. */
+    public static FirefoxDataClient getDataClient(final FirefoxAccount account, final TokenServerToken token,
+            final CollectionKeys collectionKeys, @Nullable final File recordCacheDir,
+            @Nullable final OnKeysChangedListener onKeysChangedListener,
+            @Nullable final OnTokenRejectedListener onTokenRejectedListener) {
+        return new FirefoxDataFirefoxAccountClient(account, token, collectionKeys, recordCacheDir, onKeysChangedListener,
+                onTokenRejectedListener);
+    }
+
+    /** Please don't use directly. */
+    @WorkerThread // disk access.
+    public static void deleteRecordCache(final File recordCacheDir) {
+        SyncRecordDiskCache.clearAll(recordCacheDir);
     }
 }
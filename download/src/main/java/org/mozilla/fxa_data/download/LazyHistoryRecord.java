@@ -0,0 +1,155 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import org.json.simple.JSONArray;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.JSONTokenReader;
+import org.mozilla.gecko.sync.UnexpectedJSONException;
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord;
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory;
+import org.mozilla.gecko.sync.repositories.domain.Record;
+import org.mozilla.gecko.sync.repositories.domain.RecordPayloadDecoder;
+
+/**
+ * A history record whose visits are only read into primitive {@link HistoryVisits} columns when it's created.
+ *
+ * A history record can have hundreds of visits, which take longer to decode, and more memory to hold, than the rest of
+ * the record. Many callers, e.g. a list of titles and URIs, never use them, and the columns are enough to rank and
+ * filter the history, so these records don't build the JSON visits until they're needed. The payload is still fully
+ * read when the record is created so malformed records are rejected as before. The columns are all that's kept of the
+ * visits: the cleartext payload isn't kept.
+ *
+ * The JSON visits are rebuilt from the columns so they only include the date and type of each visit, and they omit
+ * the visits the columns skip: see {@link HistoryVisits}.
+ *
+ * The gecko code reads {@link #visits} directly so callers must call {@link #decodeVisits()} before reading it. The
+ * methods of this class that compare or copy the visits decode them first; {@link #getEnvelope()} builds them for the
+ * envelope only, so saving the records to the disk cache doesn't keep them.
+ *
+ * This class is thread-safe.
+ */
+class LazyHistoryRecord extends HistoryRecord {
+
+    private static final String KEY_VISITS = "visits";
+
+    @NonNull private HistoryVisits visitColumns = HistoryVisits.NONE;
+
+    /** False if the payload had no visits, or null visits, which the gecko record reads as null {@link #visits}. */
+    private boolean hasVisitsArray = false;
+
+    /** True if {@link #visits} was built from {@link #visitColumns}. */
+    private boolean isDecoded = false;
+
+    private LazyHistoryRecord() {}
+
+    private LazyHistoryRecord(final String guid, final long lastModified) {
+        super(guid, COLLECTION_NAME, lastModified, false);
+    }
+
+    /** @return a record with the given fields, as if it were downloaded with a visits array. */
+    @NonNull
+    static LazyHistoryRecord fromColumns(@NonNull final String guid, final long lastModified, @NonNull final String histURI,
+            @NonNull final String title, @NonNull final HistoryVisits visitColumns) {
+        final LazyHistoryRecord record = new LazyHistoryRecord(guid, lastModified);
+        record.histURI = histURI;
+        record.title = title;
+        record.visitColumns = visitColumns;
+        record.hasVisitsArray = true;
+        return record;
+    }
+
+    /** Builds the visits of this record from its columns, if they're not built yet, so {@link #visits} can be read. */
+    synchronized void decodeVisits() {
+        if (isDecoded) { return; }
+        visits = getVisitsJSONArray();
+        isDecoded = true;
+    }
+
+    /** @return the visits of this record, which are read when the record is created. */
+    @NonNull
+    HistoryVisits getVisitColumns() {
+        return visitColumns; // Only set on the creating thread before the record is published, so no need to synchronize.
+    }
+
+    /** @return the built visits or, if they're not built yet, new visits built from the columns. */
+    @Nullable
+    private synchronized JSONArray getVisitsJSONArray() {
+        if (isDecoded) { return visits; }
+        return hasVisitsArray ? visitColumns.toJSONArray() : null;
+    }
+
+    @Override
+    protected void populatePayload(final ExtendedJSONObject payload) {
+        super.populatePayload(payload);
+        payload.put(KEY_VISITS, getVisitsJSONArray());
+    }
+
+    @Override
+    public Record copyWithIDs(final String guid, final long androidID) {
+        decodeVisits();
+        return super.copyWithIDs(guid, androidID);
+    }
+
+    @Override
+    public boolean equalPayloads(final Object o) {
+        decodeVisits();
+        if (o instanceof LazyHistoryRecord) {
+            ((LazyHistoryRecord) o).decodeVisits();
+        }
+        return super.equalPayloads(o);
+    }
+
+    /** Creates {@link LazyHistoryRecord}s, or regular history records when they're created from parsed payloads. */
+    static class Factory extends HistoryRecordFactory {
+        @Override
+        public RecordPayloadDecoder newPayloadDecoder() {
+            // The visits are read into visitColumns rather than into visits.
+            return new HistoryRecordFactory.PayloadDecoder() {
+                /** The visits of the payload being decoded. */
+                private HistoryVisits visitColumns = HistoryVisits.NONE;
+                private boolean hasVisitsArray = false;
+
+                @Override
+                protected LazyHistoryRecord newRecord() {
+                    return new LazyHistoryRecord();
+                }
+
+                @Override
+                protected Object readValue(final String key, final JSONTokenReader reader) throws UnexpectedJSONException {
+                    if (!KEY_VISITS.equals(key)) {
+                        return super.readValue(key, reader);
+                    }
+
+                    // The record reads null visits as missing, which it leaves for decodeVisits to fill in. Like the
+                    // gecko record, we read visits that aren't an array as empty, but null visits as null.
+                    hasVisitsArray = reader.peek() != JSONTokenReader.Token.NULL;
+                    visitColumns = HistoryVisits.read(reader);
+                    return null;
+                }
+
+                @Override
+                public Record decode(final CryptoRecord envelope, @NonNull final byte[] cleartext) throws UnexpectedJSONException {
+                    visitColumns = HistoryVisits.NONE;
+                    hasVisitsArray = false;
+                    try {
+                        final LazyHistoryRecord record = (LazyHistoryRecord) super.decode(envelope, cleartext);
+                        if (!record.deleted) {
+                            // Only set on this thread before the record is published.
+                            record.visitColumns = visitColumns;
+                            record.hasVisitsArray = hasVisitsArray;
+                        }
+                        return record;
+                    } finally {
+                        visitColumns = HistoryVisits.NONE; // Don't hold onto them until the next payload.
+                    }
+                }
+            };
+        }
+    }
+}
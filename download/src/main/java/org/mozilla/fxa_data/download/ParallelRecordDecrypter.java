@@ -0,0 +1,307 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+import org.mozilla.fxa_data.FirefoxDataException;
+import org.mozilla.fxa_data.impl.FirefoxDataShared;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.NonArrayJSONException;
+import org.mozilla.gecko.sync.NonObjectJSONException;
+import org.mozilla.gecko.sync.UnexpectedJSONException;
+import org.mozilla.gecko.sync.crypto.CryptoException;
+import org.mozilla.gecko.sync.crypto.HMACVerificationException;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
+import org.mozilla.gecko.sync.crypto.KeyBundleDecrypter;
+import org.mozilla.gecko.sync.repositories.RecordFactory;
+import org.mozilla.gecko.sync.repositories.domain.Record;
+import org.mozilla.gecko.sync.repositories.domain.RecordParseException;
+import org.mozilla.gecko.sync.repositories.domain.RecordPayloadDecoder;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decrypts the records read from a {@link SyncRecordStreamReader}, optionally across several threads.
+ *
+ * Each record needs HMAC verification, AES decryption and a JSON parse so large collections are CPU bound. If the
+ * {@link RecordFactory} has a {@link RecordPayloadDecoder}, records are created straight from their decrypted payloads
+ * rather than from parsed payloads, which is faster. The calling
+ * thread reads records from the network and groups them into chunks, which are decrypted on a shared pool of worker
+ * threads. The results are collected in the order the chunks were read so the order the server returned the records
+ * in (e.g. history's "sort=newest") is preserved.
+ *
+ * To bound memory use, at most {@link #parallelism} chunks are in-flight at a time: when that limit is reached, the
+ * calling thread waits for the oldest chunk to complete before reading more records.
+ *
+ * Optionally, the calling thread verifies the HMACs of each chunk before handing it to the workers, as a separate
+ * pipeline stage: records that fail verification, e.g. tampered or corrupt records, only cost a hash and never reach
+ * the decrypt workers, and the workers only decrypt records that are known to be valid.
+ */
+class ParallelRecordDecrypter {
+
+    private static final String LOGTAG = FirefoxDataShared.LOGTAG;
+
+    /** The default number of concurrent decrypt tasks; we're CPU-bound so we use all the cores. */
+    static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    /** Large enough to amortize the task overhead, small enough that small collections are still split up. */
+    static final int DEFAULT_CHUNK_SIZE = 64;
+
+    /**
+     * Off by default: workers already verify each record's HMAC before decrypting it, and verifying on the calling
+     * thread, which also reads the records, may make it the bottleneck on devices with many cores.
+     */
+    static final boolean DEFAULT_PRE_VERIFY_HMACS = false;
+
+    private static final ExecutorService decryptExecutor = newDecryptExecutor();
+
+    private final int parallelism;
+    private final int chunkSize;
+    private final boolean preVerifyHMACs;
+
+    /**
+     * @param parallelism The maximum number of chunks to decrypt concurrently. If <= 1, records are decrypted on the
+     *                    calling thread.
+     * @param chunkSize The number of records to decrypt in each task - must be > 0.
+     * @param preVerifyHMACs True to verify the HMACs of each chunk on the calling thread before it's decrypted. This
+     *                       has no effect when decrypting on the calling thread, where each record's HMAC is already
+     *                       verified before it's decrypted.
+     */
+    ParallelRecordDecrypter(final int parallelism, final int chunkSize, final boolean preVerifyHMACs) {
+        if (chunkSize <= 0) { throw new IllegalArgumentException("Expected chunk size larger than 0. Got: " + chunkSize); }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.preVerifyHMACs = preVerifyHMACs;
+    }
+
+    /**
+     * Reads all records from the given reader and decrypts them, returning the records in the order they were read.
+     * Records that fail to decrypt are skipped and counted in the result.
+     */
+    <R> DecryptedRecords<R> decryptAll(final SyncRecordStreamReader recordReader, final KeyBundle keyBundle,
+            final RecordFactory recordFactory) throws IOException, NonArrayJSONException, NonObjectJSONException, FirefoxDataException {
+        if (parallelism <= 1) {
+            return decryptAllOnCallingThread(recordReader, keyBundle, recordFactory);
+        }
+
+        // Only used on this thread, which is the verification stage.
+        final KeyBundleDecrypter verifier = preVerifyHMACs ? newDecrypter(keyBundle) : null;
+
+        final DecryptedRecords<R> decryptedRecords = new DecryptedRecords<>();
+        final Deque<Future<DecryptedRecords<R>>> inFlightChunks = new ArrayDeque<>(parallelism);
+        try {
+            List<ExtendedJSONObject> chunk;
+            while (!(chunk = readChunk(recordReader)).isEmpty()) {
+                // Verify before waiting so the workers decrypt the in-flight chunks in the meantime.
+                final Callable<DecryptedRecords<R>> decryptTask = verifier == null ?
+                        new DecryptChunkTask<R>(chunk, keyBundle, recordFactory) :
+                        new DecryptVerifiedChunkTask<R>(verifyChunk(chunk, verifier, decryptedRecords), keyBundle, recordFactory);
+
+                if (inFlightChunks.size() >= parallelism) {
+                    decryptedRecords.addAll(awaitChunk(inFlightChunks.removeFirst()));
+                }
+                inFlightChunks.addLast(decryptExecutor.submit(decryptTask));
+            }
+
+            while (!inFlightChunks.isEmpty()) {
+                decryptedRecords.addAll(awaitChunk(inFlightChunks.removeFirst()));
+            }
+        } finally {
+            // If we failed early, there's no reason to keep decrypting.
+            for (final Future<DecryptedRecords<R>> inFlightChunk : inFlightChunks) {
+                inFlightChunk.cancel(true);
+            }
+        }
+        return decryptedRecords;
+    }
+
+    private <R> DecryptedRecords<R> decryptAllOnCallingThread(final SyncRecordStreamReader recordReader, final KeyBundle keyBundle,
+            final RecordFactory recordFactory) throws IOException, NonArrayJSONException, NonObjectJSONException, FirefoxDataException {
+        final KeyBundleDecrypter decrypter = newDecrypter(keyBundle);
+        final RecordPayloadDecoder payloadDecoder = recordFactory.newPayloadDecoder();
+        final DecryptedRecords<R> decryptedRecords = new DecryptedRecords<>();
+        ExtendedJSONObject jsonRecord;
+        while ((jsonRecord = recordReader.next()) != null) {
+            decryptRecordInto(decryptedRecords, recordFactory, payloadDecoder, decrypter, jsonRecord);
+        }
+        return decryptedRecords;
+    }
+
+    private List<ExtendedJSONObject> readChunk(final SyncRecordStreamReader recordReader)
+            throws IOException, NonArrayJSONException, NonObjectJSONException {
+        final ArrayList<ExtendedJSONObject> chunk = new ArrayList<>(chunkSize);
+        ExtendedJSONObject jsonRecord;
+        while (chunk.size() < chunkSize && (jsonRecord = recordReader.next()) != null) {
+            chunk.add(jsonRecord);
+        }
+        return chunk;
+    }
+
+    private static KeyBundleDecrypter newDecrypter(final KeyBundle keyBundle) throws FirefoxDataException {
+        try {
+            return new KeyBundleDecrypter(keyBundle);
+        } catch (final CryptoException e) {
+            throw new FirefoxDataException("Unable to create decrypter.", e);
+        }
+    }
+
+    /**
+     * @return the records in the given chunk whose HMACs validate; the other records are skipped and counted in the
+     *         given records.
+     */
+    private static List<CryptoRecord> verifyChunk(final List<ExtendedJSONObject> chunk, final KeyBundleDecrypter verifier,
+            final DecryptedRecords<?> decryptedRecords) {
+        final ArrayList<CryptoRecord> verifiedRecords = new ArrayList<>(chunk.size());
+        for (final ExtendedJSONObject jsonRecord : chunk) {
+            try {
+                final CryptoRecord cryptoRecord = CryptoRecord.fromJSONRecord(jsonRecord);
+                if (cryptoRecord.verifyHMAC(verifier)) {
+                    verifiedRecords.add(cryptoRecord);
+                } else {
+                    Log.w(LOGTAG, "Record failed HMAC verification");
+                    decryptedRecords.addSkipped(true);
+                }
+            } catch (final IOException | NonObjectJSONException | CryptoException | RecordParseException | ClassCastException e) {
+                Log.w(LOGTAG, "Unable to verify record"); // Let's not log exception to avoid leaking user data.
+                decryptedRecords.addSkipped(false);
+            }
+        }
+        return verifiedRecords;
+    }
+
+    private static <R> DecryptedRecords<R> awaitChunk(final Future<DecryptedRecords<R>> chunkFuture) throws FirefoxDataException {
+        try {
+            return chunkFuture.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FirefoxDataException("Interrupted while waiting for records to decrypt.", e);
+        } catch (final ExecutionException e) {
+            throw new FirefoxDataException("Unexpected exception while decrypting records.", e.getCause());
+        }
+    }
+
+    /**
+     * Decrypts the given record and adds it to the given records or, if it could not be decrypted, counts it as skipped.
+     *
+     * @param payloadDecoder the decoder to create the record with, or null to create it with the record factory.
+     */
+    private static <R> void decryptRecordInto(final DecryptedRecords<R> decryptedRecords, final RecordFactory recordFactory,
+            @Nullable final RecordPayloadDecoder payloadDecoder, final KeyBundleDecrypter decrypter, final ExtendedJSONObject json) {
+        try {
+            final CryptoRecord cryptoRecord = CryptoRecord.fromJSONRecord(json);
+            if (payloadDecoder != null) {
+                addRecord(decryptedRecords, payloadDecoder.decode(cryptoRecord, cryptoRecord.decryptCleartext(decrypter)));
+                return;
+            }
+            cryptoRecord.decrypt(decrypter);
+            addRecord(decryptedRecords, recordFactory.createRecord(cryptoRecord));
+        } catch (final HMACVerificationException e) {
+            Log.w(LOGTAG, "Record failed HMAC verification");
+            decryptedRecords.addSkipped(true);
+        } catch (final IOException | UnexpectedJSONException | CryptoException | RecordParseException | ClassCastException e) {
+            Log.w(LOGTAG, "Unable to decrypt record"); // Let's not log exception to avoid leaking user data.
+            decryptedRecords.addSkipped(false);
+        }
+    }
+
+    /**
+     * Decrypts the given verified record and adds it to the given records or, if it could not be decrypted, counts it
+     * as skipped.
+     *
+     * @param payloadDecoder the decoder to create the record with, or null to create it with the record factory.
+     */
+    private static <R> void decryptVerifiedRecordInto(final DecryptedRecords<R> decryptedRecords,
+            final RecordFactory recordFactory, @Nullable final RecordPayloadDecoder payloadDecoder,
+            final KeyBundleDecrypter decrypter, final CryptoRecord verifiedRecord) {
+        try {
+            if (payloadDecoder != null) {
+                addRecord(decryptedRecords, payloadDecoder.decode(verifiedRecord, verifiedRecord.decryptVerifiedCleartext(decrypter)));
+                return;
+            }
+            verifiedRecord.decryptVerified(decrypter);
+            addRecord(decryptedRecords, recordFactory.createRecord(verifiedRecord));
+        } catch (final IOException | UnexpectedJSONException | CryptoException | ClassCastException e) {
+            Log.w(LOGTAG, "Unable to decrypt record"); // Let's not log exception to avoid leaking user data.
+            decryptedRecords.addSkipped(false);
+        }
+    }
+
+    /** Adds the given record, which the record factory created as an R. */
+    @SuppressWarnings("unchecked")
+    private static <R> void addRecord(final DecryptedRecords<R> decryptedRecords, final Record record) {
+        decryptedRecords.add((R) record); // We should rm this cast. To save time, I didn't generify RecordFactory.
+    }
+
+    private static class DecryptChunkTask<R> implements Callable<DecryptedRecords<R>> {
+        private final List<ExtendedJSONObject> chunk;
+        private final KeyBundle keyBundle;
+        private final RecordFactory recordFactory;
+
+        private DecryptChunkTask(final List<ExtendedJSONObject> chunk, final KeyBundle keyBundle, final RecordFactory recordFactory) {
+            this.chunk = chunk;
+            this.keyBundle = keyBundle;
+            this.recordFactory = recordFactory;
+        }
+
+        @Override
+        public DecryptedRecords<R> call() throws CryptoException {
+            // The decrypter and decoder are not thread-safe so each task gets its own, reused for every record in the chunk.
+            final KeyBundleDecrypter decrypter = new KeyBundleDecrypter(keyBundle);
+            final RecordPayloadDecoder payloadDecoder = recordFactory.newPayloadDecoder();
+            final DecryptedRecords<R> decryptedRecords = new DecryptedRecords<>(chunk.size());
+            for (final ExtendedJSONObject jsonRecord : chunk) {
+                decryptRecordInto(decryptedRecords, recordFactory, payloadDecoder, decrypter, jsonRecord);
+            }
+            return decryptedRecords;
+        }
+    }
+
+    /** Decrypts a chunk of records whose HMACs were already verified. */
+    private static class DecryptVerifiedChunkTask<R> implements Callable<DecryptedRecords<R>> {
+        private final List<CryptoRecord> verifiedChunk;
+        private final KeyBundle keyBundle;
+        private final RecordFactory recordFactory;
+
+        private DecryptVerifiedChunkTask(final List<CryptoRecord> verifiedChunk, final KeyBundle keyBundle,
+                final RecordFactory recordFactory) {
+            this.verifiedChunk = verifiedChunk;
+            this.keyBundle = keyBundle;
+            this.recordFactory = recordFactory;
+        }
+
+        @Override
+        public DecryptedRecords<R> call() throws CryptoException {
+            final KeyBundleDecrypter decrypter = new KeyBundleDecrypter(keyBundle);
+            final RecordPayloadDecoder payloadDecoder = recordFactory.newPayloadDecoder();
+            final DecryptedRecords<R> decryptedRecords = new DecryptedRecords<>(verifiedChunk.size());
+            for (final CryptoRecord verifiedRecord : verifiedChunk) {
+                decryptVerifiedRecordInto(decryptedRecords, recordFactory, payloadDecoder, decrypter, verifiedRecord);
+            }
+            return decryptedRecords;
+        }
+    }
+
+    private static ExecutorService newDecryptExecutor() {
+        // Idle threads time out so we don't hold onto threads between downloads.
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_PARALLELISM, DEFAULT_PARALLELISM,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                FirefoxSyncUtils.newDaemonThreadFactory("FirefoxData-decrypt-"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,79 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of the response bodies read by the requests made with a {@link FirefoxSyncConfig}: both as they're
+ * received from the server, possibly compressed, and as they're decoded. The bytes are counted as they're read so
+ * aborted requests count what they read before they were aborted.
+ *
+ * This class is thread-safe.
+ */
+class ResponseByteCounter {
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong decodedBytes = new AtomicLong();
+
+    /** @return a stream that reads the given response body, as received from the server, counting its bytes. */
+    @NonNull
+    InputStream countReceived(@NonNull final InputStream receivedStream) {
+        return new CountingInputStream(receivedStream, receivedBytes);
+    }
+
+    /** @return a stream that reads the given decoded response body, counting its bytes. */
+    @NonNull
+    InputStream countDecoded(@NonNull final InputStream decodedStream) {
+        return new CountingInputStream(decodedStream, decodedBytes);
+    }
+
+    /** @return a snapshot of the bytes counted so far. */
+    @NonNull
+    FirefoxDataTransferStats getStats() {
+        return new FirefoxDataTransferStats(receivedBytes.get(), decodedBytes.get());
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final AtomicLong byteCount;
+
+        private CountingInputStream(final InputStream in, final AtomicLong byteCount) {
+            super(in);
+            this.byteCount = byteCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                byteCount.incrementAndGet();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+            final int readCount = super.read(buffer, offset, length);
+            if (readCount > 0) {
+                byteCount.addAndGet(readCount);
+            }
+            return readCount;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipCount = super.skip(n);
+            byteCount.addAndGet(skipCount);
+            return skipCount;
+        }
+
+        // We can't count bytes that are read again after a reset.
+        @Override public boolean markSupported() { return false; }
+    }
+}
@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import org.mozilla.fxa_data.FirefoxDataException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, the other calls for that key wait for it
+ * and share its result, or its exception, rather than making the same requests & decrypting the same records again.
+ * Calls that start after it completes make a new call, so they never get stale results.
+ *
+ * The waiting calls get the same {@link FirefoxDataResult} instance as the call they waited for: calls must return
+ * results that can't be modified, e.g. unmodifiable lists.
+ *
+ * If the in-flight call fails because it was cancelled, the calls waiting on it aren't cancelled: one of them makes
+ * the call again.
+ *
+ * This class is thread-safe.
+ */
+class SingleFlight {
+
+    interface Call<T> {
+        @NonNull FirefoxDataResult<T> call() throws FirefoxDataException;
+    }
+
+    private final Map<String, Flight<?>> flights = new HashMap<>();
+
+    /**
+     * Makes the given call, unless a call for the same key is in flight, in which case it waits for that call's result.
+     *
+     * @param key identifies the requests the call makes, e.g. the collection and its arguments.
+     * @param canceller the canceller of the call's requests, if it can be cancelled.
+     */
+    @NonNull
+    <T> FirefoxDataResult<T> run(@NonNull final String key, @Nullable final SyncRequestCanceller canceller,
+            @NonNull final Call<T> call) throws FirefoxDataException {
+        while (true) {
+            final Flight<?> existingFlight;
+            final Flight<T> newFlight;
+            synchronized (this) {
+                existingFlight = flights.get(key);
+                if (existingFlight == null) {
+                    newFlight = new Flight<>();
+                    flights.put(key, newFlight);
+                } else {
+                    newFlight = null;
+                    existingFlight.waiterCount += 1;
+                }
+            }
+
+            if (newFlight != null) {
+                return runFlight(key, newFlight, canceller, call);
+            }
+
+            @SuppressWarnings("unchecked") // Calls with the same key return the same type.
+            final FirefoxDataResult<T> result = ((Flight<T>) existingFlight).await();
+            if (result != null) {
+                return result;
+            }
+            // The call we waited for was cancelled: try again.
+        }
+    }
+
+    /** @return the number of calls that joined the call in flight for the given key, or 0 if there is none. */
+    synchronized int getWaiterCount(@NonNull final String key) {
+        final Flight<?> flight = flights.get(key);
+        return flight == null ? 0 : flight.waiterCount;
+    }
+
+    @NonNull
+    private <T> FirefoxDataResult<T> runFlight(final String key, final Flight<T> flight,
+            @Nullable final SyncRequestCanceller canceller, final Call<T> call) throws FirefoxDataException {
+        FirefoxDataResult<T> result = null;
+        FirefoxDataException exception = null;
+        try {
+            result = call.call();
+            return result;
+        } catch (final FirefoxDataException e) {
+            exception = e;
+            throw e;
+        } catch (final RuntimeException e) {
+            exception = new FirefoxDataException("Unexpected exception while retrieving collection.", e);
+            throw e;
+        } finally {
+            // Remove the flight before we complete it so calls that start after it has completed don't join it.
+            synchronized (this) {
+                flights.remove(key);
+            }
+            final boolean isCancelled = canceller != null && canceller.isCancelled();
+            flight.complete(result, isCancelled ? null : exception);
+        }
+    }
+
+    /** A call in flight. Its result, or exception, is published by {@link #complete(FirefoxDataResult, FirefoxDataException)}. */
+    private static class Flight<T> {
+        private final CountDownLatch completeLatch = new CountDownLatch(1);
+        private int waiterCount = 0; // Guarded by the SingleFlight.
+        private FirefoxDataResult<T> result;
+        private FirefoxDataException exception;
+
+        /** @param result the result of the call, or null if it failed: with the given exception, or because it was cancelled. */
+        void complete(@Nullable final FirefoxDataResult<T> result, @Nullable final FirefoxDataException exception) {
+            this.result = result;
+            this.exception = exception;
+            completeLatch.countDown(); // Publishes the fields to the waiting threads.
+        }
+
+        /** @return the result of the call, or null if it was cancelled. */
+        @Nullable
+        FirefoxDataResult<T> await() throws FirefoxDataException {
+            try {
+                completeLatch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new FirefoxDataException("Interrupted while waiting for identical request.", e);
+            }
+            if (exception != null) {
+                throw exception;
+            }
+            return result;
+        }
+    }
+}
@@ -5,35 +5,36 @@
 package org.mozilla.fxa_data.download;
 
 import android.util.Log;
+import ch.boye.httpclientandroidlib.Header;
+import ch.boye.httpclientandroidlib.HttpEntity;
+import ch.boye.httpclientandroidlib.HttpHeaders;
 import ch.boye.httpclientandroidlib.HttpResponse;
 import ch.boye.httpclientandroidlib.client.ClientProtocolException;
 import ch.boye.httpclientandroidlib.client.methods.HttpRequestBase;
 import ch.boye.httpclientandroidlib.impl.client.DefaultHttpClient;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.mozilla.gecko.sync.CryptoRecord;
-import org.mozilla.gecko.sync.ExtendedJSONObject;
 import org.mozilla.gecko.sync.NoCollectionKeysSetException;
+import org.mozilla.gecko.sync.NonArrayJSONException;
 import org.mozilla.gecko.sync.NonObjectJSONException;
-import org.mozilla.gecko.sync.crypto.CryptoException;
 import org.mozilla.gecko.sync.crypto.KeyBundle;
 import org.mozilla.gecko.sync.net.AuthHeaderProvider;
+import org.mozilla.gecko.sync.net.BaseResource;
 import org.mozilla.gecko.sync.net.ResourceDelegate;
 import org.mozilla.gecko.sync.repositories.RecordFactory;
-import org.mozilla.gecko.sync.repositories.domain.HistoryRecord;
-import org.mozilla.gecko.sync.repositories.domain.Record;
 import org.mozilla.fxa_data.FirefoxDataException;
 import org.mozilla.fxa_data.impl.FirefoxDataShared;
 import org.mozilla.fxa_data.impl.FirefoxDataRequestUtils;
 import org.mozilla.fxa_data.impl.IOUtils;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.security.GeneralSecurityException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Base implementation for requests made by {@see org.mozilla.accounts.sync.FirefoxAccountSyncClient}:
@@ -46,6 +47,12 @@ abstract class SyncBaseResourceDelegate<T> implements ResourceDelegate {
     private static final int connectionTimeoutInMillis = 1000 * 30; // Wait 30s for a connection to open.
     private static final int socketTimeoutInMillis = 1000 * 2 * 60; // Wait 2 minutes for data.
 
+    // Encrypted records are Base64 JSON, which compresses well: the server compresses responses if we accept it.
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    private static final int INFLATER_BUFFER_SIZE = 8192;
+
+    private static final int HTTP_UNAUTHORIZED = 401;
+
     /** The sync config associated with the request. */
     protected final FirefoxSyncConfig syncConfig;
     protected final OnSyncComplete<T> onComplete;
@@ -55,18 +62,92 @@ abstract class SyncBaseResourceDelegate<T> implements ResourceDelegate {
         this.onComplete = onComplete;
     }
 
-    public abstract void handleResponse(final HttpResponse response, final String responseBody);
+    /**
+     * Handles the response to the request. The response body is streamed from the network, and decompressed if the
+     * server compressed it, so it should be read incrementally, e.g. with
+     * {@link #responseBodyToRawRecords(FirefoxSyncConfig, InputStream, String, RecordFactory)}, rather than buffered in
+     * its entirety. The stream will be closed after this method returns.
+     */
+    public abstract void handleResponse(final HttpResponse response, final InputStream responseBody);
 
     @Override
     public final void handleHttpResponse(final HttpResponse response) {
-        final String responseBody;
+        if (response.getStatusLine().getStatusCode() == HTTP_UNAUTHORIZED) {
+            // The body isn't what the request asked for so don't let the subclass try to read it.
+            BaseResource.consumeEntity(response);
+            onComplete.onException(new FirefoxDataTokenRejectedException("The storage server rejected the Sync token."));
+            return;
+        }
+
+        final InputStream responseBody;
         try {
-            responseBody = IOUtils.readStringFromInputStreamAndCloseStream(response.getEntity().getContent(), 4096);
+            responseBody = getDecodedContent(response.getEntity(), syncConfig.responseByteCounter);
         } catch (final IOException e) {
+            BaseResource.consumeEntity(response);
             onComplete.onException(new FirefoxDataException("Failed to read server response.", e));
             return;
         }
-        handleResponse(response, responseBody);
+
+        try {
+            handleResponse(response, responseBody);
+        } finally {
+            // Closing the stream returns the connection to the pool.
+            IOUtils.safeStreamClose(responseBody);
+        }
+    }
+
+    /**
+     * Returns the content of the given response entity, decompressed according to its Content-Encoding. The bytes are
+     * counted as they're read, both as received and as decompressed, by the given counter.
+     */
+    static InputStream getDecodedContent(final HttpEntity entity, final ResponseByteCounter byteCounter) throws IOException {
+        final InputStream receivedContent = byteCounter.countReceived(entity.getContent());
+        final Header contentEncodingHeader = entity.getContentEncoding();
+        final String contentEncoding = (contentEncodingHeader == null) ? "" :
+                contentEncodingHeader.getValue().trim().toLowerCase(Locale.US);
+
+        final InputStream decodedContent;
+        switch (contentEncoding) {
+            case "gzip":
+            case "x-gzip":
+                decodedContent = new GZIPInputStream(receivedContent, INFLATER_BUFFER_SIZE);
+                break;
+
+            case "deflate":
+                decodedContent = newInflatingStream(receivedContent);
+                break;
+
+            default: // "identity", or none. We don't accept others so we let the record reader fail on them.
+                decodedContent = receivedContent;
+        }
+        return byteCounter.countDecoded(decodedContent);
+    }
+
+    /**
+     * Returns a stream that inflates the given "deflate" content. Servers send either zlib (RFC 1950) or raw deflate
+     * (RFC 1951) streams for it so we check for a zlib header. We don't use httpclient's DeflateInputStream, which
+     * mistakes highly compressed zlib streams, like our records, for raw ones.
+     */
+    private static InputStream newInflatingStream(final InputStream deflatedContent) throws IOException {
+        final PushbackInputStream content = new PushbackInputStream(deflatedContent, 2);
+        final int cmf = content.read();
+        final int flg = (cmf == -1) ? -1 : content.read();
+        if (flg != -1) { content.unread(flg); }
+        if (cmf != -1) { content.unread(cmf); }
+
+        // A zlib header is the deflate method & window size, then a check byte that makes the pair a multiple of 31.
+        final boolean isZlib = (flg != -1) && (cmf & 0x0f) == 8 && (cmf >> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+        final Inflater inflater = new Inflater(!isZlib);
+        return new InflaterInputStream(content, inflater, INFLATER_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end(); // InflaterInputStream only ends the Inflaters it creates.
+                }
+            }
+        };
     }
 
     private void handleException(final Throwable cause) {
@@ -98,40 +179,43 @@ abstract class SyncBaseResourceDelegate<T> implements ResourceDelegate {
         }
     }
 
-    @Override public void addHeaders(HttpRequestBase request, DefaultHttpClient client) { }
+    @Override public void addHeaders(HttpRequestBase request, DefaultHttpClient client) {
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+    }
 
-    /** Convenience function to turn a request's response body into a list of records of the parametrized type. */
-    protected static <R> List<R> responseBodyToRawRecords(final FirefoxSyncConfig syncConfig, final String responseBody,
+    /**
+     * Convenience function to turn a request's response body into a list of records of the parametrized type.
+     *
+     * Records are read from the stream one at a time so we never hold the full response body in memory, and are
+     * decrypted according to {@link FirefoxSyncConfig#recordDecrypter}. The records are returned in the order the
+     * server sent them; records that could not be decrypted are skipped, so check
+     * {@link DecryptedRecords#isComplete()} before treating them as the full collection.
+     *
+     * @throws FirefoxDataKeysChangedException if every record failed HMAC verification: rather than return no records,
+     *                                         we fail so the caller can get the new keys.
+     */
+    protected static <R> DecryptedRecords<R> responseBodyToRawRecords(final FirefoxSyncConfig syncConfig, final InputStream responseBody,
             final String collectionName, final RecordFactory recordFactory) throws FirefoxDataException {
         final KeyBundle keyBundle;
-        final JSONArray recordArray;
         try {
             keyBundle = syncConfig.collectionKeys.keyBundleForCollection(collectionName);
-            recordArray = new JSONArray(responseBody);
-        } catch (final NoCollectionKeysSetException | JSONException e) {
-            throw new FirefoxDataException("Unable to create JSONArray of records.", e);
+        } catch (final NoCollectionKeysSetException e) {
+            throw new FirefoxDataException("Unable to get key bundle for collection.", e);
         }
 
-        final ArrayList<R> receivedRecords = new ArrayList<>(recordArray.length());
-        for (int i = 0; i < recordArray.length(); ++i) {
-            try {
-                final JSONObject jsonRecord = recordArray.getJSONObject(i);
-                final R record = getAndDecryptRecord(recordFactory, keyBundle, jsonRecord);
-                receivedRecords.add(record);
-            } catch (final IOException | JSONException | NonObjectJSONException | CryptoException e) {
-                Log.w(LOGTAG, "Unable to decrypt record"); // Let's not log exception to avoid leaking user data.
-            }
+        final SyncRecordStreamReader recordReader = new SyncRecordStreamReader(responseBody);
+        final DecryptedRecords<R> decryptedRecords;
+        try {
+            decryptedRecords = syncConfig.recordDecrypter.decryptAll(recordReader, keyBundle, recordFactory);
+        } catch (final IOException | NonArrayJSONException | NonObjectJSONException e) {
+            throw new FirefoxDataException("Unable to read records from response.", e);
+        } finally {
+            IOUtils.safeStreamClose(recordReader);
         }
-        return receivedRecords;
-    }
 
-    private static <R> R getAndDecryptRecord(final RecordFactory recordFactory, final KeyBundle keyBundle,
-            final JSONObject json) throws NonObjectJSONException, IOException, CryptoException, JSONException {
-        final Record recordToWrap = new HistoryRecord(json.getString("id")); // Not the most correct but this can be any record since we just init id.
-        final CryptoRecord cryptoRecord = new CryptoRecord(recordToWrap);
-        cryptoRecord.payload = new ExtendedJSONObject(json.getString("payload"));
-        cryptoRecord.setKeyBundle(keyBundle);
-        cryptoRecord.decrypt();
-        return (R) recordFactory.createRecord(cryptoRecord); // We should rm this cast. To save time, I didn't generify RecordFactory.
+        if (decryptedRecords.didAllRecordsFailHMAC()) {
+            throw new FirefoxDataKeysChangedException("Every record failed HMAC verification: the collection keys have likely changed.");
+        }
+        return decryptedRecords;
     }
 }
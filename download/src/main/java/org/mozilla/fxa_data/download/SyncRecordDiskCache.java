@@ -0,0 +1,288 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import org.json.simple.JSONObject;
+import org.mozilla.fxa_data.impl.FirefoxDataShared;
+import org.mozilla.fxa_data.impl.IOUtils;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.NonArrayJSONException;
+import org.mozilla.gecko.sync.NonObjectJSONException;
+import org.mozilla.gecko.sync.Utils;
+import org.mozilla.gecko.sync.crypto.CryptoException;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
+import org.mozilla.gecko.sync.repositories.RecordFactory;
+import org.mozilla.gecko.sync.repositories.domain.Record;
+import org.mozilla.gecko.sync.repositories.domain.RecordParseException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A disk cache of the records of full collection downloads for a single account, stored as one file per collection.
+ *
+ * Each file stores the server's last modified time of the collection when it was downloaded so that callers can
+ * compare it against the current modified time from info/collections (see {@link FirefoxSyncCollectionInfo}) and
+ * avoid downloading collections that have not changed.
+ *
+ * Records are stored in the same format as the server response so they can be read with a
+ * {@link SyncRecordStreamReader}. The payloads are stored in cleartext unless a {@link KeyBundle} is provided when
+ * saving: sensitive collections (i.e. passwords) should be encrypted at rest with their collection keys. The keys are
+ * never written to this cache but the login module may store them, in the app's shared preferences, so encryption only
+ * protects the cache files on their own, e.g. if they're copied off the device.
+ *
+ * This class is thread-safe.
+ */
+class SyncRecordDiskCache {
+
+    private static final String LOGTAG = FirefoxDataShared.LOGTAG;
+
+    static final long NOT_CACHED = -1;
+
+    private static final int CACHE_VERSION = 1; // If the file format changes, increment this to invalidate old files.
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+    private static final String KEY_MODIFIED = "modified"; // The same key the server uses so CryptoRecord can parse it.
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File accountCacheDir;
+
+    /**
+     * @param cacheRootDir The directory to store the caches of all accounts in.
+     * @param accountUID The uid of the account whose records will be cached.
+     */
+    SyncRecordDiskCache(@NonNull final File cacheRootDir, @NonNull final String accountUID) {
+        this.accountCacheDir = new File(cacheRootDir, accountUID);
+    }
+
+    /** @return the server last modified time in milliseconds of the cached collection or {@link #NOT_CACHED}. */
+    @WorkerThread // disk access.
+    synchronized long getModifiedMillis(@NonNull final String collectionName) {
+        final File collectionFile = getCollectionFile(collectionName);
+        if (!collectionFile.exists()) { return NOT_CACHED; }
+
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(collectionFile)));
+            return CacheHeader.read(inputStream).modifiedMillis;
+        } catch (final IOException e) {
+            Log.w(LOGTAG, "Unable to read cached collection: deleting it.");
+            deleteCollectionFile(collectionName);
+            return NOT_CACHED;
+        } finally {
+            IOUtils.safeStreamClose(inputStream);
+        }
+    }
+
+    /**
+     * Loads the cached records of the given collection.
+     *
+     * @param syncConfig The sync config to decrypt records with, if they were encrypted at rest.
+     * @param collectionName The name of the collection, e.g. "passwords".
+     * @param recordFactory The factory to create the records with.
+     * @return the records in the order they were saved or null if the collection is not cached or could not be read.
+     */
+    @Nullable
+    @WorkerThread // disk access.
+    synchronized <R> List<R> load(@NonNull final FirefoxSyncConfig syncConfig, @NonNull final String collectionName,
+            @NonNull final RecordFactory recordFactory) {
+        final File collectionFile = getCollectionFile(collectionName);
+        if (!collectionFile.exists()) { return null; }
+
+        DataInputStream inputStream = null;
+        SyncRecordStreamReader recordReader = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(collectionFile)));
+            final CacheHeader header = CacheHeader.read(inputStream);
+
+            recordReader = new SyncRecordStreamReader(inputStream);
+            final List<R> records;
+            if (header.isEncrypted) {
+                final KeyBundle keyBundle = syncConfig.collectionKeys.keyBundleForCollection(collectionName);
+                records = syncConfig.recordDecrypter.<R>decryptAll(recordReader, keyBundle, recordFactory).getRecords();
+            } else {
+                records = readCleartextRecords(recordReader, recordFactory, header.recordCount);
+            }
+
+            // Records that fail to decrypt are skipped, e.g. if the collection keys changed: we don't want to return
+            // a partial collection so we consider the cache invalid.
+            if (records.size() != header.recordCount) {
+                throw new IOException("Expected " + header.recordCount + " records. Got: " + records.size());
+            }
+            return records;
+        } catch (final Exception e) { // Everything that could go wrong means the same thing: the cache is invalid.
+            Log.w(LOGTAG, "Unable to load cached collection: deleting it."); // Don't log exception to avoid leaking user data.
+            deleteCollectionFile(collectionName);
+            return null;
+        } finally {
+            IOUtils.safeStreamClose(recordReader);
+            IOUtils.safeStreamClose(inputStream);
+        }
+    }
+
+    @SuppressWarnings("unchecked") // We should rm this cast. To save time, I didn't generify RecordFactory.
+    private static <R> List<R> readCleartextRecords(final SyncRecordStreamReader recordReader, final RecordFactory recordFactory,
+            final int expectedRecordCount) throws IOException, NonArrayJSONException, NonObjectJSONException, RecordParseException {
+        final ArrayList<R> records = new ArrayList<>(expectedRecordCount);
+        ExtendedJSONObject jsonRecord;
+        while ((jsonRecord = recordReader.next()) != null) {
+            records.add((R) recordFactory.createRecord(CryptoRecord.fromJSONRecord(jsonRecord)));
+        }
+        return records;
+    }
+
+    /**
+     * Replaces the cached records of the given collection. If the records cannot be saved, the collection will no
+     * longer be cached.
+     *
+     * @param modifiedMillis The server last modified time of the collection when these records were downloaded.
+     * @param records The records to cache, in the order they should be loaded.
+     * @param encryptionKeyBundle The key bundle to encrypt the records with or null to store them in cleartext.
+     */
+    @WorkerThread // disk access.
+    synchronized void save(@NonNull final String collectionName, final long modifiedMillis,
+            @NonNull final List<? extends Record> records, @Nullable final KeyBundle encryptionKeyBundle) {
+        if (modifiedMillis < 0) {
+            // Without a modified time, we can't know if the cache is valid so there is no reason to save it.
+            deleteCollectionFile(collectionName);
+            return;
+        }
+
+        if (!accountCacheDir.exists() && !accountCacheDir.mkdirs()) {
+            Log.w(LOGTAG, "Unable to create cache directory.");
+            return;
+        }
+
+        // Write to a temporary file and rename so we never read a partially written file.
+        final File collectionFile = getCollectionFile(collectionName);
+        final File tmpFile = new File(collectionFile.getPath() + TMP_FILE_SUFFIX);
+        DataOutputStream outputStream = null;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            new CacheHeader(modifiedMillis, records.size(), encryptionKeyBundle != null).write(outputStream);
+            outputStream.flush();
+
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8));
+            writeRecords(writer, records, encryptionKeyBundle);
+            writer.close(); // Closes the underlying stream.
+            outputStream = null;
+
+            if (!tmpFile.renameTo(collectionFile)) {
+                throw new IOException("Unable to rename temporary cache file.");
+            }
+        } catch (final IOException | CryptoException e) {
+            Log.w(LOGTAG, "Unable to save collection to cache."); // Don't log exception to avoid leaking user data.
+            deleteCollectionFile(collectionName);
+        } finally {
+            IOUtils.safeStreamClose(outputStream);
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                Log.w(LOGTAG, "Unable to delete temporary cache file.");
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked") // json-simple containers are raw types.
+    private static void writeRecords(final Writer writer, final List<? extends Record> records,
+            @Nullable final KeyBundle encryptionKeyBundle) throws IOException, CryptoException {
+        writer.write('[');
+        boolean isFirst = true;
+        for (final Record record : records) {
+            final CryptoRecord envelope = record.getEnvelope();
+            if (encryptionKeyBundle != null) {
+                envelope.setKeyBundle(encryptionKeyBundle);
+                envelope.encrypt();
+            }
+
+            final JSONObject jsonRecord = envelope.toJSONObject();
+            jsonRecord.put(KEY_MODIFIED, Utils.millisecondsToDecimalSeconds(record.lastModified));
+
+            if (!isFirst) { writer.write(','); }
+            writer.write(jsonRecord.toJSONString());
+            isFirst = false;
+        }
+        writer.write(']');
+    }
+
+    /** Removes the cached records of all collections for this account. */
+    @WorkerThread // disk access.
+    synchronized void clear() {
+        deleteDir(accountCacheDir);
+    }
+
+    /** Removes the cached records of all accounts stored in the given directory. */
+    @WorkerThread // disk access.
+    static void clearAll(@NonNull final File cacheRootDir) {
+        deleteDir(cacheRootDir);
+    }
+
+    private static void deleteDir(final File dir) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (file.isDirectory()) {
+                    deleteDir(file);
+                } else if (!file.delete()) {
+                    Log.w(LOGTAG, "Unable to delete cache file.");
+                }
+            }
+        }
+        if (dir.exists() && !dir.delete()) {
+            Log.w(LOGTAG, "Unable to delete cache directory.");
+        }
+    }
+
+    private void deleteCollectionFile(final String collectionName) {
+        final File collectionFile = getCollectionFile(collectionName);
+        if (collectionFile.exists() && !collectionFile.delete()) {
+            Log.w(LOGTAG, "Unable to delete cached collection.");
+        }
+    }
+
+    private File getCollectionFile(final String collectionName) {
+        return new File(accountCacheDir, collectionName);
+    }
+
+    /** The metadata at the beginning of each collection file, before the records. */
+    private static class CacheHeader {
+        final long modifiedMillis;
+        final int recordCount;
+        final boolean isEncrypted;
+
+        private CacheHeader(final long modifiedMillis, final int recordCount, final boolean isEncrypted) {
+            this.modifiedMillis = modifiedMillis;
+            this.recordCount = recordCount;
+            this.isEncrypted = isEncrypted;
+        }
+
+        void write(final DataOutputStream outputStream) throws IOException {
+            outputStream.writeInt(CACHE_VERSION);
+            outputStream.writeLong(modifiedMillis);
+            outputStream.writeInt(recordCount);
+            outputStream.writeBoolean(isEncrypted);
+        }
+
+        static CacheHeader read(final DataInputStream inputStream) throws IOException {
+            final int version = inputStream.readInt();
+            if (version != CACHE_VERSION) { throw new IOException("Unknown cache version: " + version); }
+            return new CacheHeader(inputStream.readLong(), inputStream.readInt(), inputStream.readBoolean());
+        }
+    }
+}
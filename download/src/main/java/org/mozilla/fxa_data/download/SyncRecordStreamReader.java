@@ -0,0 +1,194 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.Nullable;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.NonArrayJSONException;
+import org.mozilla.gecko.sync.NonObjectJSONException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Reads the records of a Sync storage collection response, e.g. {@code [{"id": ..., "payload": ...}, ...]}, one
+ * record at a time from the response stream.
+ *
+ * Unlike parsing the full response body into a JSONArray, only the current record is held in memory so peak memory
+ * use depends on the size of the largest record rather than the size of the collection.
+ *
+ * This class is not thread-safe.
+ */
+class SyncRecordStreamReader implements Closeable {
+
+    private final Reader reader;
+    private final JSONParser parser = new JSONParser();
+    private final RecordContentHandler handler = new RecordContentHandler();
+
+    private boolean isStarted = false;
+
+    SyncRecordStreamReader(final InputStream inputStream) {
+        this.reader = new InputStreamReader(inputStream, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Reads the next record envelope from the stream. The record payload is still encrypted.
+     *
+     * @return the next record or null if there are no records remaining.
+     * @throws NonArrayJSONException if the response is not a JSON array.
+     * @throws NonObjectJSONException if the response contains an item that is not a JSON object, or is invalid JSON.
+     */
+    @Nullable
+    ExtendedJSONObject next() throws IOException, NonArrayJSONException, NonObjectJSONException {
+        if (handler.isFinished) { return null; }
+
+        try {
+            // The handler stops the parser after each record so we resume where we last left off.
+            parser.parse(reader, handler, isStarted);
+            isStarted = true;
+        } catch (final ParseException e) {
+            if (handler.isTopLevelNonArray) {
+                throw new NonArrayJSONException("Expected collection response to be a JSON array.");
+            }
+            throw new NonObjectJSONException(e);
+        } catch (final Error e) {
+            // Don't be stupid, org.json.simple. Bug 1042929 (see ExtendedJSONObject.parseRaw).
+            throw new NonObjectJSONException(e);
+        }
+
+        final JSONObject record = handler.takeCompletedRecord();
+        return record != null ? new ExtendedJSONObject(record) : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Builds each top-level array item into a JSONObject and stops the parser once each item is complete so that
+     * {@link #next()} can return it.
+     */
+    private static class RecordContentHandler implements ContentHandler {
+        /** Open containers for the record currently being read: the first item is the innermost container. */
+        private final Deque<Object> containerStack = new ArrayDeque<>();
+        private final Deque<String> keyStack = new ArrayDeque<>();
+
+        private int depth = 0; // Where 1 is the top-level array.
+        private JSONObject completedRecord;
+        private boolean isFinished = false;
+        private boolean isTopLevelNonArray = false;
+
+        JSONObject takeCompletedRecord() {
+            final JSONObject record = completedRecord;
+            completedRecord = null;
+            return record;
+        }
+
+        @Override public void startJSON() { }
+        @Override public void endJSON() { isFinished = true; }
+
+        @Override
+        public boolean startArray() throws ParseException {
+            depth += 1;
+            if (depth == 1) { return true; } // the top-level array of records.
+            pushContainer(new JSONArray());
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            depth -= 1;
+            if (depth == 0) {
+                isFinished = true;
+                return true;
+            }
+            popContainer();
+            return true;
+        }
+
+        @Override
+        public boolean startObject() throws ParseException {
+            depth += 1;
+            if (depth == 1) {
+                isTopLevelNonArray = true;
+                throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "{");
+            }
+            pushContainer(new JSONObject());
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            depth -= 1;
+            final Object completedContainer = popContainer();
+            if (depth == 1) {
+                completedRecord = (JSONObject) completedContainer;
+                return false; // stop parsing: we'll resume when the next record is requested.
+            }
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(final String key) {
+            keyStack.push(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            keyStack.pop();
+            return true;
+        }
+
+        @Override
+        public boolean primitive(final Object value) throws ParseException {
+            if (depth == 0) {
+                isTopLevelNonArray = true;
+                throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, value);
+            } else if (depth == 1) {
+                throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, value); // records must be objects.
+            }
+            addToParent(value);
+            return true;
+        }
+
+        private void pushContainer(final Object container) throws ParseException {
+            if (depth == 2) {
+                if (!(container instanceof JSONObject)) {
+                    throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "["); // records must be objects.
+                }
+            } else {
+                addToParent(container);
+            }
+            containerStack.push(container);
+        }
+
+        private Object popContainer() {
+            return containerStack.pop();
+        }
+
+        @SuppressWarnings("unchecked") // json-simple containers are raw types.
+        private void addToParent(final Object value) {
+            final Object parent = containerStack.peek();
+            if (parent instanceof JSONObject) {
+                ((JSONObject) parent).put(keyStack.peek(), value);
+            } else {
+                ((JSONArray) parent).add(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download;
+
+import android.support.annotation.NonNull;
+import org.mozilla.gecko.sync.net.BaseResource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aborts the network requests made on behalf of a single client call, e.g. when the caller cancels the call's
+ * {@link java.util.concurrent.Future}. Interrupting the thread making a request does not stop a blocking network
+ * read so we abort the underlying HTTP requests instead, which also stops any decryption of the response.
+ *
+ * This class is thread-safe.
+ */
+class SyncRequestCanceller {
+
+    private final List<BaseResource> resources = new ArrayList<>(1); // Most calls make a single request.
+    private boolean isCancelled = false;
+
+    /** Registers a resource to be aborted on cancel. If we've already been cancelled, it is aborted immediately. */
+    synchronized void register(@NonNull final BaseResource resource) {
+        if (isCancelled) {
+            resource.abort();
+            return;
+        }
+        resources.add(resource);
+    }
+
+    synchronized boolean isCancelled() {
+        return isCancelled;
+    }
+
+    synchronized void cancel() {
+        isCancelled = true;
+        for (final BaseResource resource : resources) {
+            resource.abort();
+        }
+        resources.clear();
+    }
+}
@@ -69,6 +69,25 @@ class FirefoxAccountUtils {
         return (Married) accountState;
     }
 
+    /**
+     * Derives the sync key bundle of the given married state on the given Executor so it's ready by the time the crypto
+     * keys are decrypted: the derivation doesn't depend on the token & crypto keys requests so it can overlap them.
+     * {@link Married#getSyncKeyBundle()} keeps the bundle for later callers.
+     */
+    static void deriveSyncKeyBundleAsync(final Married marriedState, final Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    marriedState.getSyncKeyBundle();
+                } catch (final NoSuchAlgorithmException | InvalidKeyException | UnsupportedEncodingException e) {
+                    // The crypto keys accessor will get the same exception and report it.
+                    Log.w(LOGTAG, "Unable to derive sync key bundle ahead of time."); // Don't log exception to avoid leaking keys.
+                }
+            }
+        });
+    }
+
     /**
      * Advances the given account to the married state.
      *
@@ -3,6 +3,9 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.fxa_data.login;
 
+import org.mozilla.gecko.sync.net.BaseResource;
+import org.mozilla.gecko.sync.net.ConnectionReuseCounter;
+
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -23,4 +26,19 @@ class FirefoxDataLoginShared {
      * largely idle thread is negligible but if we get requests to clean it up, we could.
      */
     static final Executor executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * An Executor for CPU-bound work, e.g. deriving keys, which we'd like to overlap with the network requests
+     * blocking {@link #executor}.
+     */
+    static final Executor computationExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Counts the connections our requests open and reuse, e.g. to check the login requests, which go to the same few
+     * hosts, share their connections. Observers are weakly referenced so we hold it here, for the life of the process.
+     */
+    static final ConnectionReuseCounter connectionReuseCounter = new ConnectionReuseCounter();
+    static {
+        BaseResource.addHttpResponseObserver(connectionReuseCounter);
+    }
 }
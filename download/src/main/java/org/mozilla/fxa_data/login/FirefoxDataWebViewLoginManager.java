@@ -24,6 +24,8 @@ import org.mozilla.fxa_data.impl.FirefoxAccount;
 import org.mozilla.fxa_data.impl.FirefoxDataShared;
 import org.mozilla.fxa_data.download.InternalFirefoxDataClientFactory;
 
+import java.io.File;
+
 import static org.mozilla.fxa_data.impl.FirefoxDataShared.LOGTAG;
 
 /**
@@ -34,12 +36,25 @@ class FirefoxDataWebViewLoginManager implements FirefoxDataLoginManager {
 
     private final FirefoxAccountSessionSharedPrefsStore sessionStore;
 
+    /** The store for the Sync credentials to skip requesting them when they haven't expired, or null to not store them. */
+    @Nullable private final FirefoxSyncCredentialsSharedPrefsStore credentialsStore;
+
+    /** The directory the data clients cache downloaded records in or null to not cache records on disk. */
+    @Nullable private final File recordCacheDir;
+
     /** Temp storage of args to {@link #promptLogin(Activity, String, LoginCallback)} for use in {@link #onActivityResult(int, int, Intent)}. */
     private final SparseArray<PromptLoginArgs> requestCodeToPromptLoginArgs = new SparseArray<>();
     private int nextRequestCode = 3561; // arbitrary.
 
     FirefoxDataWebViewLoginManager(final FirefoxAccountSessionSharedPrefsStore sessionStore) {
+        this(sessionStore, null, null);
+    }
+
+    FirefoxDataWebViewLoginManager(final FirefoxAccountSessionSharedPrefsStore sessionStore,
+            @Nullable final FirefoxSyncCredentialsSharedPrefsStore credentialsStore, @Nullable final File recordCacheDir) {
         this.sessionStore = sessionStore;
+        this.credentialsStore = credentialsStore;
+        this.recordCacheDir = recordCacheDir;
     }
 
     @Override
@@ -130,38 +145,42 @@ class FirefoxDataWebViewLoginManager implements FirefoxDataLoginManager {
     /**
      * Gets the account ready to be used in a Sync Client.
      *
+     * If we have stored credentials that have not expired, we use them without making any network requests.
+     *
      * Note that the API declares that all callbacks (including errors!) should occur on one of our private background
      * threads.
      */
     @WorkerThread // calls to network.
     private void prepareSyncClientAndCallback(final FirefoxAccount marriedAccount, final LoginCallback loginCallback) {
         FirefoxAccountUtils.assertIsMarried(marriedAccount.accountState);
+
+        // The crypto keys need the sync key bundle, which doesn't depend on the requests we make to get them: derive it
+        // meanwhile. If no requests are needed, we wait for it as we would have derived it anyway.
+        FirefoxAccountUtils.deriveSyncKeyBundleAsync(FirefoxAccountUtils.getMarried(marriedAccount.accountState),
+                FirefoxDataLoginShared.computationExecutor);
+
+        final TokenServerToken storedToken = (credentialsStore != null) ? credentialsStore.loadToken(marriedAccount) : null;
+        if (storedToken != null) {
+            // The keys can change before the token expires but we won't know without a request. If they have changed,
+            // the data client will fail to verify the records and call onKeysChanged, which replaces the stored keys.
+            // Likewise, if the storage server rejects the token, e.g. after a node reassignment, the data client calls
+            // onTokenRejected, which deletes the stored token.
+            final CollectionKeys storedKeys = credentialsStore.loadKeys(marriedAccount);
+            if (storedKeys != null) {
+                onSyncCredentialsReceived(marriedAccount, storedToken, storedKeys, loginCallback);
+            } else {
+                prepareCollectionKeysAndCallback(marriedAccount, storedToken, loginCallback);
+            }
+            return;
+        }
+
         FirefoxSyncTokenAccessor.getBlocking(marriedAccount, new FirefoxSyncTokenAccessor.FirefoxSyncTokenServerClientDelegate() {
             @Override
             public void handleSuccess(final TokenServerToken token) {
-                FirefoxSyncCryptoKeysAccessor.getBlocking(marriedAccount, token, new FirefoxSyncCryptoKeysAccessor.CollectionKeysCallback() {
-                    @Override
-                    public void onKeysReceived(final CollectionKeys collectionKeys) {
-                        final FirefoxDataClient dataClient = InternalFirefoxDataClientFactory.getDataClient(marriedAccount, token, collectionKeys);
-                        loginCallback.onSuccess(dataClient);
-                    }
-
-                    @Override
-                    public void onKeysDoNotExist() {
-                        loginCallback.onFailure(FirefoxDataException.newWithoutThrowable(
-                                "Server does not contain crypto keys: it is likely the user has not uploaded data to the server"));
-                    }
-
-                    @Override
-                    public void onRequestFailure(final Exception e) {
-                        loginCallback.onFailure(new FirefoxDataException("Request to access crypto keys failed", e));
-                    }
-
-                    @Override
-                    public void onError(final Exception e) {
-                        loginCallback.onFailure(new FirefoxDataException("Unable to create crypto keys request.", e));
-                    }
-                });
+                if (credentialsStore != null) {
+                    credentialsStore.saveToken(marriedAccount, token);
+                }
+                prepareCollectionKeysAndCallback(marriedAccount, token, loginCallback);
             }
 
             @Override
@@ -181,12 +200,79 @@ class FirefoxDataWebViewLoginManager implements FirefoxDataLoginManager {
 
             @Override
             public void handleBackoff(final int backoffSeconds) {
+                // This isn't terminal: handleSuccess or a failure follows. BaseResource already retried the request if
+                // the server was unavailable and it delays our next requests to the token server for the backoff.
+                Log.d(LOGTAG, "Sync token server requested backoff of " + backoffSeconds + " seconds.");
+            }
+        });
+    }
+
+    @WorkerThread // calls to network.
+    private void prepareCollectionKeysAndCallback(final FirefoxAccount marriedAccount, final TokenServerToken token,
+            final LoginCallback loginCallback) {
+        FirefoxSyncCryptoKeysAccessor.getBlocking(marriedAccount, token, credentialsStore, new FirefoxSyncCryptoKeysAccessor.CollectionKeysCallback() {
+            @Override
+            public void onKeysReceived(final CollectionKeys collectionKeys) {
+                onSyncCredentialsReceived(marriedAccount, token, collectionKeys, loginCallback);
+            }
+
+            @Override
+            public void onKeysDoNotExist() {
                 loginCallback.onFailure(FirefoxDataException.newWithoutThrowable(
-                        "Sync token server requested backoff of " + backoffSeconds + " seconds."));
+                        "Server does not contain crypto keys: it is likely the user has not uploaded data to the server"));
+            }
+
+            @Override
+            public void onRequestFailure(final Exception e) {
+                loginCallback.onFailure(new FirefoxDataException("Request to access crypto keys failed", e));
+            }
+
+            @Override
+            public void onError(final Exception e) {
+                loginCallback.onFailure(new FirefoxDataException("Unable to create crypto keys request.", e));
             }
         });
     }
 
+    private void onSyncCredentialsReceived(final FirefoxAccount marriedAccount, final TokenServerToken token,
+            final CollectionKeys collectionKeys, final LoginCallback loginCallback) {
+        final FirefoxDataClient dataClient = InternalFirefoxDataClientFactory.getDataClient(marriedAccount, token, collectionKeys,
+                recordCacheDir, new InternalFirefoxDataClientFactory.OnKeysChangedListener() {
+                    @Override
+                    public void onKeysChanged() {
+                        refetchCollectionKeys(marriedAccount, token);
+                    }
+                }, new InternalFirefoxDataClientFactory.OnTokenRejectedListener() {
+                    @Override
+                    public void onTokenRejected() {
+                        // The next loadStoredAccount will get a new token rather than create a client that fails too.
+                        if (credentialsStore != null) {
+                            credentialsStore.deleteToken();
+                        }
+                    }
+                });
+        Log.d(LOGTAG, "Sync credentials received; connections " + FirefoxDataLoginShared.connectionReuseCounter);
+        loginCallback.onSuccess(dataClient);
+    }
+
+    /**
+     * Replaces the stored keys, which no longer decrypt the user's records, with the keys on the server so the next
+     * {@link #loadStoredAccount(LoginCallback)} creates a data client that works.
+     */
+    @WorkerThread // calls to network.
+    private void refetchCollectionKeys(final FirefoxAccount marriedAccount, final TokenServerToken token) {
+        if (credentialsStore == null) { return; } // We always fetch the keys when we create a data client.
+
+        credentialsStore.deleteKeys();
+        FirefoxSyncCryptoKeysAccessor.getBlocking(marriedAccount, token, credentialsStore, new FirefoxSyncCryptoKeysAccessor.CollectionKeysCallback() {
+            // On success, the keys are stored by the accessor. Otherwise, we'll fetch them when we create the next client.
+            @Override public void onKeysReceived(final CollectionKeys collectionKeys) { Log.d(LOGTAG, "Replaced stored crypto keys."); }
+            @Override public void onKeysDoNotExist() { Log.w(LOGTAG, "Crypto keys no longer exist on the server."); }
+            @Override public void onRequestFailure(final Exception e) { Log.w(LOGTAG, "Request to replace crypto keys failed."); }
+            @Override public void onError(final Exception e) { Log.w(LOGTAG, "Unable to create request to replace crypto keys."); }
+        });
+    }
+
     private void onActivityResultError(@NonNull final Intent data, final LoginCallback callback) {
         final String failureReason = data.getStringExtra(FirefoxDataWebViewLoginActivity.EXTRA_FAILURE_REASON);
         FirefoxDataLoginShared.executor.execute(new Runnable() { // All callbacks on background thread.
@@ -239,6 +325,9 @@ class FirefoxDataWebViewLoginManager implements FirefoxDataLoginManager {
             return;
         }
         sessionStore.deleteStoredSession();
+        if (credentialsStore != null) {
+            credentialsStore.deleteStoredCredentials();
+        }
 
         // The user agent for the destroy request is derived from the session application name, which we're about to unset.
         final String userAgent = FirefoxDataShared.getUserAgent();
@@ -249,6 +338,11 @@ class FirefoxDataWebViewLoginManager implements FirefoxDataLoginManager {
         FirefoxDataLoginShared.executor.execute(new Runnable() {
             @Override
             public void run() {
+                // The cached records belong to the signed out user so we remove them.
+                if (recordCacheDir != null) {
+                    InternalFirefoxDataClientFactory.deleteRecordCache(recordCacheDir);
+                }
+
                 // If the request fails, the session won't be destroyed. We don't want to the application developer to
                 // have to handle making another request so we should add library code to make the request on failure
                 // (issue #10).
@@ -7,6 +7,7 @@ package org.mozilla.fxa_data.login;
 import android.support.annotation.WorkerThread;
 import org.mozilla.gecko.sync.ExtendedJSONObject;
 import org.mozilla.gecko.sync.JSONRecordFetcher;
+import org.mozilla.gecko.sync.Utils;
 import org.mozilla.gecko.sync.delegates.JSONRecordFetchDelegate;
 import org.mozilla.gecko.sync.net.AuthHeaderProvider;
 import org.mozilla.gecko.sync.net.SyncStorageResponse;
@@ -16,24 +17,23 @@ import org.mozilla.fxa_data.impl.FirefoxDataRequestUtils;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 /** Static class that contains functions to access the collection info associated with a Firefox Account. */
 class FirefoxSyncCollectionInfoAccessor {
     private FirefoxSyncCollectionInfoAccessor() {}
 
     interface CollectionInfoCallback {
-        void onSuccess(Collection<String> existingCollectionNames);
+        /** @param collectionNameToModifiedMillis The existing collections and the time they were last modified. */
+        void onSuccess(Map<String, Long> collectionNameToModifiedMillis);
         void onRequestFailure(Exception e);
         void onError(Exception e);
     }
 
     /**
      * Gets the names of collections that exist that are associated with the Firefox Account associated with the
-     * given sync token.
-     *
-     * In theory, we can provide more result data (what is actually stored at those collections?) but I just don't need
-     * that data right now.
+     * given sync token, along with the time each collection was last modified.
      *
      * Both the request and callback occur on the calling thread (this is unintuitive: issue #3).
      */
@@ -59,8 +59,7 @@ class FirefoxSyncCollectionInfoAccessor {
         fetcher.fetch(new JSONRecordFetchDelegate() {
             @Override
             public void handleSuccess(final ExtendedJSONObject body) {
-                // Consider caching result: issue #6.
-                callback.onSuccess(body.keySet());
+                callback.onSuccess(getCollectionNameToModifiedMillis(body));
             }
 
             @Override
@@ -76,6 +75,20 @@ class FirefoxSyncCollectionInfoAccessor {
         });
     }
 
+    private static Map<String, Long> getCollectionNameToModifiedMillis(final ExtendedJSONObject body) {
+        final Map<String, Long> collectionNameToModifiedMillis = new HashMap<>(body.size());
+        for (final String collectionName : body.keySet()) {
+            // The server returns decimal seconds, which is parsed into a double: we go through the String representation,
+            // rather than multiplying, to avoid rounding error.
+            final Object modifiedSeconds = body.get(collectionName);
+            final long modifiedMillis = (modifiedSeconds instanceof Number) ?
+                    Utils.decimalSecondsToMilliseconds(modifiedSeconds.toString()) :
+                    -1;
+            collectionNameToModifiedMillis.put(collectionName, modifiedMillis);
+        }
+        return collectionNameToModifiedMillis;
+    }
+
     private static String getCollectionInfoURI(final TokenServerToken token) throws URISyntaxException {
         return FirefoxDataRequestUtils.getServerURI(token).toString() + "/info/collections";
     }
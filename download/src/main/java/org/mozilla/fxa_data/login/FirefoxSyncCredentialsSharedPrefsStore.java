@@ -0,0 +1,204 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.login;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+import org.mozilla.fxa_data.impl.FirefoxAccount;
+import org.mozilla.fxa_data.impl.FirefoxDataShared;
+import org.mozilla.gecko.sync.CollectionKeys;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.NoCollectionKeysSetException;
+import org.mozilla.gecko.sync.NonObjectJSONException;
+import org.mozilla.gecko.sync.crypto.CryptoException;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
+import org.mozilla.gecko.sync.repositories.domain.RecordParseException;
+import org.mozilla.gecko.tokenserver.TokenServerToken;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A store for the Sync credentials of the signed in account - the {@link TokenServerToken} and the
+ * {@link CollectionKeys} - based on {@link SharedPreferences}, which allows us to skip the requests to get these
+ * credentials when they're still valid, e.g. when the app restarts.
+ *
+ * Tokens are stored until they expire, according to the duration given by the token server. Collection keys are
+ * stored with the modified time of the "crypto" collection they were fetched at so callers can check if they've
+ * changed. The collection keys are encrypted with the account's sync key bundle, as they are on the server, but
+ * the sync key bundle is derived from the unencrypted account state in {@link FirefoxAccountSessionSharedPrefsStore}
+ * so this store is only as secure as that one (issue #5).
+ *
+ * This class is thread-safe in the same way as {@link FirefoxAccountSessionSharedPrefsStore}.
+ */
+class FirefoxSyncCredentialsSharedPrefsStore {
+
+    private static final String LOGTAG = FirefoxDataShared.LOGTAG;
+
+    static final long NOT_STORED = -1;
+
+    private static final String DEFAULT_STORE_NAME = "FirefoxSyncCredentialsSharedPrefsStore";
+    private static final String PREFS_BRANCH_PREFIX = "org.mozilla.accounts.";
+    private static final int STORE_VERSION = 1; // for wiggle room with potential future revisions.
+
+    /** Tokens are considered expired this long before they actually expire so they don't expire mid-request. */
+    private static final long TOKEN_EXPIRATION_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_ACCOUNT_UID = "account-uid";
+
+    private static final String KEY_TOKEN_ID = "token-id";
+    private static final String KEY_TOKEN_KEY = "token-key";
+    private static final String KEY_TOKEN_UID = "token-uid";
+    private static final String KEY_TOKEN_ENDPOINT = "token-endpoint";
+    private static final String KEY_TOKEN_EXPIRES_AT_MILLIS = "token-expires-at";
+
+    private static final String KEY_KEYS_RECORD_JSON = "keys-record-json";
+    private static final String KEY_KEYS_MODIFIED_MILLIS = "keys-modified";
+
+    private final SharedPreferences sharedPrefs;
+
+    FirefoxSyncCredentialsSharedPrefsStore(final Context context) {
+        this.sharedPrefs = context.getSharedPreferences(PREFS_BRANCH_PREFIX + DEFAULT_STORE_NAME, 0);
+    }
+
+    /** Saves the given token, if it has a known duration, to be restored with {@link #loadToken(FirefoxAccount)}. */
+    @AnyThread
+    void saveToken(@NonNull final FirefoxAccount account, @NonNull final TokenServerToken token) {
+        if (token.durationInSeconds == TokenServerToken.DURATION_UNKNOWN) { return; } // We can't know when it expires.
+
+        // We don't know when the token was issued so we count from when we received it.
+        final long expiresAtMillis = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(token.durationInSeconds);
+        getEditorForAccount(account)
+                .putString(KEY_TOKEN_ID, token.id)
+                .putString(KEY_TOKEN_KEY, token.key)
+                .putString(KEY_TOKEN_UID, token.uid)
+                .putString(KEY_TOKEN_ENDPOINT, token.endpoint)
+                .putLong(KEY_TOKEN_EXPIRES_AT_MILLIS, expiresAtMillis)
+                .apply();
+    }
+
+    /** @return the stored token for the given account or null if there is none or it has expired. */
+    @Nullable
+    @AnyThread
+    TokenServerToken loadToken(@NonNull final FirefoxAccount account) {
+        if (!isStoredForAccount(account)) { return null; }
+
+        final long expiresAtMillis = sharedPrefs.getLong(KEY_TOKEN_EXPIRES_AT_MILLIS, NOT_STORED);
+        if (System.currentTimeMillis() >= expiresAtMillis - TOKEN_EXPIRATION_MARGIN_MILLIS) { return null; }
+
+        final String id = sharedPrefs.getString(KEY_TOKEN_ID, null);
+        final String key = sharedPrefs.getString(KEY_TOKEN_KEY, null);
+        final String uid = sharedPrefs.getString(KEY_TOKEN_UID, null);
+        final String endpoint = sharedPrefs.getString(KEY_TOKEN_ENDPOINT, null);
+        if (id == null || key == null || uid == null || endpoint == null) { return null; }
+        return new TokenServerToken(id, key, uid, endpoint);
+    }
+
+    /** Removes the stored token, e.g. because the storage server rejected it, but keeps the keys. */
+    @AnyThread
+    void deleteToken() {
+        sharedPrefs.edit()
+                .remove(KEY_TOKEN_ID)
+                .remove(KEY_TOKEN_KEY)
+                .remove(KEY_TOKEN_UID)
+                .remove(KEY_TOKEN_ENDPOINT)
+                .remove(KEY_TOKEN_EXPIRES_AT_MILLIS)
+                .apply();
+    }
+
+    /**
+     * Saves the given keys to be restored with {@link #loadKeys(FirefoxAccount)}.
+     *
+     * @param marriedAccount The account the keys belong to, whose sync key bundle they'll be encrypted with.
+     * @param modifiedMillis The last modified time of the "crypto" collection when the keys were fetched.
+     */
+    @AnyThread
+    void saveKeys(@NonNull final FirefoxAccount marriedAccount, @NonNull final CollectionKeys keys, final long modifiedMillis) {
+        final String encryptedKeysJSON;
+        try {
+            final CryptoRecord keysRecord = keys.asCryptoRecord();
+            keysRecord.setKeyBundle(getSyncKeyBundle(marriedAccount));
+            encryptedKeysJSON = keysRecord.encrypt().toJSONString();
+        } catch (final NoCollectionKeysSetException | CryptoException | IOException | NoSuchAlgorithmException | InvalidKeyException e) {
+            Log.w(LOGTAG, "Unable to encrypt collection keys: not storing them."); // Don't log exception to avoid leaking keys.
+            return;
+        }
+
+        getEditorForAccount(marriedAccount)
+                .putString(KEY_KEYS_RECORD_JSON, encryptedKeysJSON)
+                .putLong(KEY_KEYS_MODIFIED_MILLIS, modifiedMillis)
+                .apply();
+    }
+
+    /** @return the "crypto" collection modified time of the stored keys for the given account or {@link #NOT_STORED}. */
+    @AnyThread
+    long getKeysModifiedMillis(@NonNull final FirefoxAccount account) {
+        if (!isStoredForAccount(account)) { return NOT_STORED; }
+        return sharedPrefs.getLong(KEY_KEYS_MODIFIED_MILLIS, NOT_STORED);
+    }
+
+    /** @return the stored keys for the given account or null if there are none or they could not be read. */
+    @Nullable
+    @AnyThread
+    CollectionKeys loadKeys(@NonNull final FirefoxAccount marriedAccount) {
+        if (!isStoredForAccount(marriedAccount)) { return null; }
+
+        final String encryptedKeysJSON = sharedPrefs.getString(KEY_KEYS_RECORD_JSON, null);
+        if (encryptedKeysJSON == null) { return null; }
+
+        final CollectionKeys keys = new CollectionKeys();
+        try {
+            keys.setKeyPairsFromWBO(CryptoRecord.fromJSONRecord(encryptedKeysJSON), getSyncKeyBundle(marriedAccount));
+        } catch (final CryptoException | IOException | NonObjectJSONException | RecordParseException |
+                NoSuchAlgorithmException | InvalidKeyException | RuntimeException e) { // RuntimeException: e.g. ClassCastException for bad JSON.
+            Log.w(LOGTAG, "Unable to decrypt stored collection keys."); // Don't log exception to avoid leaking keys.
+            return null;
+        }
+        return keys;
+    }
+
+    /** Removes the stored keys, e.g. because they no longer decrypt the user's records, but keeps the token. */
+    @AnyThread
+    void deleteKeys() {
+        sharedPrefs.edit()
+                .remove(KEY_KEYS_RECORD_JSON)
+                .remove(KEY_KEYS_MODIFIED_MILLIS)
+                .apply();
+    }
+
+    /** Removes all stored credentials. */
+    @AnyThread
+    void deleteStoredCredentials() {
+        sharedPrefs.edit().clear().apply(); // Unlike the session store, we store nothing but account data here.
+    }
+
+    private static KeyBundle getSyncKeyBundle(final FirefoxAccount marriedAccount) throws NoSuchAlgorithmException, InvalidKeyException, IOException {
+        return FirefoxAccountUtils.getMarried(marriedAccount.accountState).getSyncKeyBundle();
+    }
+
+    private boolean isStoredForAccount(final FirefoxAccount account) {
+        return sharedPrefs.getInt(KEY_VERSION, -1) == STORE_VERSION &&
+                account.uid != null &&
+                account.uid.equals(sharedPrefs.getString(KEY_ACCOUNT_UID, null));
+    }
+
+    /** Returns an editor for the given account, clearing any credentials for another account. */
+    private SharedPreferences.Editor getEditorForAccount(final FirefoxAccount account) {
+        final SharedPreferences.Editor editor = sharedPrefs.edit();
+        if (!isStoredForAccount(account)) {
+            editor.clear();
+        }
+        return editor
+                .putInt(KEY_VERSION, STORE_VERSION)
+                .putString(KEY_ACCOUNT_UID, account.uid);
+    }
+}
@@ -5,6 +5,7 @@
 package org.mozilla.fxa_data.login;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 import android.util.Log;
 import org.mozilla.gecko.fxa.login.Married;
@@ -28,7 +29,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Collection;
+import java.util.Map;
 
 import static org.mozilla.fxa_data.impl.FirefoxDataShared.LOGTAG;
 
@@ -63,19 +64,35 @@ class FirefoxSyncCryptoKeysAccessor {
      *
      * {@code onComplete}'s {@link CollectionKeysCallback#onError(Exception)} will be passed a
      * {@link FirefoxDataAssertionException} in the event that some assertion we make fails.
+     *
+     * @param credentialsStore If non-null, the keys will be loaded from this store if they haven't changed on the
+     *                         server and otherwise, the keys fetched from the server will be saved to it.
      */
     @WorkerThread // network request.
-    static void getBlocking(@NonNull final FirefoxAccount marriedAccount, @NonNull final TokenServerToken token, @NonNull final CollectionKeysCallback onComplete) {
+    static void getBlocking(@NonNull final FirefoxAccount marriedAccount, @NonNull final TokenServerToken token,
+            @Nullable final FirefoxSyncCredentialsSharedPrefsStore credentialsStore, @NonNull final CollectionKeysCallback onComplete) {
         // If the "crypto" collection does not exist, the crypto keys request will 404 and fail. We'd like to actually
         // know why the request failed so we first ensure the "crypto" collection exists.
         FirefoxSyncCollectionInfoAccessor.getBlocking(token, new FirefoxSyncCollectionInfoAccessor.CollectionInfoCallback() {
             @Override
-            public void onSuccess(final Collection<String> existingCollectionNames) {
-                if (existingCollectionNames.contains("crypto")) {
-                    makeCryptoKeysRequest(marriedAccount, token, onComplete);
-                } else {
+            public void onSuccess(final Map<String, Long> collectionNameToModifiedMillis) {
+                final Long cryptoModifiedMillis = collectionNameToModifiedMillis.get(CRYPTO_COLLECTION);
+                if (cryptoModifiedMillis == null) {
                     onComplete.onKeysDoNotExist();
+                    return;
+                }
+
+                // The keys are only changed by uploading a new "crypto" collection so if it's not modified, our keys are current.
+                if (credentialsStore != null && cryptoModifiedMillis >= 0 &&
+                        credentialsStore.getKeysModifiedMillis(marriedAccount) == cryptoModifiedMillis) {
+                    final CollectionKeys storedKeys = credentialsStore.loadKeys(marriedAccount);
+                    if (storedKeys != null) {
+                        onComplete.onKeysReceived(storedKeys);
+                        return;
+                    }
                 }
+
+                makeCryptoKeysRequest(marriedAccount, token, credentialsStore, cryptoModifiedMillis, onComplete);
             }
 
             @Override public void onRequestFailure(final Exception e) { onComplete.onRequestFailure(e); }
@@ -83,7 +100,9 @@ class FirefoxSyncCryptoKeysAccessor {
         });
     }
 
-    private static void makeCryptoKeysRequest(final FirefoxAccount marriedAccount, final TokenServerToken token, final CollectionKeysCallback onComplete) {
+    private static void makeCryptoKeysRequest(final FirefoxAccount marriedAccount, final TokenServerToken token,
+            @Nullable final FirefoxSyncCredentialsSharedPrefsStore credentialsStore, final long cryptoModifiedMillis,
+            final CollectionKeysCallback onComplete) {
         final SyncStorageRecordRequest request;
         try {
             request = new SyncStorageRecordRequest(FirefoxDataRequestUtils.getCollectionURI(token, CRYPTO_COLLECTION, KEYS_ID, null));
@@ -105,7 +124,9 @@ class FirefoxSyncCryptoKeysAccessor {
                     return;
                 }
 
-                // Consider caching: issue #6 (see EnsureCrypto5KeysStage).
+                if (credentialsStore != null && cryptoModifiedMillis >= 0) {
+                    credentialsStore.saveKeys(marriedAccount, keys, cryptoModifiedMillis);
+                }
                 onComplete.onKeysReceived(keys);
             }
 
@@ -8,17 +8,24 @@ import android.content.Context;
 import android.support.annotation.NonNull;
 import org.mozilla.fxa_data.FirefoxData;
 
+import java.io.File;
+
 /**
  * <b>NON-PUBLIC API:</b> please use {@link FirefoxData} instead. This class is used to escalate
  * visibility of {@code protected} components for internal library use.
  */
 public class InternalFirefoxDataLoginManagerFactory {
+    private static final String RECORD_CACHE_DIR_NAME = "org.mozilla.fxa_data.records";
+
     private InternalFirefoxDataLoginManagerFactory() {}
 
     /** Please use {@link FirefoxData#getLoginManager(android.content.Context)} instead. */
     public static FirefoxDataLoginManager internalGetLoginManager(@NonNull final Context context) {
         // We return a new instance, rather than a singleton, because the Context can change.
         final FirefoxAccountSessionSharedPrefsStore sessionStore = new FirefoxAccountSessionSharedPrefsStore(context);
-        return new FirefoxDataWebViewLoginManager(sessionStore);
+        final FirefoxSyncCredentialsSharedPrefsStore credentialsStore = new FirefoxSyncCredentialsSharedPrefsStore(context);
+        // The cache dir can be cleared by the system when storage is low, which is fine: we'll download the records again.
+        final File recordCacheDir = new File(context.getCacheDir(), RECORD_CACHE_DIR_NAME);
+        return new FirefoxDataWebViewLoginManager(sessionStore, credentialsStore, recordCacheDir);
     }
 }
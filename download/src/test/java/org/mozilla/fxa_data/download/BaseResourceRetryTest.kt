@@ -0,0 +1,226 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import ch.boye.httpclientandroidlib.HttpResponse
+import ch.boye.httpclientandroidlib.client.ClientProtocolException
+import ch.boye.httpclientandroidlib.entity.InputStreamEntity
+import ch.boye.httpclientandroidlib.entity.StringEntity
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.gecko.sync.net.BaseResource
+import org.mozilla.gecko.sync.net.BaseResourceDelegate
+import org.mozilla.gecko.sync.net.CircuitBreaker
+import org.mozilla.gecko.sync.net.RetryScheduler
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.ByteArrayOutputStream
+import java.io.Closeable
+import java.io.IOException
+import java.io.InputStream
+import java.net.ServerSocket
+import java.security.GeneralSecurityException
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.concurrent.thread
+
+/** Tests how {@link BaseResource} retries and backs off, against a local server. */
+@RunWith(RobolectricTestRunner::class) // for android.util.Log, which logs the requests.
+@Config(manifest = Config.NONE)
+class BaseResourceRetryTest {
+
+    private val hostname = "127.0.0.1"
+
+    /** A server that responds to each request with the next of the given responses, then with 500s. */
+    private class ScriptedServer(private val responses: List<String>) : Closeable {
+        private val serverSocket = ServerSocket(0)
+        private val requestCount = AtomicInteger()
+
+        val uri = "http://127.0.0.1:${serverSocket.localPort}/"
+        val requests: Int get() = requestCount.get()
+
+        init {
+            thread(isDaemon = true) {
+                try {
+                    while (true) {
+                        serverSocket.accept().use { socket ->
+                            readRequest(socket.getInputStream())
+                            val index = requestCount.getAndIncrement()
+                            val response = if (index < responses.size) responses[index] else response(500)
+                            socket.getOutputStream().write(response.toByteArray(Charsets.UTF_8))
+                            socket.getOutputStream().flush()
+                        }
+                    }
+                } catch (e: IOException) {
+                    // Closed.
+                }
+            }
+        }
+
+        /** Reads the headers of a request, then the body they announce. */
+        private fun readRequest(input: InputStream) {
+            val headers = ByteArrayOutputStream()
+            var last4 = 0
+            while (last4 != 0x0d0a0d0a) {
+                val b = input.read()
+                if (b == -1) { return }
+                headers.write(b)
+                last4 = (last4 shl 8) or b
+            }
+            val contentLength = headers.toString("US-ASCII").lines()
+                    .firstOrNull { it.startsWith("content-length:", ignoreCase = true) }
+                    ?.substringAfter(':')?.trim()?.toLong() ?: 0L
+            for (i in 0 until contentLength) {
+                if (input.read() == -1) { return }
+            }
+        }
+
+        override fun close() {
+            serverSocket.close()
+        }
+    }
+
+    /** Records what the resource handed to its delegate. */
+    private class RecordingDelegate(resource: BaseResource) : BaseResourceDelegate(resource) {
+        @Volatile var statusCode = -1
+        @Volatile var exception: Exception? = null
+
+        override fun getUserAgent(): String? = null
+
+        override fun handleHttpResponse(response: HttpResponse) {
+            statusCode = response.statusLine.statusCode
+            BaseResource.consumeEntity(response)
+        }
+
+        override fun handleHttpProtocolException(e: ClientProtocolException) { exception = e }
+        override fun handleHttpIOException(e: IOException) { exception = e }
+        override fun handleTransportException(e: GeneralSecurityException) { exception = e }
+    }
+
+    @Before
+    fun setUp() {
+        RetryScheduler.clearRetrySchedulers()
+        CircuitBreaker.clearCircuitBreakers()
+    }
+
+    @After
+    fun tearDown() {
+        RetryScheduler.clearRetrySchedulers()
+        CircuitBreaker.clearCircuitBreakers()
+    }
+
+    private fun newResource(server: ScriptedServer): Pair<BaseResource, RecordingDelegate> {
+        val resource = BaseResource(server.uri, false)
+        val delegate = RecordingDelegate(resource)
+        resource.delegate = delegate
+        return Pair(resource, delegate)
+    }
+
+    private fun get(server: ScriptedServer): RecordingDelegate {
+        val (resource, delegate) = newResource(server)
+        resource.get()
+        return delegate
+    }
+
+    @Test(timeout = 10000)
+    fun testRetriesServiceUnavailableAfterRetryAfter() {
+        ScriptedServer(listOf(response(503, "Retry-After: 1"), response(200))).use { server ->
+            val startMillis = System.currentTimeMillis()
+            val delegate = get(server)
+
+            assertNull(delegate.exception)
+            assertEquals(200, delegate.statusCode)
+            assertEquals(2, server.requests)
+            assertTrue(System.currentTimeMillis() - startMillis >= 1000)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testRetriesTemporaryFailureWithoutBackoff() {
+        ScriptedServer(listOf(response(502), response(504), response(200))).use { server ->
+            val delegate = get(server)
+
+            assertEquals(200, delegate.statusCode)
+            assertEquals(3, server.requests)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testLongBackoffFailsLaterRequestsWithoutSendingThem() {
+        ScriptedServer(listOf(response(503, "Retry-After: 3600"), response(200))).use { server ->
+            assertEquals(503, get(server).statusCode) // Too long to wait for, so not retried.
+
+            val delegate = get(server)
+            assertTrue(delegate.exception is IOException)
+            assertEquals(1, server.requests)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testBackoffHintOfSuccessfulResponseDoesNotDelayRequests() {
+        ScriptedServer(listOf(response(200, "X-Weave-Backoff: 3600"), response(200, "X-Backoff: 3600"), response(200))).use { server ->
+            assertEquals(200, get(server).statusCode)
+            assertEquals(200, get(server).statusCode)
+            assertEquals(200, get(server).statusCode)
+            assertEquals(3, server.requests)
+
+            val retryScheduler = RetryScheduler.getRetrySchedulerForHostname(hostname)
+            val now = System.currentTimeMillis()
+            assertEquals(0, retryScheduler.getBackoffRemainingMillis(now))
+            assertTrue(retryScheduler.getSoftBackoffRemainingMillis(now) > 3500 * 1000)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testAbortInterruptsWaitBeforeRetry() {
+        ScriptedServer(listOf(response(503, "Retry-After: 30"), response(200))).use { server ->
+            val (resource, delegate) = newResource(server)
+            val request = thread { resource.get() }
+
+            // The backoff is recorded just before the resource waits to retry.
+            val retryScheduler = RetryScheduler.getRetrySchedulerForHostname(hostname)
+            while (retryScheduler.getBackoffRemainingMillis(System.currentTimeMillis()) == 0L) {
+                Thread.sleep(10)
+            }
+            resource.abort()
+            request.join()
+
+            assertTrue(delegate.exception is IOException)
+            assertEquals(1, server.requests)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testRepeatableBodyIsRetried() {
+        ScriptedServer(listOf(response(503), response(200))).use { server ->
+            val (resource, delegate) = newResource(server)
+            resource.post(StringEntity("{}", "UTF-8"))
+
+            assertEquals(200, delegate.statusCode)
+            assertEquals(2, server.requests)
+        }
+    }
+
+    @Test(timeout = 10000)
+    fun testNonRepeatableBodyIsNotRetried() {
+        ScriptedServer(listOf(response(503), response(200))).use { server ->
+            val (resource, delegate) = newResource(server)
+            val body = "{}".toByteArray(Charsets.UTF_8)
+            resource.post(InputStreamEntity(body.inputStream(), body.size.toLong()))
+
+            assertEquals(503, delegate.statusCode)
+            assertEquals(1, server.requests)
+        }
+    }
+}
+
+private fun response(statusCode: Int, vararg headers: String): String {
+    val headerLines = headers.joinToString(separator = "") { "$it\r\n" }
+    return "HTTP/1.1 $statusCode Status\r\n${headerLines}Content-Length: 0\r\nConnection: close\r\n\r\n"
+}
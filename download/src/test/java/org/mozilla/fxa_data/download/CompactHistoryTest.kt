@@ -0,0 +1,118 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.json.simple.JSONArray
+import org.json.simple.JSONObject
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mozilla.gecko.sync.crypto.KeyBundle
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
+
+class CompactHistoryTest {
+
+    private val keyBundle = KeyBundle.withRandomKeys()
+
+    private fun visitDatesFor(index: Int) = (0 until index % 4).map { 1500000000000000L - index * 1000 - it }
+
+    private fun newRecord(index: Int): UnderlyingHistoryRecord {
+        val record = UnderlyingHistoryRecord("guid-$index")
+        record.title = if (index == 1) null else "Titlé 😀 $index"
+        record.histURI = "https://example.com/é/$index"
+        record.visits = JSONArray()
+        visitDatesFor(index).forEach {
+            val visit = JSONObject()
+            visit.put("date", it)
+            visit.put("type", 1L)
+            record.visits.add(visit)
+        }
+        return record
+    }
+
+    private fun decryptLazyRecords(records: List<UnderlyingHistoryRecord>): List<LazyHistoryRecord> {
+        val responseBody = records.joinToString(separator = ",", prefix = "[", postfix = "]") {
+            val envelope = it.envelope
+            envelope.setKeyBundle(keyBundle)
+            envelope.encrypt()
+            envelope.toJSONString()
+        }
+        val recordReader = SyncRecordStreamReader(responseBody.byteInputStream(Charsets.UTF_8))
+        return ParallelRecordDecrypter(1, 2, false).decryptAll<LazyHistoryRecord>(recordReader, keyBundle, LazyHistoryRecord.Factory()).records
+    }
+
+    private fun assertSameEntries(expected: List<HistoryRecord>, actual: CompactHistory) {
+        assertEquals(expected.size, actual.size)
+        expected.forEachIndexed { index, record ->
+            val entry = actual[index]
+            assertEquals(record.title, entry.title)
+            assertEquals(record.uri, entry.uri)
+            assertEquals(visitDatesFor(index), (0 until entry.visitCount).map { entry.getVisitDate(it) })
+        }
+    }
+
+    @Test
+    fun testFromParsedRecords() {
+        val records = (0 until 50).map { HistoryRecord(newRecord(it)) }
+        assertSameEntries(records, CompactHistory.fromRecords(records))
+    }
+
+    @Test
+    fun testFromLazyRecordsDoesNotDecodeVisits() {
+        val lazyRecords = decryptLazyRecords((0 until 50).map { newRecord(it) })
+        lazyRecords[3].decodeVisits()
+
+        val records = lazyRecords.map { HistoryRecord(it) }
+        assertSameEntries(records, CompactHistory.fromRecords(records))
+        assertNull(lazyRecords[2].visits)
+    }
+
+    @Test
+    fun testToRecordsRecreatesTheRecords() {
+        val records = decryptLazyRecords((0 until 50).map { newRecord(it) }).map { HistoryRecord(it) }
+        val recreatedRecords = CompactHistory.fromRecords(records).toRecords()
+
+        assertEquals(records.size, recreatedRecords.size)
+        records.zip(recreatedRecords).forEach { (record, recreatedRecord) ->
+            assertEquals(record.underlyingRecord.guid, recreatedRecord.underlyingRecord.guid)
+            assertEquals(record.underlyingRecord.lastModified, recreatedRecord.underlyingRecord.lastModified)
+            assertEquals(record.title, recreatedRecord.title)
+            assertEquals(record.uri, recreatedRecord.uri)
+            assertArrayEquals(record.visitDates, recreatedRecord.visitDates)
+            assertArrayEquals(record.visitTypes, recreatedRecord.visitTypes)
+            assertEquals(record.underlyingRecord.envelope.payload.getArray("visits"),
+                    recreatedRecord.underlyingRecord.envelope.payload.getArray("visits"))
+        }
+    }
+
+    @Test
+    fun testBuilderCopiesEntriesOfAnotherHistory() {
+        val records = (0 until 10).map { HistoryRecord(newRecord(it)) }
+        val history = CompactHistory.fromRecords(records)
+
+        val builder = CompactHistory.Builder(0)
+        (9 downTo 0 step 2).forEach { builder.add(history, it) }
+        val copy = builder.build()
+
+        val expectedRecords = (9 downTo 0 step 2).map { records[it] }
+        assertEquals(expectedRecords.map { it.underlyingRecord.guid }, (0 until copy.size).map { copy.getGUID(it) })
+        assertEquals(expectedRecords.map { it.uri }, copy.map { it.uri })
+        assertEquals(expectedRecords.map { it.title }, copy.map { it.title })
+        assertEquals(expectedRecords.map { it.visitDates.toList() },
+                copy.map { entry -> (0 until entry.visitCount).map { entry.getVisitDate(it) } })
+    }
+
+    @Test
+    fun testEmpty() {
+        assertTrue(CompactHistory.fromRecords(emptyList()).isEmpty())
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun testVisitIndexOutOfBounds() {
+        CompactHistory.fromRecords(listOf(HistoryRecord(newRecord(3))))[0].getVisitDate(3)
+    }
+}
@@ -5,6 +5,11 @@
 package org.mozilla.fxa_data.download;
 
 import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
 import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -12,8 +17,11 @@ import org.mockito.ArgumentCaptor
 import org.mockito.Captor
 import org.mockito.Matchers.any
 import org.mockito.Matchers.anyInt
+import org.mockito.Matchers.anyString
+import org.mockito.Matchers.eq
 import org.mockito.Mockito.mock
 import org.mockito.MockitoAnnotations
+import org.mozilla.fxa_data.FirefoxDataException
 import org.mozilla.fxa_data.FxDataMocks
 import org.mozilla.gecko.sync.CollectionKeys
 import org.mozilla.gecko.tokenserver.TokenServerToken
@@ -21,6 +29,8 @@ import org.powermock.api.mockito.PowerMockito
 import org.powermock.core.classloader.annotations.PrepareForTest
 import org.powermock.modules.junit4.PowerMockRunner
 import java.util.*
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
 import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
 
 @RunWith(PowerMockRunner::class)
@@ -72,4 +82,166 @@ class FirefoxDataFirefoxAccountClientTest {
         // lists are equal.
         assertEquals(expectedHistory, actualHistory)
     }
-}
\ No newline at end of file
+
+    @Test
+    fun historyCursorFollowsNextOffsetUntilLastPage() {
+        val firstPage = listOf(HistoryRecord(UnderlyingHistoryRecord("guid-1")))
+        val secondPage = listOf(HistoryRecord(UnderlyingHistoryRecord("guid-2")))
+
+        // anyString() also matches null in this Mockito version, so one stub answers both pages.
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getPageBlocking(any(), eq(1), anyString(), anyString(), any())).then {
+            @Suppress("UNCHECKED_CAST")
+            val callback = it.arguments[4] as OnSyncComplete<CollectionPage<HistoryRecord>>
+            if (it.arguments[2] == null) {
+                assertNull(it.arguments[3])
+                callback.onSuccess(FirefoxDataResult(CollectionPage(firstPage, "next-offset", "1500000000.00")))
+            } else {
+                assertEquals("next-offset", it.arguments[2])
+                assertEquals("1500000000.00", it.arguments[3]) // the later pages must be from the same version of the collection.
+                callback.onSuccess(FirefoxDataResult(CollectionPage(secondPage, null, "1500000000.00")))
+            }
+        }
+
+        val cursor = client.openHistoryCursor(1)
+        assertTrue(cursor.hasNextPage())
+        assertEquals(firstPage, cursor.nextPage().result)
+        assertTrue(cursor.hasNextPage())
+        assertEquals(secondPage, cursor.nextPage().result)
+        assertFalse(cursor.hasNextPage())
+    }
+
+    @Test(expected = FirefoxDataCollectionModifiedException::class)
+    fun historyCursorThrowsIfCollectionIsModifiedBetweenPages() {
+        val firstPage = listOf(HistoryRecord(UnderlyingHistoryRecord("guid-1")))
+
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getPageBlocking(any(), eq(1), anyString(), anyString(), any())).then {
+            @Suppress("UNCHECKED_CAST")
+            val callback = it.arguments[4] as OnSyncComplete<CollectionPage<HistoryRecord>>
+            if (it.arguments[2] == null) {
+                callback.onSuccess(FirefoxDataResult(CollectionPage(firstPage, "next-offset", "1500000000.00")))
+            } else {
+                callback.onException(FirefoxDataCollectionModifiedException("Expected failure"))
+            }
+        }
+
+        val cursor = client.openHistoryCursor(1)
+        assertEquals(firstPage, cursor.nextPage().result)
+        cursor.nextPage()
+    }
+
+    @Test(expected = UnsupportedOperationException::class)
+    fun getAllHistoryResultCannotBeModified() {
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onSuccess(FirefoxDataResult(arrayListOf(HistoryRecord(UnderlyingHistoryRecord("guid-1")))))
+        }
+
+        // Identical concurrent calls share the list so one caller can't be allowed to modify it.
+        (client.allHistory.result as MutableList<HistoryRecord>).clear()
+    }
+
+    @Test
+    fun getAllHistoryCompactReturnsValueFromStaticGetAllCompactCall() {
+        val expectedHistory = CompactHistory.fromRecords(listOf(HistoryRecord(UnderlyingHistoryRecord("guid-1"))))
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getAllCompactBlocking(any(), any())).then {
+            @Suppress("UNCHECKED_CAST")
+            val callback = it.arguments[1] as OnSyncComplete<CompactHistory>
+            callback.onSuccess(FirefoxDataResult(expectedHistory))
+        }
+
+        assertSame(expectedHistory, client.allHistoryCompact.result)
+    }
+
+    @Test
+    fun getAllReturnsOnlyRequestedCollections() {
+        val expectedHistory = listOf(HistoryRecord(UnderlyingHistoryRecord("guid-1")))
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onSuccess(FirefoxDataResult(expectedHistory))
+        }
+
+        val bulkResult = client.getAll(EnumSet.of(FirefoxDataCollection.HISTORY))
+        assertEquals(expectedHistory, bulkResult.history!!.result)
+        assertNull(bulkResult.bookmarks)
+        assertNull(bulkResult.passwords)
+    }
+
+    @Test(expected = FirefoxDataException::class)
+    fun getAllThrowsIfACollectionFails() {
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onException(FirefoxDataException.newWithoutThrowable("Expected failure"))
+        }
+
+        client.getAll(EnumSet.of(FirefoxDataCollection.HISTORY))
+    }
+
+    @Test
+    fun getAllHistoryNotifiesListenerAndThrowsIfKeysChanged() {
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onException(FirefoxDataKeysChangedException("Expected failure"))
+        }
+        var listenerCallCount = 0
+        val client = FirefoxDataFirefoxAccountClient(FxDataMocks.mockFirefoxAccount(), mock(TokenServerToken::class.java),
+                mock(CollectionKeys::class.java), null, InternalFirefoxDataClientFactory.OnKeysChangedListener { listenerCallCount += 1 })
+
+        try {
+            client.getAllHistory()
+            fail("Expected FirefoxDataKeysChangedException")
+        } catch (e: FirefoxDataKeysChangedException) {}
+        assertEquals(1, listenerCallCount)
+    }
+
+    @Test
+    fun getAllHistoryNotifiesListenerAndThrowsIfTokenRejected() {
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onException(FirefoxDataTokenRejectedException("Expected failure"))
+        }
+        var keysChangedCallCount = 0
+        var tokenRejectedCallCount = 0
+        val client = FirefoxDataFirefoxAccountClient(FxDataMocks.mockFirefoxAccount(), mock(TokenServerToken::class.java),
+                mock(CollectionKeys::class.java), null,
+                InternalFirefoxDataClientFactory.OnKeysChangedListener { keysChangedCallCount += 1 },
+                InternalFirefoxDataClientFactory.OnTokenRejectedListener { tokenRejectedCallCount += 1 })
+
+        try {
+            client.getAllHistory()
+            fail("Expected FirefoxDataTokenRejectedException")
+        } catch (e: FirefoxDataTokenRejectedException) {}
+        assertEquals(1, tokenRejectedCallCount)
+        assertEquals(0, keysChangedCallCount)
+    }
+
+    @Test
+    fun getAllHistoryAsyncNotifiesCallbackAndFuture() {
+        val expectedHistory = listOf(HistoryRecord(UnderlyingHistoryRecord("guid-1")))
+        PowerMockito.mockStatic(FirefoxSyncHistory::class.java)
+        PowerMockito.`when`(FirefoxSyncHistory.getBlocking(any(), anyInt(), historyCallbackCaptor.capture())).then {
+            historyCallbackCaptor.value.onSuccess(FirefoxDataResult(expectedHistory))
+        }
+
+        val callbackLatch = CountDownLatch(1)
+        var callbackHistory: List<HistoryRecord>? = null
+        val future = client.getAllHistoryAsync(object : FirefoxDataCallback<List<HistoryRecord>> {
+            override fun onSuccess(result: FirefoxDataResult<List<HistoryRecord>>) {
+                callbackHistory = result.result
+                callbackLatch.countDown()
+            }
+            override fun onException(e: FirefoxDataException) { callbackLatch.countDown() }
+        })
+
+        assertEquals(expectedHistory, future.get(10, TimeUnit.SECONDS).result)
+        assertTrue(callbackLatch.await(10, TimeUnit.SECONDS))
+        assertEquals(expectedHistory, callbackHistory)
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun historyCursorRequiresPositivePageSize() {
+        client.openHistoryCursor(0)
+    }
+}
@@ -0,0 +1,62 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import ch.boye.httpclientandroidlib.HttpVersion
+import ch.boye.httpclientandroidlib.message.BasicHttpResponse
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.mozilla.gecko.sync.CollectionKeys
+import org.mozilla.gecko.sync.net.SyncResponse
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
+
+@RunWith(RobolectricTestRunner::class) // for android.util.Log, which logs the skipped records.
+@Config(manifest = Config.NONE)
+class FirefoxSyncUtilsTest {
+
+    @get:Rule val tmpFolder = TemporaryFolder()
+
+    private lateinit var cache: SyncRecordDiskCache
+    private lateinit var syncConfig: FirefoxSyncConfig
+
+    @Before
+    fun setUp() {
+        cache = SyncRecordDiskCache(tmpFolder.root, "abcdef0123456789")
+        syncConfig = FirefoxSyncConfig(null, CollectionKeys.generateCollectionKeys(), cache)
+    }
+
+    private fun responseModifiedAt(lastModified: String): BasicHttpResponse {
+        val response = BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK")
+        response.addHeader(SyncResponse.X_LAST_MODIFIED, lastModified)
+        return response
+    }
+
+    private fun decryptedRecordsFor(count: Int, skippedCount: Int): DecryptedRecords<UnderlyingHistoryRecord> {
+        val decryptedRecords = DecryptedRecords<UnderlyingHistoryRecord>()
+        (0 until count).forEach { decryptedRecords.add(UnderlyingHistoryRecord("guid-$it")) }
+        (0 until skippedCount).forEach { decryptedRecords.addSkipped(false) }
+        return decryptedRecords
+    }
+
+    @Test
+    fun testSaveCollectionToDiskCacheSavesCompleteCollection() {
+        FirefoxSyncUtils.saveCollectionToDiskCache(syncConfig, responseModifiedAt("1500000000.12"), "history",
+                decryptedRecordsFor(3, skippedCount = 0), false)
+        assertEquals(1500000000120, cache.getModifiedMillis("history"))
+    }
+
+    @Test
+    fun testSaveCollectionToDiskCacheDoesNotSaveCollectionWithSkippedRecords() {
+        FirefoxSyncUtils.saveCollectionToDiskCache(syncConfig, responseModifiedAt("1500000000.12"), "history",
+                decryptedRecordsFor(3, skippedCount = 1), false)
+        assertEquals(SyncRecordDiskCache.NOT_CACHED, cache.getModifiedMillis("history"))
+    }
+}
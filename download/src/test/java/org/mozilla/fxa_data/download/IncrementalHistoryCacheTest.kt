@@ -0,0 +1,114 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+
+class IncrementalHistoryCacheTest {
+
+    private lateinit var cache: IncrementalHistoryCache
+
+    private fun recordFor(guid: String, uri: String = "https://$guid.com"): HistoryRecord {
+        val underlyingRecord = org.mozilla.gecko.sync.repositories.domain.HistoryRecord(guid)
+        underlyingRecord.histURI = uri
+        return HistoryRecord(underlyingRecord)
+    }
+
+    private fun CompactHistory?.uris() = this!!.map { it.uri }
+
+    @Before
+    fun setUp() {
+        cache = IncrementalHistoryCache()
+    }
+
+    @Test
+    fun testInitialWatermark() {
+        assertEquals(IncrementalHistoryCache.NO_WATERMARK, cache.lastModifiedMillis)
+    }
+
+    @Test
+    fun testReplaceSetsWatermark() {
+        val result = cache.replace(listOf(recordFor("a"), recordFor("b")), 1000)
+        assertEquals(1000, cache.lastModifiedMillis)
+        assertEquals(listOf("https://a.com", "https://b.com"), result.uris())
+    }
+
+    @Test
+    fun testReplaceWithoutWatermarkClearsCache() {
+        cache.replace(listOf(recordFor("a")), 1000)
+        val result = cache.replace(listOf(recordFor("b")), IncrementalHistoryCache.NO_WATERMARK)
+        assertEquals(IncrementalHistoryCache.NO_WATERMARK, cache.lastModifiedMillis)
+        assertEquals(listOf("https://b.com"), result.uris())
+    }
+
+    @Test
+    fun testMergePutsChangedRecordsFirstAndReplacesOldVersions() {
+        cache.replace(listOf(recordFor("a"), recordFor("b"), recordFor("c")), 1000)
+        val result = cache.merge(1000, listOf(recordFor("d"), recordFor("b", "https://updated.com")), 2000)
+
+        assertEquals(2000, cache.lastModifiedMillis)
+        assertEquals(listOf("https://d.com", "https://updated.com", "https://a.com", "https://c.com"), result.uris())
+    }
+
+    @Test
+    fun testMergeIgnoresStaleConcurrentResult() {
+        cache.replace(listOf(recordFor("a")), 1000)
+        cache.merge(1000, listOf(recordFor("b")), 3000)
+
+        val result = cache.merge(1000, listOf(recordFor("c")), 2000)
+        assertEquals(3000, cache.lastModifiedMillis)
+        assertEquals(listOf("https://b.com", "https://a.com"), result.uris())
+    }
+
+    @Test
+    fun testMergeWithoutChangesReturnsCachedHistory() {
+        val cached = cache.replace(listOf(recordFor("a")), 1000)
+        val result = cache.merge(1000, emptyList(), 2000)
+
+        assertEquals(2000, cache.lastModifiedMillis)
+        assertSame(cached, result)
+    }
+
+    @Test
+    fun testRestoreOnlyBeforeFirstFetch() {
+        assertTrue(cache.restore(listOf(recordFor("a")), 1000))
+        assertFalse(cache.restore(listOf(recordFor("b")), 2000))
+
+        val result = cache.merge(1000, listOf(recordFor("c")), 3000)
+        assertEquals(listOf("https://c.com", "https://a.com"), result.uris())
+    }
+
+    @Test
+    fun testMergeAfterClearLeavesCacheEmpty() {
+        cache.replace(listOf(recordFor("a"), recordFor("b")), 1000)
+        cache.clear() // e.g. by a concurrent fetch that skipped records.
+
+        assertNull(cache.merge(1000, listOf(recordFor("c")), 2000))
+        assertEquals(IncrementalHistoryCache.NO_WATERMARK, cache.lastModifiedMillis)
+    }
+
+    @Test
+    fun testMergeAfterReplaceWithoutWatermarkLeavesCacheEmpty() {
+        cache.replace(listOf(recordFor("a")), 1000)
+        cache.replace(listOf(recordFor("b")), IncrementalHistoryCache.NO_WATERMARK)
+
+        assertNull(cache.merge(1000, emptyList(), 2000))
+        assertEquals(IncrementalHistoryCache.NO_WATERMARK, cache.lastModifiedMillis)
+    }
+
+    @Test
+    fun testMergeIgnoresChangesSinceNewerWatermarkThanCached() {
+        cache.replace(listOf(recordFor("a")), 1000)
+
+        assertNull(cache.merge(1500, listOf(recordFor("b")), 2000))
+        assertEquals(1000, cache.lastModifiedMillis)
+    }
+}
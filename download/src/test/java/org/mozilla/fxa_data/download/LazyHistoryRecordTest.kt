@@ -0,0 +1,135 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.json.simple.JSONArray
+import org.json.simple.JSONObject
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mozilla.gecko.sync.CryptoRecord
+import org.mozilla.gecko.sync.ExtendedJSONObject
+import org.mozilla.gecko.sync.crypto.KeyBundle
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
+
+class LazyHistoryRecordTest {
+
+    @get:Rule val tmpFolder = TemporaryFolder()
+
+    private val keyBundle = KeyBundle.withRandomKeys()
+
+    private fun visitsFor(index: Int): JSONArray {
+        val visits = JSONArray()
+        (0 until 3).forEach {
+            val visit = JSONObject()
+            visit.put("date", 1500000000000000L - index * 1000 - it)
+            visit.put("type", 1L)
+            visits.add(visit)
+        }
+        return visits
+    }
+
+    private fun decryptLazyRecords(count: Int): List<LazyHistoryRecord> {
+        val jsonRecords = (0 until count).map {
+            val record = UnderlyingHistoryRecord("guid-$it")
+            record.title = "Title $it"
+            record.histURI = "https://example.com/$it"
+            record.visits = visitsFor(it)
+
+            val envelope = record.envelope
+            envelope.setKeyBundle(keyBundle)
+            envelope.encrypt()
+            envelope.toJSONString()
+        }
+        val responseBody = jsonRecords.joinToString(separator = ",", prefix = "[", postfix = "]")
+        val recordReader = SyncRecordStreamReader(responseBody.byteInputStream(Charsets.UTF_8))
+        return ParallelRecordDecrypter(1, 2, false).decryptAll<LazyHistoryRecord>(recordReader, keyBundle, LazyHistoryRecord.Factory()).records
+    }
+
+    @Test
+    fun testVisitsAreDecodedOnFirstUse() {
+        val record = decryptLazyRecords(2)[1]
+        assertEquals("guid-1", record.guid)
+        assertEquals("Title 1", record.title)
+        assertEquals("https://example.com/1", record.histURI)
+        assertNull(record.visits)
+
+        record.decodeVisits()
+        assertEquals(visitsFor(1), record.visits)
+    }
+
+    @Test
+    fun testEnvelopeIncludesVisitsWithoutKeepingThem() {
+        val record = decryptLazyRecords(1)[0]
+        assertEquals(visitsFor(0), record.envelope.payload.getArray("visits"))
+        assertNull(record.visits)
+    }
+
+    @Test
+    fun testVisitsAreRebuiltLikeTheParsedRecord() {
+        val payloads = listOf(
+                """{"id": "guid-1", "visits": [{"date": 5, "type": 1}, {"date": 7}, {"date": 9, "type": 3}]}""",
+                """{"id": "guid-1", "visits": []}""",
+                """{"id": "guid-1", "visits": null}""",
+                """{"id": "guid-1", "visits": "x"}""",
+                """{"id": "guid-1"}""")
+        payloads.forEach {
+            val envelope = CryptoRecord(ExtendedJSONObject(it))
+            envelope.guid = "guid-1"
+            val lazyRecord = LazyHistoryRecord.Factory().newPayloadDecoder().decode(envelope, it.toByteArray()) as LazyHistoryRecord
+            val parsedRecord = HistoryRecordFactory().createRecord(envelope) as UnderlyingHistoryRecord
+
+            assertEquals(it, parsedRecord.envelope.payload, lazyRecord.envelope.payload)
+            lazyRecord.decodeVisits()
+            assertEquals(it, parsedRecord.visits, lazyRecord.visits)
+        }
+    }
+
+    @Test
+    fun testSaveToDiskCacheDoesNotKeepVisits() {
+        val records = decryptLazyRecords(3)
+        val cache = SyncRecordDiskCache(tmpFolder.root, "abcdef0123456789")
+        cache.save("history", 1000, records, null)
+        assertTrue(records.all { it.visits == null })
+
+        val loadedRecords = cache.load<UnderlyingHistoryRecord>(FirefoxSyncConfig(null, null, cache), "history",
+                LazyHistoryRecord.Factory())!!
+        assertEquals(records.map { it.guid }, loadedRecords.map { it.guid })
+        assertEquals(records.map { it.title }, loadedRecords.map { it.title })
+        assertEquals((0 until 3).map { visitsFor(it) }, loadedRecords.map { it.visits })
+    }
+
+    @Test
+    fun testVisitColumnsAreReadWhenCreated() {
+        val record = HistoryRecord(decryptLazyRecords(2)[1])
+        assertEquals(3, record.visitCount)
+        assertArrayEquals(longArrayOf(1499999999999000L, 1499999999998999L, 1499999999998998L), record.visitDates)
+        assertArrayEquals(intArrayOf(1, 1, 1), record.visitTypes)
+        assertEquals(1499999999999000L, record.mostRecentVisitDate)
+    }
+
+    @Test
+    fun testVisitColumnsMatchParsedRecord() {
+        val payloads = listOf(
+                """{"id": "guid-1", "visits": [{"date": 5, "type": 1}, {"type": 2}, "x", {"date": 9, "o": [{}]}, {"date": 1.5}]}""",
+                """{"id": "guid-1"}""")
+        payloads.forEach {
+            val envelope = CryptoRecord(ExtendedJSONObject(it))
+            envelope.guid = "guid-1"
+            val lazyRecord = HistoryRecord(LazyHistoryRecord.Factory().newPayloadDecoder().decode(envelope, it.toByteArray()) as LazyHistoryRecord)
+            val parsedRecord = HistoryRecord(HistoryRecordFactory().createRecord(envelope) as UnderlyingHistoryRecord)
+
+            assertArrayEquals(it, parsedRecord.visitDates, lazyRecord.visitDates)
+            assertArrayEquals(it, parsedRecord.visitTypes, lazyRecord.visitTypes)
+            assertEquals(it, parsedRecord.mostRecentVisitDate, lazyRecord.mostRecentVisitDate)
+        }
+        assertEquals(HistoryRecord.NO_VISIT_DATE, HistoryRecord(UnderlyingHistoryRecord("guid-1")).mostRecentVisitDate)
+    }
+}
@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.gecko.sync.crypto.KeyBundle
+import org.mozilla.gecko.sync.repositories.RecordFactory
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
+
+@RunWith(RobolectricTestRunner::class) // for android.util.Log, which logs the skipped records.
+@Config(manifest = Config.NONE)
+class ParallelRecordDecrypterTest {
+
+    private val keyBundle = KeyBundle.withRandomKeys()
+
+    /** @return a server response body of encrypted history records, where the records at the given indices are tampered with. */
+    private fun responseBodyFor(count: Int, tamperedIndices: Set<Int> = emptySet()): String {
+        val jsonRecords = (0 until count).map {
+            val record = UnderlyingHistoryRecord("guid-$it")
+            record.title = "Title $it"
+            record.histURI = "https://example.com/$it"
+
+            val envelope = record.envelope
+            envelope.setKeyBundle(keyBundle)
+            envelope.encrypt()
+            if (it in tamperedIndices) {
+                val hmac = envelope.payload.getString("hmac")
+                envelope.payload.put("hmac", (if (hmac[0] == '0') "1" else "0") + hmac.substring(1))
+            }
+            envelope.toJSONString()
+        }
+        return jsonRecords.joinToString(separator = ",", prefix = "[", postfix = "]")
+    }
+
+    private fun decryptAll(decrypter: ParallelRecordDecrypter, responseBody: String,
+            recordFactory: RecordFactory = HistoryRecordFactory()): DecryptedRecords<UnderlyingHistoryRecord> {
+        val recordReader = SyncRecordStreamReader(responseBody.byteInputStream(Charsets.UTF_8))
+        return decrypter.decryptAll(recordReader, keyBundle, recordFactory)
+    }
+
+    private fun assertDecryptsAllButTampered(decrypter: ParallelRecordDecrypter) {
+        val decryptedRecords = decryptAll(decrypter, responseBodyFor(10, tamperedIndices = setOf(0, 4, 5)))
+        assertEquals(listOf(1, 2, 3, 6, 7, 8, 9).map { "guid-$it" }, decryptedRecords.records.map { it.guid })
+        assertEquals("Title 1", decryptedRecords.records[0].title)
+        assertEquals(3, decryptedRecords.skippedRecordCount)
+        assertFalse(decryptedRecords.isComplete)
+        assertFalse(decryptedRecords.didAllRecordsFailHMAC())
+    }
+
+    @Test
+    fun testDecryptAllOnCallingThreadSkipsTamperedRecords() {
+        assertDecryptsAllButTampered(ParallelRecordDecrypter(1, 3, false))
+    }
+
+    @Test
+    fun testDecryptAllInParallelSkipsTamperedRecords() {
+        assertDecryptsAllButTampered(ParallelRecordDecrypter(2, 3, false))
+    }
+
+    @Test
+    fun testDecryptAllWithPreVerifiedHMACsSkipsTamperedRecords() {
+        assertDecryptsAllButTampered(ParallelRecordDecrypter(2, 3, true))
+    }
+
+    @Test
+    fun testDecryptAllWithPreVerifiedHMACsWhenAllRecordsAreTampered() {
+        val decryptedRecords = decryptAll(ParallelRecordDecrypter(2, 3, true), responseBodyFor(4, tamperedIndices = setOf(0, 1, 2, 3)))
+        assertEquals(0, decryptedRecords.records.size)
+        assertEquals(4, decryptedRecords.skippedRecordCount)
+        assertTrue(decryptedRecords.didAllRecordsFailHMAC())
+    }
+
+    @Test
+    fun testDecryptAllWhenAllRecordsAreTampered() {
+        val decryptedRecords = decryptAll(ParallelRecordDecrypter(2, 3, false), responseBodyFor(4, tamperedIndices = setOf(0, 1, 2, 3)))
+        assertEquals(4, decryptedRecords.skippedRecordCount)
+        assertTrue(decryptedRecords.didAllRecordsFailHMAC())
+    }
+
+    @Test
+    fun testDecryptAllOfEmptyCollectionIsNotAnHMACFailure() {
+        assertFalse(decryptAll(ParallelRecordDecrypter(2, 3, false), responseBodyFor(0)).didAllRecordsFailHMAC())
+    }
+
+    @Test
+    fun testConcurrentDecryptAllCalls() {
+        // Like concurrent requests on the client's request executor, all sharing the decrypt workers.
+        val responseBody = responseBodyFor(200)
+        val expectedGUIDs = (0 until 200).map { "guid-$it" }
+        val requestExecutor = Executors.newFixedThreadPool(4)
+        try {
+            val futures = (0 until 12).map { index ->
+                requestExecutor.submit(Callable { decryptAll(ParallelRecordDecrypter(4, 8, index % 2 == 0), responseBody) })
+            }
+            futures.forEach { future ->
+                val decryptedRecords = future.get()
+                assertEquals(expectedGUIDs, decryptedRecords.records.map { it.guid })
+                assertTrue(decryptedRecords.isComplete)
+            }
+        } finally {
+            requestExecutor.shutdownNow()
+        }
+    }
+
+    @Test
+    fun testFactoryWithoutPayloadDecoderCreatesTheSameRecords() {
+        val factoryWithoutDecoder = object : HistoryRecordFactory() {
+            override fun newPayloadDecoder() = null
+        }
+        val responseBody = responseBodyFor(10, tamperedIndices = setOf(3))
+        val expectedRecords = decryptAll(ParallelRecordDecrypter(1, 3, false), responseBody).records
+        for (decrypter in listOf(ParallelRecordDecrypter(1, 3, false), ParallelRecordDecrypter(2, 3, false), ParallelRecordDecrypter(2, 3, true))) {
+            val decryptedRecords = decryptAll(decrypter, responseBody, factoryWithoutDecoder)
+            assertEquals(expectedRecords.map { it.guid }, decryptedRecords.records.map { it.guid })
+            assertEquals(expectedRecords.map { it.title }, decryptedRecords.records.map { it.title })
+            assertEquals(1, decryptedRecords.skippedRecordCount)
+        }
+    }
+}
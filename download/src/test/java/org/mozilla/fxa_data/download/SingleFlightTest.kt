@@ -0,0 +1,144 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.fail
+import org.junit.Test
+import org.mozilla.fxa_data.FirefoxDataException
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class SingleFlightTest {
+
+    private val singleFlight = SingleFlight()
+    private val executor = Executors.newCachedThreadPool()
+    private val callCount = AtomicInteger()
+
+    /** A call that blocks until [release] counts down. */
+    private fun blockingCall(release: CountDownLatch, started: CountDownLatch, result: () -> FirefoxDataResult<String>) =
+            object : SingleFlight.Call<String> {
+                override fun call(): FirefoxDataResult<String> {
+                    callCount.incrementAndGet()
+                    started.countDown()
+                    release.await()
+                    return result()
+                }
+            }
+
+    private fun submit(key: String, canceller: SyncRequestCanceller?, call: SingleFlight.Call<String>): Future<FirefoxDataResult<String>> =
+            executor.submit<FirefoxDataResult<String>> { singleFlight.run(key, canceller, call) }
+
+    /** Waits until the given number of calls joined the call in flight for the given key. */
+    private fun awaitWaiters(key: String, count: Int) {
+        val deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (singleFlight.getWaiterCount(key) < count) {
+            if (System.nanoTime() > deadlineNanos) { fail("Expected $count calls to join the call in flight.") }
+            Thread.yield()
+        }
+    }
+
+    @Test
+    fun testConcurrentIdenticalCallsShareOneResult() {
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val call = blockingCall(release, started) { FirefoxDataResult("bookmarks") }
+
+        val futures = (0 until 4).map { submit("bookmarks?limit=-1", null, call) }
+        started.await()
+        awaitWaiters("bookmarks?limit=-1", 3)
+        release.countDown()
+
+        val results = futures.map { it.get(5, TimeUnit.SECONDS) }
+        assertEquals(1, callCount.get())
+        results.forEach { assertSame(results[0], it) }
+    }
+
+    @Test
+    fun testDifferentKeysDoNotShare() {
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(2)
+        val call = blockingCall(release, started) { FirefoxDataResult("result") }
+
+        val futures = listOf(submit("history?limit=-1", null, call), submit("history?limit=10", null, call))
+        started.await()
+        release.countDown()
+
+        futures.forEach { it.get(5, TimeUnit.SECONDS) }
+        assertEquals(2, callCount.get())
+    }
+
+    @Test
+    fun testNoWaitersWithoutCallInFlight() {
+        assertEquals(0, singleFlight.getWaiterCount("bookmarks?limit=-1"))
+    }
+
+    @Test
+    fun testLaterCallsDoNotReuseCompletedResult() {
+        val call = object : SingleFlight.Call<String> {
+            override fun call(): FirefoxDataResult<String> = FirefoxDataResult("passwords-" + callCount.incrementAndGet())
+        }
+        assertEquals("passwords-1", singleFlight.run("passwords?limit=-1", null, call).result)
+        assertEquals("passwords-2", singleFlight.run("passwords?limit=-1", null, call).result)
+    }
+
+    @Test
+    fun testFailureIsShared() {
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val exception = FirefoxDataException.newWithoutThrowable("Server error")
+        val call = blockingCall(release, started) { throw exception }
+
+        val futures = (0 until 3).map { submit("bookmarks?limit=-1", null, call) }
+        started.await()
+        awaitWaiters("bookmarks?limit=-1", 2)
+        release.countDown()
+
+        futures.forEach {
+            try {
+                it.get(5, TimeUnit.SECONDS)
+                fail("Expected the call's exception.")
+            } catch (e: ExecutionException) {
+                assertSame(exception, e.cause)
+            }
+        }
+        assertEquals(1, callCount.get())
+    }
+
+    @Test
+    fun testCancelledCallIsMadeAgainByFollowers() {
+        val release = CountDownLatch(1)
+        val started = CountDownLatch(1)
+        val canceller = SyncRequestCanceller()
+        val cancelledCall = blockingCall(release, started) { throw FirefoxDataException.newWithoutThrowable("Request aborted.") }
+        val followerCall = object : SingleFlight.Call<String> {
+            override fun call(): FirefoxDataResult<String> {
+                callCount.incrementAndGet()
+                return FirefoxDataResult("bookmarks")
+            }
+        }
+
+        val leader = submit("bookmarks?limit=-1", canceller, cancelledCall)
+        started.await()
+        val follower = submit("bookmarks?limit=-1", null, followerCall)
+        awaitWaiters("bookmarks?limit=-1", 1)
+        canceller.cancel()
+        release.countDown()
+
+        assertEquals("bookmarks", follower.get(5, TimeUnit.SECONDS).result)
+        assertEquals(2, callCount.get())
+        try {
+            leader.get(5, TimeUnit.SECONDS)
+            fail("Expected the cancelled call to fail.")
+        } catch (e: ExecutionException) {
+            assertEquals("Request aborted.", e.cause!!.message)
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import ch.boye.httpclientandroidlib.HttpResponse
+import ch.boye.httpclientandroidlib.HttpVersion
+import ch.boye.httpclientandroidlib.entity.BasicHttpEntity
+import ch.boye.httpclientandroidlib.message.BasicHttpResponse
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.mozilla.fxa_data.FirefoxDataException
+import org.mozilla.gecko.tokenserver.TokenServerToken
+import java.io.InputStream
+import java.io.ByteArrayOutputStream
+import java.util.zip.Deflater
+import java.util.zip.DeflaterOutputStream
+import java.util.zip.GZIPOutputStream
+
+class SyncBaseResourceDelegateTest {
+
+    private val body = (0 until 100).joinToString(separator = ",", prefix = "[", postfix = "]") {
+        """{"id": "record-$it", "payload": "{\"ciphertext\": \"SGVsbG8gd29ybGQ=\"}"}"""
+    }.toByteArray(Charsets.UTF_8)
+
+    private fun entityOf(content: ByteArray, contentEncoding: String?): BasicHttpEntity {
+        val entity = BasicHttpEntity()
+        entity.content = content.inputStream()
+        entity.setContentEncoding(contentEncoding)
+        return entity
+    }
+
+    private fun compress(outputStreamFactory: (ByteArrayOutputStream) -> java.io.OutputStream): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        outputStreamFactory(bytes).use { it.write(body) }
+        return bytes.toByteArray()
+    }
+
+    private fun assertDecodes(receivedBody: ByteArray, contentEncoding: String?) {
+        val counter = ResponseByteCounter()
+        val decodedBody = SyncBaseResourceDelegate.getDecodedContent(entityOf(receivedBody, contentEncoding), counter)
+                .use { it.readBytes() }
+
+        assertTrue(body.contentEquals(decodedBody))
+        assertEquals(receivedBody.size.toLong(), counter.stats.bytesReceived)
+        assertEquals(body.size.toLong(), counter.stats.bytesDecoded)
+    }
+
+    @Test
+    fun testUncompressedContent() {
+        assertDecodes(body, null)
+        assertDecodes(body, "identity")
+    }
+
+    @Test
+    fun testGzipContent() {
+        val gzipBody = compress { GZIPOutputStream(it) }
+        assertTrue(gzipBody.size < body.size)
+        assertDecodes(gzipBody, "gzip")
+        assertDecodes(gzipBody, "X-GZIP")
+    }
+
+    @Test
+    fun testDeflateContent() {
+        assertDecodes(compress { DeflaterOutputStream(it) }, "deflate") // zlib, as RFC 2616 specifies.
+        assertDecodes(compress { DeflaterOutputStream(it, Deflater(Deflater.DEFAULT_COMPRESSION, true)) }, "deflate") // raw.
+    }
+
+    @Test
+    fun testUnauthorizedResponseFailsWithTokenRejected() {
+        var exception: FirefoxDataException? = null
+        var isResponseHandled = false
+        val token = TokenServerToken("id", "key", "42", "https://storage.example.com/1.5/42", 3600)
+        val delegate = object : SyncBaseResourceDelegate<Unit>(FirefoxSyncConfig(token, null), object : OnSyncComplete<Unit> {
+            override fun onSuccess(result: FirefoxDataResult<Unit>) {}
+            override fun onException(e: FirefoxDataException) { exception = e }
+        }) {
+            override fun handleResponse(response: HttpResponse, responseBody: InputStream) { isResponseHandled = true }
+        }
+
+        val response = BasicHttpResponse(HttpVersion.HTTP_1_1, 401, "Unauthorized")
+        response.entity = entityOf("0".toByteArray(Charsets.UTF_8), null)
+        delegate.handleHttpResponse(response)
+
+        assertTrue(exception is FirefoxDataTokenRejectedException)
+        assertFalse(isResponseHandled)
+    }
+}
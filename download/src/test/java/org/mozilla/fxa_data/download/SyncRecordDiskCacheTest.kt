@@ -0,0 +1,111 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.mozilla.gecko.sync.CollectionKeys
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecordFactory
+import org.mozilla.gecko.sync.repositories.domain.PasswordRecordFactory
+import java.io.File
+import org.mozilla.gecko.sync.repositories.domain.HistoryRecord as UnderlyingHistoryRecord
+import org.mozilla.gecko.sync.repositories.domain.PasswordRecord as UnderlyingPasswordRecord
+
+private const val ACCOUNT_UID = "abcdef0123456789"
+
+class SyncRecordDiskCacheTest {
+
+    @get:Rule val tmpFolder = TemporaryFolder()
+
+    private lateinit var collectionKeys: CollectionKeys
+    private lateinit var syncConfig: FirefoxSyncConfig
+    private lateinit var cache: SyncRecordDiskCache
+
+    @Before
+    fun setUp() {
+        collectionKeys = CollectionKeys.generateCollectionKeys()
+        cache = SyncRecordDiskCache(tmpFolder.root, ACCOUNT_UID)
+        syncConfig = FirefoxSyncConfig(null, collectionKeys, cache)
+    }
+
+    private fun historyRecordsFor(count: Int) = (0 until count).map {
+        val record = UnderlyingHistoryRecord("guid-$it")
+        record.title = "Title $it"
+        record.histURI = "https://example.com/$it"
+        record
+    }
+
+    private fun passwordRecordsFor(count: Int) = (0 until count).map {
+        val record = UnderlyingPasswordRecord("guid-$it")
+        record.hostname = "https://example.com"
+        record.encryptedUsername = "user-$it"
+        record.encryptedPassword = "hunter$it"
+        record
+    }
+
+    private fun collectionFile(collectionName: String) = File(File(tmpFolder.root, ACCOUNT_UID), collectionName)
+
+    @Test
+    fun testNotCachedBeforeSave() {
+        assertEquals(SyncRecordDiskCache.NOT_CACHED, cache.getModifiedMillis("history"))
+        assertNull(cache.load<UnderlyingHistoryRecord>(syncConfig, "history", HistoryRecordFactory()))
+    }
+
+    @Test
+    fun testSaveAndLoadCleartextRecords() {
+        cache.save("history", 1500000000120, historyRecordsFor(3), null)
+
+        assertEquals(1500000000120, cache.getModifiedMillis("history"))
+        val loadedRecords = cache.load<UnderlyingHistoryRecord>(syncConfig, "history", HistoryRecordFactory())!!
+        assertEquals(listOf("guid-0", "guid-1", "guid-2"), loadedRecords.map { it.guid })
+        assertEquals(listOf("Title 0", "Title 1", "Title 2"), loadedRecords.map { it.title })
+    }
+
+    @Test
+    fun testSaveAndLoadEncryptedRecords() {
+        cache.save("passwords", 1000, passwordRecordsFor(2), collectionKeys.keyBundleForCollection("passwords"))
+
+        assertFalse("Expected passwords to be encrypted on disk", collectionFile("passwords").readText(Charsets.ISO_8859_1).contains("hunter"))
+        val loadedRecords = cache.load<UnderlyingPasswordRecord>(syncConfig, "passwords", PasswordRecordFactory())!!
+        assertEquals(listOf("hunter0", "hunter1"), loadedRecords.map { it.encryptedPassword })
+    }
+
+    @Test
+    fun testLoadWithChangedKeysInvalidatesCache() {
+        cache.save("passwords", 1000, passwordRecordsFor(2), collectionKeys.keyBundleForCollection("passwords"))
+
+        val newKeysConfig = FirefoxSyncConfig(null, CollectionKeys.generateCollectionKeys(), cache)
+        assertNull(cache.load<UnderlyingPasswordRecord>(newKeysConfig, "passwords", PasswordRecordFactory()))
+        assertFalse(collectionFile("passwords").exists())
+    }
+
+    @Test
+    fun testLoadCorruptFileInvalidatesCache() {
+        cache.save("history", 1000, historyRecordsFor(1), null)
+        collectionFile("history").writeText("not a cache file")
+
+        assertNull(cache.load<UnderlyingHistoryRecord>(syncConfig, "history", HistoryRecordFactory()))
+        assertFalse(collectionFile("history").exists())
+    }
+
+    @Test
+    fun testSaveWithoutModifiedTimeDoesNotCache() {
+        cache.save("history", 1000, historyRecordsFor(1), null)
+        cache.save("history", -1, historyRecordsFor(1), null)
+        assertEquals(SyncRecordDiskCache.NOT_CACHED, cache.getModifiedMillis("history"))
+    }
+
+    @Test
+    fun testClearAllRemovesEverything() {
+        cache.save("history", 1000, historyRecordsFor(1), null)
+        SyncRecordDiskCache.clearAll(tmpFolder.root)
+        assertEquals(SyncRecordDiskCache.NOT_CACHED, cache.getModifiedMillis("history"))
+    }
+}
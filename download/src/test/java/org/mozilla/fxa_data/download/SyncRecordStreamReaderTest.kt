@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.mozilla.gecko.sync.NonArrayJSONException
+import org.mozilla.gecko.sync.NonObjectJSONException
+
+class SyncRecordStreamReaderTest {
+
+    private fun readerFor(json: String) = SyncRecordStreamReader(json.byteInputStream(Charsets.UTF_8))
+
+    @Test
+    fun testNextReturnsRecordsInOrder() {
+        val reader = readerFor("""[{"id": "a", "payload": "{}", "modified": 1.5}, {"id": "b", "payload": "{}"}]""")
+
+        val first = reader.next()!!
+        assertEquals("a", first.getString("id"))
+        assertEquals("{}", first.getString("payload"))
+        assertEquals("b", reader.next()!!.getString("id"))
+        assertNull(reader.next())
+        assertNull("Expected reader to stay finished", reader.next())
+    }
+
+    @Test
+    fun testNextReadsNestedValues() {
+        val record = readerFor("""[{"id": "a", "nested": {"list": [1, {"key": "value"}]}}]""").next()!!
+        assertEquals("""{"list":[1,{"key":"value"}]}""", record.getObject("nested").toJSONString())
+    }
+
+    @Test
+    fun testNextReturnsNullForEmptyCollection() {
+        assertNull(readerFor("[]").next())
+    }
+
+    @Test(expected = NonArrayJSONException::class)
+    fun testNextThrowsForTopLevelObject() {
+        readerFor("""{"error": "unauthorized"}""").next()
+    }
+
+    @Test(expected = NonObjectJSONException::class)
+    fun testNextThrowsForNonObjectRecord() {
+        readerFor("[1, 2]").next()
+    }
+}
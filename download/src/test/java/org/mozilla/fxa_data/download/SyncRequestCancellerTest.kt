@@ -0,0 +1,60 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.download
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.never
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mozilla.gecko.sync.net.BaseResource
+import org.mozilla.gecko.tokenserver.TokenServerToken
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.net.ServerSocket
+
+@RunWith(RobolectricTestRunner::class) // for android.util.Log, which logs the failed info/collections request.
+@Config(manifest = Config.NONE)
+class SyncRequestCancellerTest {
+
+    @Test
+    fun testCancelAbortsRegisteredResources() {
+        val canceller = SyncRequestCanceller()
+        val resources = listOf(mock(BaseResource::class.java), mock(BaseResource::class.java))
+        resources.forEach { canceller.register(it) }
+        resources.forEach { verify(it, never()).abort() }
+
+        canceller.cancel()
+        resources.forEach { verify(it).abort() }
+    }
+
+    @Test
+    fun testRegisterAfterCancelAbortsImmediately() {
+        val canceller = SyncRequestCanceller()
+        canceller.cancel()
+
+        val resource = mock(BaseResource::class.java)
+        canceller.register(resource)
+        verify(resource).abort()
+
+        canceller.cancel() // Already aborted: shouldn't abort again.
+        verify(resource, times(1)).abort()
+    }
+
+    @Test(timeout = 10000)
+    fun testCancelAbortsCollectionInfoRequest() {
+        ServerSocket(0).use { unresponsiveServer -> // Accepts connections but never responds.
+            val token = TokenServerToken("id", "key", "42", "http://127.0.0.1:${unresponsiveServer.localPort}/1.5/42", 3600)
+            val canceller = SyncRequestCanceller()
+            canceller.cancel()
+
+            val syncConfig = FirefoxSyncConfig(token, null).withCanceller(canceller)
+            assertEquals(FirefoxSyncCollectionInfo.UNKNOWN_MODIFIED,
+                    FirefoxSyncCollectionInfo.getCollectionModifiedMillisBlocking(syncConfig, "history"))
+        }
+    }
+}
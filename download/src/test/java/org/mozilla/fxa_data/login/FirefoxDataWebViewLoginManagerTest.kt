@@ -125,7 +125,7 @@ class FirefoxDataWebViewLoginManagerTest {
         }
 
         val cryptoKeysCallback = ArgumentCaptor.forClass(FirefoxSyncCryptoKeysAccessor.CollectionKeysCallback::class.java)
-        PowerMockito.`when`(FirefoxSyncCryptoKeysAccessor.getBlocking(any(), any(), cryptoKeysCallback.capture())).then {
+        PowerMockito.`when`(FirefoxSyncCryptoKeysAccessor.getBlocking(any(), any(), any(), cryptoKeysCallback.capture())).then {
             cryptoKeysCallback.value.onKeysReceived(mock(CollectionKeys::class.java)) // success callback!
         }
     }
@@ -0,0 +1,105 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.fxa_data.login
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertNull
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mozilla.fxa_data.impl.FirefoxAccount
+import org.mozilla.fxa_data.impl.FirefoxAccountEndpointConfig
+import org.mozilla.gecko.fxa.login.Married
+import org.mozilla.gecko.fxa.login.StateFactory
+import org.mozilla.gecko.sync.CollectionKeys
+import org.mozilla.gecko.tokenserver.TokenServerToken
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class FirefoxSyncCredentialsSharedPrefsStoreTest {
+
+    private lateinit var store: FirefoxSyncCredentialsSharedPrefsStore
+    private lateinit var account: FirefoxAccount
+
+    @Before
+    fun setUp() {
+        store = FirefoxSyncCredentialsSharedPrefsStore(RuntimeEnvironment.application)
+        account = getMarriedAccount("uid-123")
+    }
+
+    @Test
+    fun testSaveTokenAndLoadTokenReturnsSameData() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42", 3600))
+
+        val loadedToken = store.loadToken(account)!!
+        assertEquals("id", loadedToken.id)
+        assertEquals("key", loadedToken.key)
+        assertEquals("42", loadedToken.uid)
+        assertEquals("https://example.com/1.5/42", loadedToken.endpoint)
+    }
+
+    @Test
+    fun testLoadTokenReturnsNullForExpiredToken() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42", 60)) // within expiration margin.
+        assertNull(store.loadToken(account))
+    }
+
+    @Test
+    fun testTokenWithoutDurationIsNotSaved() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42"))
+        assertNull(store.loadToken(account))
+    }
+
+    @Test
+    fun testLoadTokenForAnotherAccountReturnsNull() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42", 3600))
+        assertNull(store.loadToken(getMarriedAccount("another-uid")))
+    }
+
+    @Test
+    fun testSaveKeysAndLoadKeysReturnsSameKeys() {
+        val expectedKeys = CollectionKeys.generateCollectionKeys()
+        store.saveKeys(account, expectedKeys, 1500000000120)
+
+        assertEquals(1500000000120, store.getKeysModifiedMillis(account))
+        val loadedKeys = store.loadKeys(account)!!
+        assertArrayEquals(expectedKeys.defaultKeyBundle().encryptionKey, loadedKeys.defaultKeyBundle().encryptionKey)
+        assertArrayEquals(expectedKeys.defaultKeyBundle().hmacKey, loadedKeys.defaultKeyBundle().hmacKey)
+    }
+
+    @Test
+    fun testDeleteStoredCredentialsRemovesEverything() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42", 3600))
+        store.saveKeys(account, CollectionKeys.generateCollectionKeys(), 1000)
+        store.deleteStoredCredentials()
+
+        assertNull(store.loadToken(account))
+        assertNull(store.loadKeys(account))
+        assertEquals(FirefoxSyncCredentialsSharedPrefsStore.NOT_STORED, store.getKeysModifiedMillis(account))
+    }
+
+    @Test
+    fun testDeleteKeysKeepsToken() {
+        store.saveToken(account, TokenServerToken("id", "key", "42", "https://example.com/1.5/42", 3600))
+        store.saveKeys(account, CollectionKeys.generateCollectionKeys(), 1000)
+        store.deleteKeys()
+
+        assertNotNull(store.loadToken(account))
+        assertNull(store.loadKeys(account))
+        assertEquals(FirefoxSyncCredentialsSharedPrefsStore.NOT_STORED, store.getKeysModifiedMillis(account))
+    }
+
+    private fun getMarriedAccount(uid: String): FirefoxAccount {
+        val email = "zzz@zzz.xyz"
+        val kB = "a".repeat(32).toByteArray() // must be length 32.
+        val state = Married(email, uid, byteArrayOf(), byteArrayOf(), kB, StateFactory.generateKeyPair(), "cert")
+        return FirefoxAccount(email, uid, state, FirefoxAccountEndpointConfig.getProduction())
+    }
+}
@@ -10,6 +10,7 @@ import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 
@@ -29,6 +30,13 @@ public class Married extends TokensAndKeysState {
   protected final String certificate;
   protected final String clientState;
 
+  // The sync key bundle is derived from kB on first use and kept: the same bundle is needed to decrypt, store and
+  // restore the crypto keys. It's kept outside the state, keyed by kB, because a new state is created for the same
+  // account each time a stored session is loaded. We only keep one: there's rarely more than one account.
+  private static final Object syncKeyBundleLock = new Object();
+  private static byte[] syncKeyBundleKB; // Guarded by syncKeyBundleLock.
+  private static KeyBundle syncKeyBundle; // Guarded by syncKeyBundleLock.
+
   public Married(String email, String uid, byte[] sessionToken, byte[] kA, byte[] kB, BrowserIDKeyPair keyPair, String certificate) {
     super(StateLabel.Married, email, uid, sessionToken, kA, kB, keyPair);
     Utils.throwIfNull(certificate);
@@ -99,9 +107,22 @@ public class Married extends TokensAndKeysState {
     return assertion;
   }
 
+  /**
+   * Return the sync key bundle derived from kB. It's derived once per kB, even across states restored from storage:
+   * concurrent callers wait for the first derivation rather than repeating it.
+   *
+   * @return a new KeyBundle, which the caller may modify.
+   */
   public KeyBundle getSyncKeyBundle() throws InvalidKeyException, NoSuchAlgorithmException, UnsupportedEncodingException {
-    // TODO Document this choice for deriving from kB.
-    return FxAccountUtils.generateSyncKeyBundle(kB);
+    synchronized (syncKeyBundleLock) {
+      if (syncKeyBundle == null || !Arrays.equals(syncKeyBundleKB, kB)) {
+        // TODO Document this choice for deriving from kB.
+        syncKeyBundle = FxAccountUtils.generateSyncKeyBundle(kB);
+        syncKeyBundleKB = kB.clone();
+      }
+      // KeyBundle is mutable so we don't share ours. Its keys are never modified in place, only replaced.
+      return new KeyBundle(syncKeyBundle.getEncryptionKey(), syncKeyBundle.getHMACKey());
+    }
   }
 
   public String getClientState() {
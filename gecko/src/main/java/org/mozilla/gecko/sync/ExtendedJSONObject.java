@@ -33,14 +33,78 @@ public class ExtendedJSONObject implements Cloneable {
    * Return a <code>JSONParser</code> instance for immediate use.
    * <p>
    * <code>JSONParser</code> is not thread-safe, so we return a new instance
-   * each call. This is extremely inefficient in execution time and especially
-   * memory use -- each instance allocates a 16kb temporary buffer -- and we
-   * hope to improve matters eventually.
+   * each call. Each instance allocates a 16kb temporary buffer so, to parse
+   * many inputs, prefer the <code>parse*</code> methods of this class, which
+   * reuse a parser per thread.
    */
   protected static JSONParser getJSONParser() {
     return new JSONParser();
   }
 
+  /**
+   * A parser, and a reader for UTF-8 input, reused for every parse on a
+   * single thread so the parser's 16kb buffer is only allocated once per
+   * thread. <code>JSONParser</code> resets its state at the start of each
+   * parse so it's safe to reuse, even after a failed parse.
+   * <p>
+   * The buffer grows to fit the longest token the parser reads and never
+   * shrinks so the reused parser is only used for inputs that are too short to
+   * grow it: see {@link #acquireParser(int)}.
+   */
+  private static class ReusableParser {
+    final JSONParser parser = new JSONParser();
+    final UTF8ByteArrayReader utf8Reader = new UTF8ByteArrayReader();
+    boolean isInUse = false;
+  }
+
+  private static final ThreadLocal<ReusableParser> reusableParsers = new ThreadLocal<ReusableParser>() {
+    @Override
+    protected ReusableParser initialValue() {
+      return new ReusableParser();
+    }
+  };
+
+  /**
+   * The initial size of the parser's buffer, in chars: it can only grow while
+   * reading an input at least this long.
+   */
+  private static final int PARSER_BUFFER_LENGTH = 16384;
+
+  /** The input length to pass to {@link #acquireParser(int)} if it's unknown. */
+  private static final int UNKNOWN_INPUT_LENGTH = -1;
+
+  /**
+   * Return this thread's reusable parser, which must be returned with
+   * {@link #releaseParser(ReusableParser)}. If it's already in use, i.e. this
+   * parse is nested in another one (e.g. a <code>Reader</code> that parses
+   * JSON as it reads), return a new parser instead.
+   * <p>
+   * A new parser is also returned if the input could grow the parser's buffer
+   * so one large input, e.g. a record with a large payload, doesn't make the
+   * thread hold onto a large buffer after it's parsed.
+   *
+   * @param maxInputChars an upper bound on the number of chars in the input,
+   *                      or {@link #UNKNOWN_INPUT_LENGTH}.
+   */
+  private static ReusableParser acquireParser(int maxInputChars) {
+    if (maxInputChars == UNKNOWN_INPUT_LENGTH || maxInputChars >= PARSER_BUFFER_LENGTH) {
+      return new ReusableParser();
+    }
+    final ReusableParser reusableParser = reusableParsers.get();
+    if (reusableParser.isInUse) {
+      return new ReusableParser();
+    }
+    reusableParser.isInUse = true;
+    return reusableParser;
+  }
+
+  private static void releaseParser(ReusableParser reusableParser) {
+    // Don't hold onto the input.
+    reusableParser.parser.reset((Reader) null);
+    reusableParser.utf8Reader.reset(null, 0, 0);
+    reusableParser.isInUse = false;
+  }
+
   /**
    * Parse a JSON encoded string.
    *
@@ -51,11 +115,14 @@ public class ExtendedJSONObject implements Cloneable {
    * @throws IOException
    */
   protected static Object parseRaw(Reader in) throws ParseException, IOException {
+    final ReusableParser reusableParser = acquireParser(UNKNOWN_INPUT_LENGTH);
     try {
-      return getJSONParser().parse(in);
+      return reusableParser.parser.parse(in);
     } catch (Error e) {
       // Don't be stupid, org.json.simple. Bug 1042929.
       throw new ParseException(ParseException.ERROR_UNEXPECTED_EXCEPTION, e);
+    } finally {
+      releaseParser(reusableParser);
     }
   }
 
@@ -69,11 +136,14 @@ public class ExtendedJSONObject implements Cloneable {
    * @throws ParseException
    */
   protected static Object parseRaw(String input) throws ParseException {
+    final ReusableParser reusableParser = acquireParser(input.length());
     try {
-      return getJSONParser().parse(input);
+      return reusableParser.parser.parse(input);
     } catch (Error e) {
       // Don't be stupid, org.json.simple. Bug 1042929.
       throw new ParseException(ParseException.ERROR_UNEXPECTED_EXCEPTION, e);
+    } finally {
+      releaseParser(reusableParser);
     }
   }
 
@@ -138,7 +208,43 @@ public class ExtendedJSONObject implements Cloneable {
    */
   public static ExtendedJSONObject parseUTF8AsJSONObject(byte[] in)
       throws NonObjectJSONException, IOException {
-    return new ExtendedJSONObject(new String(in, "UTF-8"));
+    return parseUTF8AsJSONObject(in, 0, in.length);
+  }
+
+  /**
+   * Helper method to get a JSON object from a range of a UTF-8 byte array.
+   * <p>
+   * The bytes are decoded as they're parsed, rather than copied into a
+   * <code>String</code> first: this is the cheapest way to parse many small
+   * objects, like decrypted records.
+   *
+   * @param in UTF-8 bytes.
+   * @param offset the index of the first byte to parse.
+   * @param length the number of bytes to parse.
+   * @throws NonObjectJSONException if the object is not valid JSON or not an object.
+   * @throws IOException
+   */
+  public static ExtendedJSONObject parseUTF8AsJSONObject(byte[] in, int offset, int length)
+      throws NonObjectJSONException, IOException {
+    // UTF-8 text has at most as many chars as bytes.
+    final ReusableParser reusableParser = acquireParser(length);
+    reusableParser.utf8Reader.reset(in, offset, length);
+    Object obj;
+    try {
+      obj = reusableParser.parser.parse(reusableParser.utf8Reader);
+    } catch (ParseException e) {
+      throw new NonObjectJSONException(e);
+    } catch (Error e) {
+      // Don't be stupid, org.json.simple. Bug 1042929.
+      throw new NonObjectJSONException(new ParseException(ParseException.ERROR_UNEXPECTED_EXCEPTION, e));
+    } finally {
+      releaseParser(reusableParser);
+    }
+
+    if (obj instanceof JSONObject) {
+      return new ExtendedJSONObject((JSONObject) obj);
+    }
+    throw new NonObjectJSONException("value must be a JSON object");
   }
 
   public ExtendedJSONObject() {
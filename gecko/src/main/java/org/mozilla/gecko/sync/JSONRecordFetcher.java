@@ -75,11 +75,19 @@ public class JSONRecordFetcher {
     }
   }
 
+  /**
+   * Called with each request before it is made. Override this to observe the
+   * request, e.g. to abort it from another thread.
+   */
+  protected void onRequestCreated(final SyncStorageRecordRequest request) {
+  }
+
   public void fetch(final JSONRecordFetchDelegate delegate) {
     this.delegate = delegate;
     try {
       final SyncStorageRecordRequest r = new SyncStorageRecordRequest(this.getURI());
       r.delegate = new JSONFetchHandler();
+      onRequestCreated(r);
       r.get();
     } catch (Exception e) {
       delegate.handleError(e);
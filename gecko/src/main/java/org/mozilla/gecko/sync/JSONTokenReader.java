@@ -0,0 +1,539 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import java.util.Arrays;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * Reads a JSON document from a range of a UTF-8 byte array one token at a time.
+ * <p>
+ * Parsing with <code>JSONParser</code> builds the whole document as a tree of maps and lists before the caller can
+ * look at any of it. This reader lets the caller pick out the values it's interested in and skip the rest without
+ * building them, e.g. to read a few known fields of a record payload. The API is modeled on
+ * <code>android.util.JsonReader</code>, which we can't use because it's not available in unit tests.
+ * <p>
+ * {@link #nextValue()} builds values as the same json-simple types <code>JSONParser</code> does.
+ * <p>
+ * The reader can be reset to read another document and reuses its buffers between documents. This class is not
+ * thread-safe.
+ */
+public class JSONTokenReader {
+  public enum Token {
+    BEGIN_OBJECT,
+    END_OBJECT,
+    BEGIN_ARRAY,
+    END_ARRAY,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT,
+  }
+
+  // Where we are in the document, pushed on the scope stack as we enter containers.
+  private static final int SCOPE_EMPTY_DOCUMENT = 0;
+  private static final int SCOPE_NONEMPTY_DOCUMENT = 1;
+  private static final int SCOPE_EMPTY_ARRAY = 2;
+  private static final int SCOPE_NONEMPTY_ARRAY = 3;
+  private static final int SCOPE_EMPTY_OBJECT = 4;
+  private static final int SCOPE_DANGLING_NAME = 5;
+  private static final int SCOPE_NONEMPTY_OBJECT = 6;
+
+  private final UTF8ByteArrayReader in = new UTF8ByteArrayReader();
+  private final char[] buffer = new char[1024];
+  private int pos;
+  private int limit;
+
+  private int[] scopes = new int[32];
+  private int scopeCount;
+
+  /** The next token if {@link #peek()} has already read it, or null. */
+  private Token peeked;
+
+  private final StringBuilder stringBuilder = new StringBuilder();
+
+  public JSONTokenReader() {
+    reset(null, 0, 0);
+  }
+
+  /**
+   * Reset this reader to read the JSON document in the given range of the given array.
+   */
+  public void reset(byte[] utf8, int offset, int length) {
+    in.reset(utf8, offset, length);
+    pos = 0;
+    limit = 0;
+    scopeCount = 0;
+    pushScope(SCOPE_EMPTY_DOCUMENT);
+    peeked = null;
+  }
+
+  /**
+   * @return the type of the next token, without consuming it.
+   */
+  public Token peek() throws UnexpectedJSONException {
+    if (peeked != null) {
+      return peeked;
+    }
+
+    int c;
+    final int scope = scopes[scopeCount - 1];
+    switch (scope) {
+      case SCOPE_EMPTY_ARRAY:
+        scopes[scopeCount - 1] = SCOPE_NONEMPTY_ARRAY;
+        if (nextNonWhitespace() == ']') {
+          return peeked = Token.END_ARRAY;
+        }
+        pos--;
+        break;
+
+      case SCOPE_NONEMPTY_ARRAY:
+        c = nextNonWhitespace();
+        if (c == ']') {
+          return peeked = Token.END_ARRAY;
+        } else if (c != ',') {
+          throw syntaxError("Expected ',' or ']' in array");
+        }
+        break;
+
+      case SCOPE_EMPTY_OBJECT:
+      case SCOPE_NONEMPTY_OBJECT:
+        scopes[scopeCount - 1] = SCOPE_DANGLING_NAME;
+        c = nextNonWhitespace();
+        if (c == '}') {
+          return peeked = Token.END_OBJECT;
+        }
+        if (scope == SCOPE_NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("Expected ',' or '}' in object");
+          }
+          c = nextNonWhitespace();
+        }
+        if (c != '"') {
+          throw syntaxError("Expected name in object");
+        }
+        return peeked = Token.NAME; // The opening quote is consumed.
+
+      case SCOPE_DANGLING_NAME:
+        scopes[scopeCount - 1] = SCOPE_NONEMPTY_OBJECT;
+        if (nextNonWhitespace() != ':') {
+          throw syntaxError("Expected ':' after name");
+        }
+        break;
+
+      case SCOPE_EMPTY_DOCUMENT:
+        scopes[scopeCount - 1] = SCOPE_NONEMPTY_DOCUMENT;
+        break;
+
+      case SCOPE_NONEMPTY_DOCUMENT:
+        if (nextNonWhitespaceOrEnd() != -1) {
+          throw syntaxError("Expected end of document");
+        }
+        return peeked = Token.END_DOCUMENT;
+
+      default:
+        throw new IllegalStateException("Unknown scope " + scope);
+    }
+
+    // We expect a value.
+    c = nextNonWhitespace();
+    switch (c) {
+      case '{':
+        return peeked = Token.BEGIN_OBJECT;
+      case '[':
+        return peeked = Token.BEGIN_ARRAY;
+      case '"':
+        return peeked = Token.STRING; // The opening quote is consumed.
+      case 't':
+      case 'f':
+        pos--;
+        return peeked = Token.BOOLEAN;
+      case 'n':
+        pos--;
+        return peeked = Token.NULL;
+      default:
+        if (c == '-' || (c >= '0' && c <= '9')) {
+          pos--;
+          return peeked = Token.NUMBER;
+        }
+        throw syntaxError("Expected a value");
+    }
+  }
+
+  /**
+   * @return true if the current object or array has another element.
+   */
+  public boolean hasNext() throws UnexpectedJSONException {
+    final Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() throws UnexpectedJSONException {
+    consume(Token.BEGIN_OBJECT);
+    pushScope(SCOPE_EMPTY_OBJECT);
+  }
+
+  public void endObject() throws UnexpectedJSONException {
+    consume(Token.END_OBJECT);
+    scopeCount--;
+  }
+
+  public void beginArray() throws UnexpectedJSONException {
+    consume(Token.BEGIN_ARRAY);
+    pushScope(SCOPE_EMPTY_ARRAY);
+  }
+
+  public void endArray() throws UnexpectedJSONException {
+    consume(Token.END_ARRAY);
+    scopeCount--;
+  }
+
+  public String nextName() throws UnexpectedJSONException {
+    consume(Token.NAME);
+    return readString();
+  }
+
+  public String nextString() throws UnexpectedJSONException {
+    consume(Token.STRING);
+    return readString();
+  }
+
+  public boolean nextBoolean() throws UnexpectedJSONException {
+    consume(Token.BOOLEAN);
+    if (buffer[pos] == 't') {
+      readKeyword("true");
+      return true;
+    }
+    readKeyword("false");
+    return false;
+  }
+
+  public void nextNull() throws UnexpectedJSONException {
+    consume(Token.NULL);
+    readKeyword("null");
+  }
+
+  /**
+   * Return the next number, which must be an integer that fits in a long.
+   */
+  public long nextLong() throws UnexpectedJSONException {
+    consume(Token.NUMBER);
+    final String number = readNumber();
+    if (!isInteger(number)) {
+      throw new UnexpectedJSONException("Expected an integer");
+    }
+    try {
+      return Long.parseLong(number);
+    } catch (NumberFormatException e) {
+      throw new UnexpectedJSONException(e);
+    }
+  }
+
+  /**
+   * Return the next value as the json-simple type <code>JSONParser</code> would: JSONObject, JSONArray, String, Long,
+   * Double, Boolean or null.
+   */
+  @SuppressWarnings("unchecked") // json-simple containers are raw.
+  public Object nextValue() throws UnexpectedJSONException {
+    switch (peek()) {
+      case BEGIN_OBJECT:
+        final JSONObject object = new JSONObject();
+        beginObject();
+        while (hasNext()) {
+          final String name = nextName();
+          object.put(name, nextValue());
+        }
+        endObject();
+        return object;
+
+      case BEGIN_ARRAY:
+        final JSONArray array = new JSONArray();
+        beginArray();
+        while (hasNext()) {
+          array.add(nextValue());
+        }
+        endArray();
+        return array;
+
+      case STRING:
+        return nextString();
+
+      case NUMBER:
+        consume(Token.NUMBER);
+        final String number = readNumber();
+        try {
+          // Like JSONParser, integers are always Longs, even if they overflow.
+          return isInteger(number) ? (Object) Long.valueOf(number) : (Object) Double.valueOf(number);
+        } catch (NumberFormatException e) {
+          throw new UnexpectedJSONException(e);
+        }
+
+      case BOOLEAN:
+        return nextBoolean();
+
+      case NULL:
+        nextNull();
+        return null;
+
+      default:
+        throw syntaxError("Expected a value");
+    }
+  }
+
+  /**
+   * Skip the next value, including all of its elements if it's an object or array, without building it.
+   */
+  public void skipValue() throws UnexpectedJSONException {
+    int depth = 0;
+    do {
+      switch (peek()) {
+        case BEGIN_OBJECT:
+          beginObject();
+          depth++;
+          break;
+        case BEGIN_ARRAY:
+          beginArray();
+          depth++;
+          break;
+        case END_OBJECT:
+          endObject();
+          depth--;
+          break;
+        case END_ARRAY:
+          endArray();
+          depth--;
+          break;
+        case NAME:
+        case STRING:
+          peeked = null;
+          skipString();
+          break;
+        case NUMBER:
+          peeked = null;
+          readNumber();
+          break;
+        case BOOLEAN:
+          nextBoolean();
+          break;
+        case NULL:
+          nextNull();
+          break;
+        default:
+          throw syntaxError("Expected a value");
+      }
+    } while (depth > 0);
+  }
+
+  private void consume(Token expected) throws UnexpectedJSONException {
+    final Token token = peek();
+    if (token != expected) {
+      throw new UnexpectedJSONException("Expected " + expected + " but was " + token);
+    }
+    peeked = null;
+  }
+
+  private void pushScope(int scope) {
+    if (scopeCount == scopes.length) {
+      scopes = Arrays.copyOf(scopes, scopeCount * 2);
+    }
+    scopes[scopeCount++] = scope;
+  }
+
+  /**
+   * Refill the buffer, which must have been fully read.
+   *
+   * @return false if there are no more chars.
+   */
+  private boolean fill() {
+    pos = 0;
+    limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+    return limit > 0;
+  }
+
+  /**
+   * @return the next char, or -1 at the end of the document.
+   */
+  private int nextCharOrEnd() {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos++];
+  }
+
+  private char nextChar() throws UnexpectedJSONException {
+    final int c = nextCharOrEnd();
+    if (c == -1) {
+      throw syntaxError("Unexpected end of document");
+    }
+    return (char) c;
+  }
+
+  private int nextNonWhitespaceOrEnd() {
+    int c;
+    do {
+      c = nextCharOrEnd();
+    } while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    return c;
+  }
+
+  private char nextNonWhitespace() throws UnexpectedJSONException {
+    final int c = nextNonWhitespaceOrEnd();
+    if (c == -1) {
+      throw syntaxError("Unexpected end of document");
+    }
+    return (char) c;
+  }
+
+  /**
+   * Read the rest of a string whose opening quote has been consumed.
+   */
+  private String readString() throws UnexpectedJSONException {
+    stringBuilder.setLength(0);
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        final char c = buffer[pos++];
+        if (c == '"') {
+          // Most strings have no escapes and fit in the buffer, so we create them straight from the buffer.
+          if (stringBuilder.length() == 0) {
+            return new String(buffer, start, pos - start - 1);
+          }
+          stringBuilder.append(buffer, start, pos - start - 1);
+          return stringBuilder.toString();
+        }
+        if (c == '\\') {
+          stringBuilder.append(buffer, start, pos - start - 1);
+          stringBuilder.append(readEscapedChar());
+          start = pos; // Reading the escape may have refilled the buffer.
+        }
+      }
+      stringBuilder.append(buffer, start, pos - start);
+      if (!fill()) {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+  /**
+   * Skip the rest of a string whose opening quote has been consumed.
+   */
+  private void skipString() throws UnexpectedJSONException {
+    char c;
+    while ((c = nextChar()) != '"') {
+      if (c == '\\') {
+        readEscapedChar();
+      }
+    }
+  }
+
+  /**
+   * Read an escape sequence whose backslash has been consumed.
+   */
+  private char readEscapedChar() throws UnexpectedJSONException {
+    final char c = nextChar();
+    switch (c) {
+      case '"':
+      case '\\':
+      case '/':
+        return c;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case 'u':
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          final int digit = Character.digit(nextChar(), 16);
+          if (digit < 0) {
+            throw syntaxError("Invalid unicode escape");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw syntaxError("Invalid escape");
+    }
+  }
+
+  private void readKeyword(String keyword) throws UnexpectedJSONException {
+    for (int i = 0; i < keyword.length(); i++) {
+      if (nextChar() != keyword.charAt(i)) {
+        throw syntaxError("Expected " + keyword);
+      }
+    }
+  }
+
+  /**
+   * Read the text of a number, validating it with the same grammar as <code>JSONParser</code>:
+   * <code>-?[0-9]+(\.[0-9]+)?([eE][-+]?[0-9]+)?</code>.
+   */
+  private String readNumber() throws UnexpectedJSONException {
+    stringBuilder.setLength(0);
+    int c = nextCharOrEnd();
+    if (c == '-') {
+      stringBuilder.append('-');
+      c = nextCharOrEnd();
+    }
+    c = readDigits(c);
+    if (c == '.') {
+      stringBuilder.append('.');
+      c = readDigits(nextCharOrEnd());
+    }
+    if (c == 'e' || c == 'E') {
+      stringBuilder.append((char) c);
+      c = nextCharOrEnd();
+      if (c == '-' || c == '+') {
+        stringBuilder.append((char) c);
+        c = nextCharOrEnd();
+      }
+      c = readDigits(c);
+    }
+    if (c != -1) {
+      pos--; // Unread the char after the number.
+    }
+    return stringBuilder.toString();
+  }
+
+  /**
+   * Read one or more digits, starting with the given char.
+   *
+   * @return the char after the digits, or -1 at the end of the document.
+   */
+  private int readDigits(int c) throws UnexpectedJSONException {
+    if (c < '0' || c > '9') {
+      throw syntaxError("Expected a digit");
+    }
+    do {
+      stringBuilder.append((char) c);
+      c = nextCharOrEnd();
+    } while (c >= '0' && c <= '9');
+    return c;
+  }
+
+  private static boolean isInteger(String number) {
+    for (int i = 0; i < number.length(); i++) {
+      final char c = number.charAt(i);
+      if (c == '.' || c == 'e' || c == 'E') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static UnexpectedJSONException syntaxError(String message) {
+    // We don't include the surrounding text to avoid leaking user data.
+    return new UnexpectedJSONException(message);
+  }
+}
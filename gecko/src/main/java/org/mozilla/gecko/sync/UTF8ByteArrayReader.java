@@ -0,0 +1,141 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import java.io.Reader;
+
+/**
+ * A <code>Reader</code> that decodes a range of a UTF-8 byte array as it's read.
+ * <p>
+ * Unlike <code>new String(bytes, "UTF-8")</code> or an <code>InputStreamReader</code>, this doesn't copy the decoded
+ * text or allocate decoding buffers, and it can be reset to read another array. Malformed bytes are read as the
+ * replacement char, U+FFFD, as they are by those decoders.
+ * <p>
+ * This class is not thread-safe.
+ */
+class UTF8ByteArrayReader extends Reader {
+  private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+  private byte[] bytes;
+  private int pos;
+  private int end;
+
+  /**
+   * A low surrogate left over from decoding a supplementary code point when there was no room for it in the
+   * last read, or 0.
+   */
+  private char pendingLowSurrogate;
+
+  /**
+   * Reset this reader to read the given range of the given array, or to read nothing if the array is null.
+   */
+  void reset(byte[] bytes, int offset, int length) {
+    this.bytes = bytes;
+    this.pos = offset;
+    this.end = bytes == null ? offset : offset + length;
+    this.pendingLowSurrogate = 0;
+  }
+
+  @Override
+  public int read(char[] out, int offset, int length) {
+    if (length == 0) {
+      return 0;
+    }
+
+    final int outStart = offset;
+    final int outEnd = offset + length;
+    if (pendingLowSurrogate != 0) {
+      out[offset++] = pendingLowSurrogate;
+      pendingLowSurrogate = 0;
+    }
+
+    while (offset < outEnd && pos < end) {
+      final int b0 = bytes[pos] & 0xFF;
+      if (b0 < 0x80) { // The common case for JSON.
+        out[offset++] = (char) b0;
+        pos += 1;
+        continue;
+      }
+
+      final int codePoint = decodeMultiByte(b0);
+      if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+        out[offset++] = (char) codePoint;
+      } else {
+        // Character.highSurrogate and lowSurrogate need API 19.
+        final int supplementaryBits = codePoint - Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        out[offset++] = (char) (Character.MIN_HIGH_SURROGATE + (supplementaryBits >>> 10));
+        final char lowSurrogate = (char) (Character.MIN_LOW_SURROGATE + (supplementaryBits & 0x3FF));
+        if (offset < outEnd) {
+          out[offset++] = lowSurrogate;
+        } else {
+          pendingLowSurrogate = lowSurrogate;
+        }
+      }
+    }
+
+    final int readCount = offset - outStart;
+    return readCount == 0 ? -1 : readCount;
+  }
+
+  /**
+   * Decodes the multi-byte sequence at {@link #pos}, starting with the given lead byte, and advances past it.
+   * <p>
+   * A malformed sequence is decoded as a single {@link #REPLACEMENT_CHAR} for its longest valid prefix (at least the
+   * lead byte), which is skipped. This is the Unicode recommended practice; platform decoders differ in some edge cases
+   * (e.g. encoded surrogates) so the number of replacement chars may not match <code>new String(bytes, "UTF-8")</code>.
+   *
+   * @return the decoded code point or {@link #REPLACEMENT_CHAR} if the sequence is malformed.
+   */
+  private int decodeMultiByte(int b0) {
+    final int sequenceLength;
+    int codePoint;
+    // The valid range of the second byte, which excludes overlong encodings, surrogates and code points past the end
+    // of Unicode. Later bytes are always in 0x80..0xBF.
+    int min = 0x80;
+    int max = 0xBF;
+    if (b0 >= 0xC2 && b0 <= 0xDF) {
+      sequenceLength = 2;
+      codePoint = b0 & 0x1F;
+    } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+      sequenceLength = 3;
+      codePoint = b0 & 0x0F;
+      if (b0 == 0xE0) {
+        min = 0xA0;
+      } else if (b0 == 0xED) {
+        max = 0x9F;
+      }
+    } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+      sequenceLength = 4;
+      codePoint = b0 & 0x07;
+      if (b0 == 0xF0) {
+        min = 0x90;
+      } else if (b0 == 0xF4) {
+        max = 0x8F;
+      }
+    } else {
+      pos += 1;
+      return REPLACEMENT_CHAR;
+    }
+
+    for (int i = 1; i < sequenceLength; i++) {
+      final int continuation = pos + i < end ? bytes[pos + i] & 0xFF : -1;
+      if (continuation < min || continuation > max) {
+        pos += i;
+        return REPLACEMENT_CHAR;
+      }
+      codePoint = (codePoint << 6) | (continuation & 0x3F);
+      min = 0x80;
+      max = 0xBF;
+    }
+
+    pos += sequenceLength;
+    return codePoint;
+  }
+
+  @Override
+  public void close() {
+    reset(null, 0, 0);
+  }
+}
@@ -5,6 +5,7 @@
 package org.mozilla.gecko.sync;
 
 import org.mozilla.apache.commons.codec.binary.Base64;
+import org.mozilla.gecko.sync.crypto.EncodedTextDecoder;
 import org.mozilla.gecko.util.StringUtils;
 
 import java.math.BigDecimal;
@@ -99,14 +100,8 @@ public class Utils {
   }
 
   public static byte[] hex2Byte(String str) {
-    if (str.length() % 2 == 1) {
-      str = "0" + str;
-    }
-
-    byte[] bytes = new byte[str.length() / 2];
-    for (int i = 0; i < bytes.length; i++) {
-      bytes[i] = (byte) Integer.parseInt(str.substring(2 * i, 2 * i + 2), 16);
-    }
+    byte[] bytes = new byte[EncodedTextDecoder.hexDecodedLength(str.length())];
+    EncodedTextDecoder.decodeHex(str, bytes);
     return bytes;
   }
 
@@ -119,6 +114,18 @@ public class Utils {
     }
   }
 
+  public static BigDecimal millisecondsToDecimalSeconds(long ms) {
+    return new BigDecimal(ms).movePointLeft(3);
+  }
+
+  /**
+   * Inverse of {@link #decimalSecondsToMilliseconds(String)}, e.g. for use in
+   * the "newer" argument of a Sync storage request.
+   */
+  public static String millisecondsToDecimalSecondsString(long ms) {
+    return millisecondsToDecimalSeconds(ms).toPlainString();
+  }
+
   public static byte[] sha256(byte[] in)
       throws NoSuchAlgorithmException {
     MessageDigest sha1 = MessageDigest.getInstance("SHA-256");
@@ -7,7 +7,6 @@ package org.mozilla.gecko.sync.crypto;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -24,8 +23,8 @@ import org.mozilla.gecko.sync.Utils;
  * All info in these objects should be decoded (i.e. not BaseXX encoded).
  */
 public class CryptoInfo {
-  private static final String TRANSFORMATION     = "AES/CBC/PKCS5Padding";
-  private static final String KEY_ALGORITHM_SPEC = "AES";
+  static final String TRANSFORMATION     = "AES/CBC/PKCS5Padding";
+  static final String KEY_ALGORITHM_SPEC = "AES";
 
   private byte[] message;
   private byte[] iv;
@@ -123,7 +122,24 @@ public class CryptoInfo {
   public boolean generatedHMACIsHMAC() throws NoSuchAlgorithmException, InvalidKeyException {
     byte[] generatedHMAC = generatedHMACFor(getMessage(), getKeys());
     byte[] expectedHMAC  = getHMAC();
-    return Arrays.equals(generatedHMAC, expectedHMAC);
+    return expectedHMAC != null && hmacEquals(generatedHMAC, expectedHMAC, expectedHMAC.length);
+  }
+
+  /**
+   * Return true if the generated HMAC is the same as the first expectedLength bytes of expectedHMAC.
+   *
+   * The comparison takes the same time wherever the HMACs differ so it doesn't reveal how much of a forged HMAC
+   * was correct.
+   */
+  static boolean hmacEquals(byte[] generatedHMAC, byte[] expectedHMAC, int expectedLength) {
+    if (generatedHMAC.length != expectedLength) {
+      return false;
+    }
+    int difference = 0;
+    for (int i = 0; i < expectedLength; i++) {
+      difference |= generatedHMAC[i] ^ expectedHMAC[i];
+    }
+    return difference == 0;
   }
 
   /**
@@ -197,30 +213,11 @@ public class CryptoInfo {
    * @throws CryptoException
    */
   public void decrypt() throws CryptoException {
+    // To decrypt many messages with the same keys, use a KeyBundleDecrypter directly.
+    byte[] decryptedBytes = new KeyBundleDecrypter(getKeys()).decrypt(getMessage(), getIV(), getHMAC());
 
-    // Check HMAC.
-    try {
-      if (!generatedHMACIsHMAC()) {
-        throw new HMACVerificationException();
-      }
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-      throw new CryptoException(e);
-    }
-
-    Cipher cipher = CryptoInfo.getCipher(TRANSFORMATION);
-    try {
-      byte[] encryptionKey = getKeys().getEncryptionKey();
-      SecretKeySpec spec = new SecretKeySpec(encryptionKey, KEY_ALGORITHM_SPEC);
-      cipher.init(Cipher.DECRYPT_MODE, spec, new IvParameterSpec(getIV()));
-    } catch (GeneralSecurityException ex) {
-      throw new CryptoException(ex);
-    }
-    byte[] decryptedBytes = commonCrypto(cipher, getMessage());
-    byte[] iv = cipher.getIV();
-
-    // Update in place.  keys is already set.
+    // Update in place.  keys and iv are already set.
     this.setHMAC(null);
-    this.setIV(iv);
     this.setMessage(decryptedBytes);
   }
 
@@ -229,7 +226,7 @@ public class CryptoInfo {
    *
    * @param transformation The type of Cipher to get.
    */
-  private static Cipher getCipher(String transformation) throws CryptoException {
+  static Cipher getCipher(String transformation) throws CryptoException {
     try {
       return Cipher.getInstance(transformation);
     } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
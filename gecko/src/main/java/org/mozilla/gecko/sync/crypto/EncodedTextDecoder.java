@@ -0,0 +1,168 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Decodes Base64 and hex text into caller-provided buffers.
+ *
+ * {@link org.mozilla.apache.commons.codec.binary.Base64#decodeBase64(String)} and
+ * {@link org.mozilla.gecko.sync.Utils#hex2Byte(String)} allocate several intermediate arrays and Strings for each call,
+ * which adds up when decoding the fields of every record in a collection. These methods read the chars of the given
+ * text directly and write into a buffer the caller can reuse.
+ */
+public class EncodedTextDecoder {
+  private static final int NOT_IN_ALPHABET = -1;
+
+  /**
+   * Maps the chars of both the standard and URL-safe Base64 alphabets to their 6-bit values, like the vendored
+   * commons-codec Base64 decoder.
+   */
+  private static final byte[] BASE64_DECODE_TABLE = new byte[128];
+  static {
+    Arrays.fill(BASE64_DECODE_TABLE, (byte) NOT_IN_ALPHABET);
+    final String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    for (int i = 0; i < alphabet.length(); i++) {
+      BASE64_DECODE_TABLE[alphabet.charAt(i)] = (byte) i;
+    }
+    BASE64_DECODE_TABLE['-'] = 62;
+    BASE64_DECODE_TABLE['_'] = 63;
+  }
+
+  private static final char BASE64_PAD = '=';
+
+  private EncodedTextDecoder() {}
+
+  /**
+   * @return the maximum number of bytes {@link #decodeBase64(String, byte[])} can write for text of the given length.
+   */
+  public static int maxBase64DecodedLength(int encodedLength) {
+    return (encodedLength / 4) * 3 + 2;
+  }
+
+  /**
+   * Decodes the given Base64 text into the start of the given buffer, with the same leniency as the vendored
+   * commons-codec decoder: chars outside the alphabet are skipped, decoding stops at the first pad char and padding is
+   * optional.
+   *
+   * @param out a buffer of at least {@link #maxBase64DecodedLength(int)} bytes.
+   * @return the number of bytes written to the buffer.
+   */
+  public static int decodeBase64(String in, byte[] out) {
+    final int inLength = in.length();
+    int outPos = 0;
+    int bitWorkArea = 0;
+    int modulus = 0;
+    for (int i = 0; i < inLength; i++) {
+      final char c = in.charAt(i);
+      if (c == BASE64_PAD) {
+        break;
+      }
+      if (c >= BASE64_DECODE_TABLE.length || BASE64_DECODE_TABLE[c] == NOT_IN_ALPHABET) {
+        continue;
+      }
+
+      bitWorkArea = (bitWorkArea << 6) + BASE64_DECODE_TABLE[c];
+      modulus = (modulus + 1) % 4;
+      if (modulus == 0) {
+        out[outPos++] = (byte) (bitWorkArea >> 16);
+        out[outPos++] = (byte) (bitWorkArea >> 8);
+        out[outPos++] = (byte) bitWorkArea;
+      }
+    }
+
+    // Output the whole bytes of any trailing partial block; 6 bits (modulus 1) is less than a byte and is ignored.
+    switch (modulus) {
+      case 2:
+        out[outPos++] = (byte) (bitWorkArea >> 4);
+        break;
+      case 3:
+        out[outPos++] = (byte) (bitWorkArea >> 10);
+        out[outPos++] = (byte) (bitWorkArea >> 2);
+        break;
+    }
+    return outPos;
+  }
+
+  /**
+   * Copies the chars of the given Base64 text into the start of the given buffer as bytes, checking whether the text
+   * is in the canonical form written by the vendored commons-codec encoder: the standard alphabet, no line breaks or
+   * other chars, padding to a multiple of 4 chars, and zero unused bits in the last char before the padding.
+   *
+   * Canonical text is the only text that re-encodes to itself after {@link #decodeBase64(String, byte[])}. Chars
+   * outside of ASCII are truncated but make the text non-canonical.
+   *
+   * @param out a buffer of at least as many bytes as the text has chars.
+   * @return true if the text is in canonical form.
+   */
+  public static boolean copyBase64Text(String in, byte[] out) {
+    final int inLength = in.length();
+    boolean isCanonical = inLength % 4 == 0;
+    int padLength = 0;
+    int lastValue = 0;
+    for (int i = 0; i < inLength; i++) {
+      final char c = in.charAt(i);
+      out[i] = (byte) c;
+      if (c == BASE64_PAD) {
+        padLength += 1;
+      } else if (padLength > 0 || c == '-' || c == '_' ||
+          c >= BASE64_DECODE_TABLE.length || BASE64_DECODE_TABLE[c] == NOT_IN_ALPHABET) {
+        isCanonical = false; // Not in the standard alphabet, or after the padding.
+      } else {
+        lastValue = BASE64_DECODE_TABLE[c];
+      }
+    }
+
+    // One pad char leaves 2 unused bits in the last char, two leave 4.
+    switch (padLength) {
+      case 0:
+        return isCanonical;
+      case 1:
+        return isCanonical && (lastValue & 0x3) == 0;
+      case 2:
+        return isCanonical && (lastValue & 0xF) == 0;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return the number of bytes {@link #decodeHex(String, byte[])} writes for text of the given length.
+   */
+  public static int hexDecodedLength(int encodedLength) {
+    return (encodedLength + 1) / 2;
+  }
+
+  /**
+   * Decodes the given hex text into the start of the given buffer. Text of odd length is decoded as if it had a
+   * leading zero.
+   *
+   * @param out a buffer of at least {@link #hexDecodedLength(int)} bytes.
+   * @return the number of bytes written to the buffer.
+   * @throws NumberFormatException if the text contains a char that is not a hex digit.
+   */
+  public static int decodeHex(String in, byte[] out) {
+    final int inLength = in.length();
+    int inPos = 0;
+    int outPos = 0;
+    if (inLength % 2 == 1) {
+      out[outPos++] = (byte) hexDigit(in, inPos++);
+    }
+    while (inPos < inLength) {
+      out[outPos++] = (byte) ((hexDigit(in, inPos) << 4) | hexDigit(in, inPos + 1));
+      inPos += 2;
+    }
+    return outPos;
+  }
+
+  private static int hexDigit(String in, int index) {
+    final int digit = Character.digit(in.charAt(index), 16);
+    if (digit < 0) {
+      throw new NumberFormatException("Invalid hex digit at index " + index);
+    }
+    return digit;
+  }
+}
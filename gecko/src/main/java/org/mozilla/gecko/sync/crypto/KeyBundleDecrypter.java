@@ -0,0 +1,176 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.crypto;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.mozilla.apache.commons.codec.binary.Base64;
+
+/**
+ * Decrypts many messages with the same {@link KeyBundle}.
+ *
+ * {@link CryptoInfo#decrypt()} creates a new Mac, Cipher and key spec for every message: for small records, such as
+ * history and bookmarks, looking up the providers and initializing the keys costs more than the decryption itself.
+ * This class creates them once and resets them between messages instead.
+ *
+ * {@link #decrypt(String, String, String)} also decodes the encoded payload fields of a record into buffers that are
+ * reused between messages.
+ *
+ * The keys are copied when the decrypter is created so later changes to the given KeyBundle are not seen.
+ *
+ * Mac and Cipher are stateful so this class is not thread-safe: each thread should use its own instance.
+ */
+public class KeyBundleDecrypter {
+  private final Mac hmacHasher;
+  private final Cipher cipher;
+  private final SecretKeySpec encryptionKeySpec;
+
+  // Reusable buffers, which grow to fit the largest message seen.
+  private byte[] base64CiphertextBuffer = new byte[0];
+  private byte[] ciphertextBuffer = new byte[0];
+  private byte[] ivBuffer = new byte[0];
+  private final byte[] hmacBuffer = new byte[32];
+
+  public KeyBundleDecrypter(KeyBundle keys) throws CryptoException {
+    try {
+      hmacHasher = HKDF.makeHMACHasher(keys.getHMACKey());
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new CryptoException(e);
+    }
+    cipher = CryptoInfo.getCipher(CryptoInfo.TRANSFORMATION);
+    encryptionKeySpec = new SecretKeySpec(keys.getEncryptionKey(), CryptoInfo.KEY_ALGORITHM_SPEC);
+  }
+
+  /**
+   * Return the given ciphertext decrypted using the given initial vector, verifying that the given HMAC validates.
+   *
+   * @throws HMACVerificationException if the HMAC does not validate.
+   */
+  public byte[] decrypt(byte[] ciphertext, byte[] iv, byte[] hmac) throws CryptoException {
+    // doFinal resets the Mac so it's ready for the next message.
+    byte[] generatedHMAC = hmacHasher.doFinal(Base64.encodeBase64(ciphertext));
+    if (hmac == null || !CryptoInfo.hmacEquals(generatedHMAC, hmac, hmac.length)) {
+      throw new HMACVerificationException();
+    }
+
+    // Each message has its own IV so we re-initialize the Cipher, which also resets it if the last message failed.
+    // We pass the same key object each time so the provider can reuse its key schedule.
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, encryptionKeySpec, new IvParameterSpec(iv));
+    } catch (GeneralSecurityException e) {
+      throw new CryptoException(e);
+    }
+
+    try {
+      return cipher.doFinal(ciphertext);
+    } catch (IllegalBlockSizeException | BadPaddingException e) {
+      throw new CryptoException(e);
+    }
+  }
+
+  /**
+   * Return the cleartext of the given encoded fields of a record payload, verifying that the HMAC validates.
+   *
+   * This is equivalent to decoding the fields and calling {@link #decrypt(byte[], byte[], byte[])} but the decoded
+   * fields are written into reusable buffers and the ciphertext is HMAC'd in its original Base64 form rather than
+   * being re-encoded.
+   *
+   * @param base64Ciphertext the Base64 encoded ciphertext.
+   * @param base64IV the Base64 encoded initial vector.
+   * @param hexHMAC the hex encoded HMAC.
+   * @throws HMACVerificationException if the HMAC does not validate.
+   */
+  public byte[] decrypt(String base64Ciphertext, String base64IV, String hexHMAC) throws CryptoException {
+    if (!verifyHMAC(base64Ciphertext, hexHMAC)) {
+      throw new HMACVerificationException();
+    }
+    return decryptVerified(base64Ciphertext, base64IV);
+  }
+
+  /**
+   * Return true if the given HMAC validates for the given Base64 encoded ciphertext.
+   *
+   * This only hashes the ciphertext so it's a cheap way to reject tampered or corrupt messages before decrypting
+   * them: messages that pass can be decrypted with {@link #decryptVerified(String, String)}.
+   *
+   * @throws NumberFormatException if the HMAC is not hex, like {@link org.mozilla.gecko.sync.Utils#hex2Byte(String)}.
+   */
+  public boolean verifyHMAC(String base64Ciphertext, String hexHMAC) {
+    final int hmacLength = decodeHMAC(hexHMAC);
+
+    // The sender HMACs the Base64 text it sends so we can usually HMAC the text we received without re-encoding it.
+    final int base64Length = base64Ciphertext.length();
+    if (base64CiphertextBuffer.length < base64Length) {
+      base64CiphertextBuffer = new byte[base64Length];
+    }
+    final boolean isCanonical = EncodedTextDecoder.copyBase64Text(base64Ciphertext, base64CiphertextBuffer);
+    hmacHasher.update(base64CiphertextBuffer, 0, base64Length);
+    if (CryptoInfo.hmacEquals(hmacHasher.doFinal(), hmacBuffer, hmacLength)) {
+      return true;
+    }
+
+    // Canonical text is what re-encoding would produce so there's nothing else to try: the HMAC is wrong.
+    if (isCanonical) {
+      return false;
+    }
+
+    // The text was not in canonical form (e.g. it was missing padding) so it may have been HMAC'd after being
+    // re-encoded: for compatibility with CryptoInfo, which HMACs the re-encoded ciphertext, we fall back to that.
+    ciphertextBuffer = ensureBase64BufferSize(ciphertextBuffer, base64Ciphertext);
+    final int ciphertextLength = EncodedTextDecoder.decodeBase64(base64Ciphertext, ciphertextBuffer);
+    final byte[] ciphertext = Arrays.copyOf(ciphertextBuffer, ciphertextLength);
+    return CryptoInfo.hmacEquals(hmacHasher.doFinal(Base64.encodeBase64(ciphertext)), hmacBuffer, hmacLength);
+  }
+
+  /**
+   * Return the cleartext of the given encoded fields of a record payload <b>without</b> verifying its HMAC: only call
+   * this for messages that passed {@link #verifyHMAC(String, String)}, which may have been called on another decrypter
+   * for the same keys.
+   *
+   * @param base64Ciphertext the Base64 encoded ciphertext.
+   * @param base64IV the Base64 encoded initial vector.
+   */
+  public byte[] decryptVerified(String base64Ciphertext, String base64IV) throws CryptoException {
+    ivBuffer = ensureBase64BufferSize(ivBuffer, base64IV);
+    final int ivLength = EncodedTextDecoder.decodeBase64(base64IV, ivBuffer);
+    ciphertextBuffer = ensureBase64BufferSize(ciphertextBuffer, base64Ciphertext);
+    final int ciphertextLength = EncodedTextDecoder.decodeBase64(base64Ciphertext, ciphertextBuffer);
+
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, encryptionKeySpec, new IvParameterSpec(ivBuffer, 0, ivLength));
+    } catch (GeneralSecurityException e) {
+      throw new CryptoException(e);
+    }
+
+    try {
+      return cipher.doFinal(ciphertextBuffer, 0, ciphertextLength);
+    } catch (IllegalBlockSizeException | BadPaddingException e) {
+      throw new CryptoException(e);
+    }
+  }
+
+  /** @throws NumberFormatException if the HMAC is not hex, like {@link org.mozilla.gecko.sync.Utils#hex2Byte(String)}. */
+  private int decodeHMAC(String hexHMAC) {
+    if (EncodedTextDecoder.hexDecodedLength(hexHMAC.length()) > hmacBuffer.length) {
+      return -1; // The wrong length for our HMAC so it will fail to validate.
+    }
+    return EncodedTextDecoder.decodeHex(hexHMAC, hmacBuffer);
+  }
+
+  private static byte[] ensureBase64BufferSize(byte[] buffer, String base64) {
+    final int maxLength = EncodedTextDecoder.maxBase64DecodedLength(base64.length());
+    return buffer.length >= maxLength ? buffer : new byte[maxLength];
+  }
+}
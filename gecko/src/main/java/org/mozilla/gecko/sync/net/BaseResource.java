@@ -26,6 +26,7 @@ import org.mozilla.gecko.sync.ExtendedJSONObject;
 
 import ch.boye.httpclientandroidlib.Header;
 import ch.boye.httpclientandroidlib.HttpEntity;
+import ch.boye.httpclientandroidlib.HttpEntityEnclosingRequest;
 import ch.boye.httpclientandroidlib.HttpResponse;
 import ch.boye.httpclientandroidlib.HttpVersion;
 import ch.boye.httpclientandroidlib.client.AuthCache;
@@ -40,14 +41,16 @@ import ch.boye.httpclientandroidlib.client.methods.HttpRequestBase;
 import ch.boye.httpclientandroidlib.client.methods.HttpUriRequest;
 import ch.boye.httpclientandroidlib.client.protocol.ClientContext;
 import ch.boye.httpclientandroidlib.conn.ClientConnectionManager;
+import ch.boye.httpclientandroidlib.conn.ConnectionReleaseTrigger;
 import ch.boye.httpclientandroidlib.conn.scheme.PlainSocketFactory;
 import ch.boye.httpclientandroidlib.conn.scheme.Scheme;
 import ch.boye.httpclientandroidlib.conn.scheme.SchemeRegistry;
 import ch.boye.httpclientandroidlib.conn.ssl.SSLSocketFactory;
 import ch.boye.httpclientandroidlib.entity.StringEntity;
 import ch.boye.httpclientandroidlib.impl.client.BasicAuthCache;
+import ch.boye.httpclientandroidlib.impl.client.BasicCookieStore;
 import ch.boye.httpclientandroidlib.impl.client.DefaultHttpClient;
-import ch.boye.httpclientandroidlib.impl.conn.tsccm.ThreadSafeClientConnManager;
+import ch.boye.httpclientandroidlib.impl.conn.PoolingClientConnectionManager;
 import ch.boye.httpclientandroidlib.params.HttpConnectionParams;
 import ch.boye.httpclientandroidlib.params.HttpParams;
 import ch.boye.httpclientandroidlib.params.HttpProtocolParams;
@@ -68,7 +71,10 @@ public class BaseResource implements Resource {
   private static final int MAX_TOTAL_CONNECTIONS     = 20;
   private static final int MAX_CONNECTIONS_PER_ROUTE = 10;
 
-  private boolean retryOnFailedRequest = true;
+  private int retryCount = 0;
+  private volatile boolean isAborted = false;
+  // Notified when the request is aborted, to interrupt the wait before a retry.
+  private final Object retryMonitor = new Object();
 
   public static boolean rewriteLocalhost = true;
 
@@ -78,7 +84,7 @@ public class BaseResource implements Resource {
   protected BasicHttpContext context;
   protected DefaultHttpClient client;
   public    ResourceDelegate delegate;
-  protected HttpRequestBase request;
+  protected volatile HttpRequestBase request;
   public final String charset = "utf-8";
 
   private boolean shouldGzipCompress = false;
@@ -212,24 +218,20 @@ public class BaseResource implements Resource {
   protected void prepareClient() throws KeyManagementException, NoSuchAlgorithmException, GeneralSecurityException {
     context = new BasicHttpContext();
 
-    // We could reuse these client instances, except that we mess around
-    // with their parameters… so we'd need a pool of some kind.
-    client = new DefaultHttpClient(getConnectionManager());
+    // The client is shared between all requests, so it can reuse pooled connections
+    // and TLS sessions. That means we must not mess around with its parameters:
+    // per-request configuration goes in the request's parameters, which take
+    // precedence over the client's, and per-request state goes in the context.
+    client = getSharedClient();
+    context.setAttribute(ClientContext.COOKIE_STORE, new BasicCookieStore());
 
     // TODO: Eventually we should use Apache HttpAsyncClient. It's not out of alpha yet.
     // Until then, we synchronously make the request, then invoke our delegate's callback.
-    AuthHeaderProvider authHeaderProvider = delegate.getAuthHeaderProvider();
-    if (authHeaderProvider != null) {
-      Header authHeader = authHeaderProvider.getAuthHeader(request, context, client);
-      if (authHeader != null) {
-        request.addHeader(authHeader);
-        Logger.debug(LOG_TAG, "Added auth header.");
-      }
-    }
+    addAuthHeader();
 
     addAuthCacheToContext(request, context);
 
-    HttpParams params = client.getParams();
+    HttpParams params = request.getParams();
     HttpConnectionParams.setConnectionTimeout(params, delegate.connectionTimeout());
     HttpConnectionParams.setSoTimeout(params, delegate.socketTimeout());
     HttpConnectionParams.setStaleCheckingEnabled(params, false);
@@ -242,8 +244,25 @@ public class BaseResource implements Resource {
     delegate.addHeaders(request, client);
   }
 
+  /**
+   * Add the delegate's auth header to the request, replacing any header added
+   * for an earlier attempt: auth headers can be single use, e.g. Hawk's nonce.
+   */
+  private void addAuthHeader() throws GeneralSecurityException {
+    AuthHeaderProvider authHeaderProvider = delegate.getAuthHeaderProvider();
+    if (authHeaderProvider != null) {
+      Header authHeader = authHeaderProvider.getAuthHeader(request, context, client);
+      if (authHeader != null) {
+        request.removeHeaders(authHeader.getName());
+        request.addHeader(authHeader);
+        Logger.debug(LOG_TAG, "Added auth header.");
+      }
+    }
+  }
+
   private static final Object connManagerMonitor = new Object();
   private static ClientConnectionManager connManager;
+  private static DefaultHttpClient sharedClient;
 
   // Call within a synchronized block on connManagerMonitor.
   private static ClientConnectionManager enableTLSConnectionManager() throws KeyManagementException, NoSuchAlgorithmException  {
@@ -255,7 +274,7 @@ public class BaseResource implements Resource {
     SchemeRegistry schemeRegistry = new SchemeRegistry();
     schemeRegistry.register(new Scheme("https", 443, sf));
     schemeRegistry.register(new Scheme("http", 80, new PlainSocketFactory()));
-    ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(schemeRegistry);
+    PoolingClientConnectionManager cm = new PoolingClientConnectionManager(schemeRegistry);
 
     cm.setMaxTotal(MAX_TOTAL_CONNECTIONS);
     cm.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
@@ -274,6 +293,20 @@ public class BaseResource implements Resource {
     }
   }
 
+  /**
+   * DefaultHttpClient is thread-safe as long as its parameters aren't modified
+   * during execution, so a single instance serves as our pool of clients.
+   */
+  private static DefaultHttpClient getSharedClient() throws KeyManagementException, NoSuchAlgorithmException {
+    synchronized (connManagerMonitor) {
+      if (sharedClient == null) {
+        sharedClient = new DefaultHttpClient(getConnectionManager());
+        sharedClient.addResponseInterceptor(ConnectionReuseCounter.CONNECTION_REUSE_INTERCEPTOR);
+      }
+      return sharedClient;
+    }
+  }
+
   /**
    * Do some cleanup, so we don't need the stale connection check.
    */
@@ -294,6 +327,7 @@ public class BaseResource implements Resource {
     synchronized (connManagerMonitor) {
       connectionManager = connManager;
       connManager = null;
+      sharedClient = null; // Its connection manager is about to be shut down.
     }
     if (connectionManager == null) {
       return;
@@ -303,6 +337,30 @@ public class BaseResource implements Resource {
   }
 
   private void execute() {
+    final RetryScheduler retryScheduler = RetryScheduler.getRetrySchedulerForResource(this);
+
+    // Honour the backoff the server requested in earlier 429 and 503 responses.
+    final long backoffMillis = retryScheduler.getBackoffRemainingMillis(System.currentTimeMillis());
+    if (backoffMillis > 0) {
+      if (backoffMillis > RetryScheduler.MAX_BACKOFF_WAIT_MILLIS) {
+        delegate.handleHttpIOException(new IOException("Server requested backoff for another " + backoffMillis + "ms."));
+        return;
+      }
+      if (!waitBeforeRetry(retryScheduler.getBackoffDelayMillis(backoffMillis))) {
+        delegate.handleHttpIOException(new IOException("Request aborted."));
+        return;
+      }
+    }
+
+    // Don't wait for the timeouts of a host that keeps failing.
+    final CircuitBreaker circuitBreaker = CircuitBreaker.getCircuitBreakerForResource(this);
+    if (!circuitBreaker.allowRequest(System.currentTimeMillis())) {
+      Logger.info(LOG_TAG, "Circuit breaker open for hostname " + getHostname() + ": not sending request.");
+      delegate.handleHttpIOException(new CircuitBreakerOpenException(getHostname(),
+          circuitBreaker.getRetryAfterMillis(System.currentTimeMillis())));
+      return;
+    }
+
     HttpResponse response;
     try {
       response = client.execute(request, context);
@@ -312,40 +370,203 @@ public class BaseResource implements Resource {
       return;
     } catch (IOException e) {
       Logger.debug(LOG_TAG, "I/O exception returned from execute.");
-      if (!retryOnFailedRequest) {
+      if (!isAborted) {
+        circuitBreaker.onFailure(System.currentTimeMillis());
+      }
+      if (!maybeRetryAfterException(retryScheduler)) {
         delegate.handleHttpIOException(e);
-      } else {
-        retryRequest();
       }
       return;
     } catch (Exception e) {
       // Bug 740731: Don't let an exception fall through. Wrapping isn't
       // optimal, but often the exception is treated as an Exception anyway.
-      if (!retryOnFailedRequest) {
+      if (!isAborted) {
+        circuitBreaker.onFailure(System.currentTimeMillis());
+      }
+      if (!maybeRetryAfterException(retryScheduler)) {
         // Bug 769671: IOException(Throwable cause) was added only in API level 9.
         final IOException ex = new IOException();
         ex.initCause(e);
         delegate.handleHttpIOException(ex);
-      } else {
-        retryRequest();
       }
       return;
     }
 
+    if (isAborted) {
+      // We were aborted too late for the client to cancel the request, e.g. while
+      // it was being sent: drop the connection rather than read the response.
+      abortConnection(response);
+      delegate.handleHttpIOException(new IOException("Request aborted."));
+      return;
+    }
+
+    if (response.getStatusLine().getStatusCode() >= 500) {
+      circuitBreaker.onFailure(System.currentTimeMillis());
+    } else {
+      circuitBreaker.onSuccess();
+    }
+
+    if (maybeRetryAfterResponse(retryScheduler, response)) {
+      return;
+    }
+
     // Don't retry if the observer or delegate throws!
     for (WeakReference<HttpResponseObserver> weakReference : httpResponseObservers) {
       HttpResponseObserver observer = weakReference.get();
       if (observer != null) {
-        observer.observeHttpResponse(request, response);
+        observer.observeHttpResponse(request, response, context);
       }
     }
     delegate.handleHttpResponse(response);
   }
 
+  private static void abortConnection(HttpResponse response) {
+    HttpEntity entity = response.getEntity();
+    if (!(entity instanceof ConnectionReleaseTrigger)) {
+      consumeEntity(entity);
+      return;
+    }
+    try {
+      ((ConnectionReleaseTrigger) entity).abortConnection();
+    } catch (IOException e) {
+      // Doesn't matter.
+    }
+  }
+
+  /**
+   * Retry the request after it failed with an exception, if we can.
+   *
+   * @return true if the request was retried, false if the delegate should
+   *         handle the exception.
+   */
+  private boolean maybeRetryAfterException(RetryScheduler retryScheduler) {
+    if (!canRetry()) {
+      return false;
+    }
+    // Stale checking is disabled so the likeliest failure of the first attempt
+    // is a stale pooled connection: retry it immediately, for free.
+    if (retryCount > 0) {
+      if (!retryScheduler.tryAcquireRetry() ||
+          !waitBeforeRetry(retryScheduler.getRetryDelayMillis(retryCount))) {
+        return false;
+      }
+    }
+    retryRequest();
+    return true;
+  }
+
+  /**
+   * Record the backoff the response requests, if any, then retry the request
+   * if the server failed temporarily and we can.
+   *
+   * Only 429 and 503 responses make us back off: the backoff headers of other
+   * responses, e.g. X-Weave-Backoff on a 200 from a busy server, are hints for
+   * the caller, which the scheduler records without delaying any request.
+   *
+   * @return true if the request was retried, false if the delegate should
+   *         handle the response.
+   */
+  private boolean maybeRetryAfterResponse(RetryScheduler retryScheduler, HttpResponse response) {
+    final int statusCode = response.getStatusLine().getStatusCode();
+    final SyncResponse syncResponse = new SyncResponse(response);
+    int backoffInSeconds = -1;
+    if (requestsBackoff(statusCode)) {
+      backoffInSeconds = syncResponse.totalBackoffInSeconds(true);
+      if (backoffInSeconds > 0) {
+        retryScheduler.setBackoff(backoffInSeconds * 1000L, System.currentTimeMillis());
+      }
+    } else {
+      final int softBackoffInSeconds = syncResponse.totalBackoffInSeconds(false);
+      if (softBackoffInSeconds > 0) {
+        retryScheduler.setSoftBackoff(softBackoffInSeconds * 1000L, System.currentTimeMillis());
+      }
+    }
+
+    if (!isTemporaryFailure(statusCode)) {
+      if (statusCode < 500) {
+        retryScheduler.onSuccess();
+      }
+      return false;
+    }
+
+    final long delayMillis = (backoffInSeconds > 0) ?
+        retryScheduler.getBackoffDelayMillis(backoffInSeconds * 1000L) :
+        retryScheduler.getRetryDelayMillis(retryCount);
+    if (!canRetry() ||
+        delayMillis > RetryScheduler.MAX_BACKOFF_WAIT_MILLIS ||
+        !retryScheduler.tryAcquireRetry()) {
+      return false;
+    }
+
+    consumeEntity(response);
+    if (!waitBeforeRetry(delayMillis)) {
+      delegate.handleHttpIOException(new IOException("Request aborted."));
+      return true;
+    }
+    retryRequest();
+    return true;
+  }
+
+  private static boolean requestsBackoff(int statusCode) {
+    return statusCode == 429 || // Too Many Requests.
+           statusCode == 503;   // Service Unavailable.
+  }
+
+  private static boolean isTemporaryFailure(int statusCode) {
+    switch (statusCode) {
+    case 429: // Too Many Requests.
+    case 502: // Bad Gateway.
+    case 503: // Service Unavailable.
+    case 504: // Gateway Timeout.
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  private boolean canRetry() {
+    if (isAborted || retryCount >= RetryScheduler.MAX_RETRIES) {
+      return false;
+    }
+    // We can't send a streamed body twice.
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      return entity == null || entity.isRepeatable();
+    }
+    return true;
+  }
+
+  /**
+   * Block until the given delay passes or the request is aborted.
+   *
+   * @return true if the delay passed, false if the request was aborted.
+   */
+  private boolean waitBeforeRetry(long delayMillis) {
+    final long endMillis = System.currentTimeMillis() + delayMillis;
+    synchronized (retryMonitor) {
+      long remainingMillis = delayMillis;
+      while (!isAborted && remainingMillis > 0) {
+        try {
+          retryMonitor.wait(remainingMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+        remainingMillis = endMillis - System.currentTimeMillis();
+      }
+    }
+    return !isAborted;
+  }
+
   private void retryRequest() {
-    // Only retry once.
-    retryOnFailedRequest = false;
-    Logger.debug(LOG_TAG, "Retrying request...");
+    retryCount += 1;
+    Logger.debug(LOG_TAG, "Retrying request (retry " + retryCount + ")...");
+    try {
+      addAuthHeader();
+    } catch (GeneralSecurityException e) {
+      delegate.handleTransportException(e);
+      return;
+    }
     this.execute();
   }
 
@@ -354,6 +575,10 @@ public class BaseResource implements Resource {
       throw new IllegalArgumentException("No delegate provided.");
     }
     this.request = request;
+    if (isAborted) {
+      delegate.handleHttpIOException(new IOException("Request aborted before it started."));
+      return;
+    }
     try {
       this.prepareClient();
     } catch (KeyManagementException e) {
@@ -373,6 +598,27 @@ public class BaseResource implements Resource {
     this.execute();
   }
 
+  /**
+   * Abort this resource's request. This can be called from any thread.
+   *
+   * If the request is in progress, its connection is shut down, which causes
+   * the delegate's handleHttpIOException to be called (or the response stream
+   * to throw, if the delegate is reading it). If the request has not started,
+   * it will fail in the same way as soon as it does. Aborted requests are not
+   * retried, and a request waiting to be retried fails at once.
+   */
+  public void abort() {
+    isAborted = true;
+    HttpRequestBase currentRequest = request;
+    if (currentRequest != null) {
+      Logger.debug(LOG_TAG, "Aborting request.");
+      currentRequest.abort();
+    }
+    synchronized (retryMonitor) {
+      retryMonitor.notifyAll();
+    }
+  }
+
   @Override
   public void get() {
     Logger.debug(LOG_TAG, "HTTP GET " + this.uri.toASCIIString());
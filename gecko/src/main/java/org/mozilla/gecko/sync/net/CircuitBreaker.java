@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import java.util.HashMap;
+
+/**
+ * Stops {@link BaseResource} from sending requests to a host that keeps
+ * failing, so callers don't each wait for its connection and socket timeouts.
+ *
+ * <ul>
+ *   <li>CLOSED: requests are sent. After {@link #FAILURE_THRESHOLD}
+ *   consecutive failures, the breaker opens.</li>
+ *   <li>OPEN: requests fail at once, with {@link CircuitBreakerOpenException},
+ *   until the open duration passes.</li>
+ *   <li>HALF_OPEN: one probe request is sent; the others still fail at once.
+ *   If the probe succeeds, the breaker closes. If it fails, the breaker opens
+ *   again for twice as long, up to {@link #MAX_OPEN_MILLIS}.</li>
+ * </ul>
+ *
+ * One instance is shared by all the requests to a host. It's thread-safe.
+ */
+public class CircuitBreaker {
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN,
+  }
+
+  public static final int FAILURE_THRESHOLD = 5;
+  public static final long MIN_OPEN_MILLIS = 30 * 1000;
+  public static final long MAX_OPEN_MILLIS = 5 * 60 * 1000;
+
+  protected final String hostname;
+
+  // Guarded by this.
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openMillis = MIN_OPEN_MILLIS;
+  // When OPEN, when the next probe may be sent. When HALF_OPEN, when we give
+  // up on the probe in flight, e.g. it was aborted, and allow another one.
+  private long nextProbeMillis = 0L;
+
+  private static final HashMap<String, CircuitBreaker> circuitBreakers = new HashMap<String, CircuitBreaker>();
+
+  public static CircuitBreaker getCircuitBreakerForResource(final Resource resource) {
+    return getCircuitBreakerForHostname(resource.getHostname());
+  }
+
+  public static synchronized CircuitBreaker getCircuitBreakerForHostname(final String hostname) {
+    CircuitBreaker breaker = circuitBreakers.get(hostname);
+    if (breaker == null) {
+      breaker = new CircuitBreaker(hostname);
+      circuitBreakers.put(hostname, breaker);
+    }
+    return breaker;
+  }
+
+  public static synchronized void clearCircuitBreakers() {
+    circuitBreakers.clear();
+  }
+
+  public CircuitBreaker(final String hostname) {
+    this.hostname = hostname;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  /**
+   * Ask whether a request may be sent to the host. If it returns true, report
+   * the outcome of the request with {@link #onSuccess()} or
+   * {@link #onFailure(long)}.
+   *
+   * @param now
+   *          the current time in milliseconds.
+   * @return true if the request may be sent, false if it should fail at once.
+   */
+  public synchronized boolean allowRequest(long now) {
+    if (state == State.CLOSED) {
+      return true;
+    }
+    if (now < nextProbeMillis) {
+      return false;
+    }
+    // Send this request as the probe.
+    state = State.HALF_OPEN;
+    nextProbeMillis = now + openMillis;
+    return true;
+  }
+
+  /**
+   * @param now
+   *          the current time in milliseconds.
+   * @return how long until a request may be sent, in milliseconds, or 0 if it
+   *         may be sent now.
+   */
+  public synchronized long getRetryAfterMillis(long now) {
+    if (state == State.CLOSED) {
+      return 0L;
+    }
+    return Math.max(0L, nextProbeMillis - now);
+  }
+
+  /**
+   * Record that the host responded, even with an error that's not its fault.
+   */
+  public synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    openMillis = MIN_OPEN_MILLIS;
+  }
+
+  /**
+   * Record that a request failed because of the host: it couldn't be reached,
+   * or it responded with a server error.
+   *
+   * @param now
+   *          the current time in milliseconds.
+   */
+  public synchronized void onFailure(long now) {
+    switch (state) {
+    case CLOSED:
+      consecutiveFailures += 1;
+      if (consecutiveFailures < FAILURE_THRESHOLD) {
+        return;
+      }
+      break;
+    case HALF_OPEN:
+      openMillis = Math.min(2 * openMillis, MAX_OPEN_MILLIS);
+      break;
+    case OPEN:
+      // A request sent before the breaker opened: it's already open for long enough.
+      return;
+    }
+    state = State.OPEN;
+    nextProbeMillis = now + openMillis;
+  }
+}
@@ -0,0 +1,36 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import java.io.IOException;
+
+/**
+ * Passed to {@link ResourceDelegate#handleHttpIOException(IOException)} when a
+ * request isn't sent because the {@link CircuitBreaker} of its host is open.
+ */
+public class CircuitBreakerOpenException extends IOException {
+  private static final long serialVersionUID = 6133906426562317014L;
+
+  private final String hostname;
+  private final long retryAfterMillis;
+
+  public CircuitBreakerOpenException(String hostname, long retryAfterMillis) {
+    super("Requests to " + hostname + " are failing: not sending for another " + retryAfterMillis + "ms.");
+    this.hostname = hostname;
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  public String getHostname() {
+    return hostname;
+  }
+
+  /**
+   * @return how long until a request to the host may be sent again, in
+   *         milliseconds, when the exception was thrown.
+   */
+  public long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+}
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.boye.httpclientandroidlib.HttpConnection;
+import ch.boye.httpclientandroidlib.HttpResponse;
+import ch.boye.httpclientandroidlib.HttpResponseInterceptor;
+import ch.boye.httpclientandroidlib.client.methods.HttpUriRequest;
+import ch.boye.httpclientandroidlib.protocol.ExecutionContext;
+import ch.boye.httpclientandroidlib.protocol.HttpContext;
+
+/**
+ * Counts how many of the observed responses were received on newly opened connections and how many on pooled
+ * connections kept alive from earlier requests.
+ *
+ * Every new HTTPS connection starts with a TLS handshake, so the handshakes are the new HTTPS connections. Reused
+ * connections skip both the TCP and the TLS handshakes, which take several round trips on mobile networks.
+ *
+ * Register an instance with {@link BaseResource#addHttpResponseObserver(HttpResponseObserver)}, and keep a reference to
+ * it: observers are weakly referenced.
+ */
+public class ConnectionReuseCounter implements HttpResponseObserver {
+  /**
+   * The context attribute, a Boolean, telling whether the connection of a response was used for earlier requests.
+   * It's unset if that's not known, e.g. if the response was cached.
+   */
+  public static final String CONNECTION_REUSED = "org.mozilla.gecko.sync.net.connection-reused";
+
+  /**
+   * Sets {@link #CONNECTION_REUSED} for each response. It must run while the connection is still attached to the
+   * request, i.e. as a response interceptor of the client: the connection can be released as soon as the client
+   * returns the response.
+   */
+  static final HttpResponseInterceptor CONNECTION_REUSE_INTERCEPTOR = new HttpResponseInterceptor() {
+    @Override
+    public void process(HttpResponse response, HttpContext context) {
+      final Object connection = context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+      if (!(connection instanceof HttpConnection)) {
+        return;
+      }
+      try {
+        // The metrics belong to the underlying connection, which outlives each request that borrows it from the pool.
+        final long requestCount = ((HttpConnection) connection).getMetrics().getRequestCount();
+        context.setAttribute(CONNECTION_REUSED, requestCount > 1);
+      } catch (RuntimeException e) {
+        // The connection was already released, e.g. ConnectionShutdownException: we don't know.
+      }
+    }
+  };
+
+  private final AtomicInteger connectionsOpened = new AtomicInteger();
+  private final AtomicInteger connectionsReused = new AtomicInteger();
+  private final AtomicInteger tlsHandshakes = new AtomicInteger();
+
+  @Override
+  public void observeHttpResponse(HttpUriRequest request, HttpResponse response, HttpContext context) {
+    final Object isReused = context.getAttribute(CONNECTION_REUSED);
+    if (Boolean.TRUE.equals(isReused)) {
+      connectionsReused.incrementAndGet();
+    } else if (Boolean.FALSE.equals(isReused)) {
+      connectionsOpened.incrementAndGet();
+      if ("https".equalsIgnoreCase(request.getURI().getScheme())) {
+        tlsHandshakes.incrementAndGet();
+      }
+    }
+  }
+
+  /** @return the number of observed responses received on a newly opened connection. */
+  public int getConnectionsOpened() {
+    return connectionsOpened.get();
+  }
+
+  /** @return the number of observed responses received on a connection kept alive from an earlier request. */
+  public int getConnectionsReused() {
+    return connectionsReused.get();
+  }
+
+  /** @return the number of TLS handshakes made for the observed responses. */
+  public int getTLSHandshakes() {
+    return tlsHandshakes.get();
+  }
+
+  @Override
+  public String toString() {
+    return "opened: " + getConnectionsOpened() + ", reused: " + getConnectionsReused() +
+        ", TLS handshakes: " + getTLSHandshakes();
+  }
+}
@@ -6,6 +6,7 @@ package org.mozilla.gecko.sync.net;
 
 import ch.boye.httpclientandroidlib.HttpResponse;
 import ch.boye.httpclientandroidlib.client.methods.HttpUriRequest;
+import ch.boye.httpclientandroidlib.protocol.HttpContext;
 
 public interface HttpResponseObserver {
   /**
@@ -15,6 +16,10 @@ public interface HttpResponseObserver {
    *
    * @param response
    *          The <code>HttpResponse</code> to observe.
+   *
+   * @param context
+   *          The <code>HttpContext</code> the request was executed in, e.g. to
+   *          read {@link ConnectionReuseCounter#CONNECTION_REUSED}.
    */
-  public void observeHttpResponse(HttpUriRequest request, HttpResponse response);
+  public void observeHttpResponse(HttpUriRequest request, HttpResponse response, HttpContext context);
 }
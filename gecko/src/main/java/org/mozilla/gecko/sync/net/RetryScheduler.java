@@ -0,0 +1,190 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.mozilla.gecko.background.common.log.Logger;
+
+/**
+ * Decides when, and whether, {@link BaseResource} retries the requests to a host.
+ *
+ * <ul>
+ *   <li>The backoff a server requests in a 429 or 503 response, with the
+ *   Retry-After, X-Backoff or X-Weave-Backoff headers, delays every following
+ *   request to that host until it expires.</li>
+ *   <li>The backoff headers of other responses, e.g. X-Weave-Backoff on a
+ *   successful response from a busy server, are only hints: they're recorded
+ *   as a "soft" backoff, which callers can check before they start more work,
+ *   but they don't delay or fail requests.</li>
+ *   <li>Otherwise, retries are delayed exponentially, with "full jitter": a
+ *   random delay between zero and the exponential delay. Clients that failed
+ *   at the same time then don't retry at the same time.</li>
+ *   <li>Retries spend a per-host budget, which successful responses refill
+ *   slowly. When a host keeps failing, we stop retrying rather than multiply
+ *   its load.</li>
+ * </ul>
+ *
+ * One instance is shared by all the requests to a host. It's thread-safe.
+ */
+public class RetryScheduler {
+  private static final String LOG_TAG = "RetryScheduler";
+
+  /** The number of times a request can be retried, after its first attempt. */
+  public static final int MAX_RETRIES = 3;
+
+  public static final long BASE_RETRY_DELAY_MILLIS = 1000;
+  public static final long MAX_RETRY_DELAY_MILLIS = 30 * 1000;
+
+  /**
+   * The longest backoff a request waits out. If a server asks for a longer
+   * backoff, the requests to it fail until it expires: it's not worth blocking
+   * a thread for that long.
+   */
+  public static final long MAX_BACKOFF_WAIT_MILLIS = 60 * 1000;
+
+  // Each retry spends one; each success refills a tenth of one, so we make at
+  // most about one retry for ten successful requests once the budget is spent.
+  static final double MAX_RETRY_BUDGET = 10;
+  static final double RETRY_BUDGET_PER_SUCCESS = 0.1;
+
+  protected final String hostname;
+  private final Random random;
+
+  // Guarded by this.
+  private double retryBudget = MAX_RETRY_BUDGET;
+  private long backoffUntilMillis = 0L;
+  private long softBackoffUntilMillis = 0L;
+
+  private static final HashMap<String, RetryScheduler> retrySchedulers = new HashMap<String, RetryScheduler>();
+
+  public static RetryScheduler getRetrySchedulerForResource(final Resource resource) {
+    return getRetrySchedulerForHostname(resource.getHostname());
+  }
+
+  public static synchronized RetryScheduler getRetrySchedulerForHostname(final String hostname) {
+    RetryScheduler scheduler = retrySchedulers.get(hostname);
+    if (scheduler == null) {
+      scheduler = new RetryScheduler(hostname);
+      retrySchedulers.put(hostname, scheduler);
+    }
+    return scheduler;
+  }
+
+  public static synchronized void clearRetrySchedulers() {
+    retrySchedulers.clear();
+  }
+
+  public RetryScheduler(final String hostname) {
+    this(hostname, new Random());
+  }
+
+  RetryScheduler(final String hostname, final Random random) {
+    this.hostname = hostname;
+    this.random = random;
+  }
+
+  /**
+   * Record the backoff a server requested. A shorter backoff than the one
+   * already recorded doesn't shorten it.
+   *
+   * @param backoffMillis
+   *          the requested backoff, in milliseconds.
+   * @param now
+   *          the current time in milliseconds.
+   */
+  public synchronized void setBackoff(long backoffMillis, long now) {
+    if (backoffMillis <= 0) {
+      return;
+    }
+    Logger.info(LOG_TAG, "Backing off " + backoffMillis + "ms for hostname " + this.hostname);
+    backoffUntilMillis = Math.max(backoffUntilMillis, now + backoffMillis);
+  }
+
+  /**
+   * @param now
+   *          the current time in milliseconds.
+   * @return the time left until the backoff expires, in milliseconds, or 0 if
+   *         there's no backoff.
+   */
+  public synchronized long getBackoffRemainingMillis(long now) {
+    return Math.max(0L, backoffUntilMillis - now);
+  }
+
+  /**
+   * Record the backoff a server hinted at, e.g. in a successful response. It
+   * doesn't delay requests. A shorter backoff than the one already recorded
+   * doesn't shorten it.
+   *
+   * @param backoffMillis
+   *          the requested backoff, in milliseconds.
+   * @param now
+   *          the current time in milliseconds.
+   */
+  public synchronized void setSoftBackoff(long backoffMillis, long now) {
+    if (backoffMillis <= 0) {
+      return;
+    }
+    Logger.info(LOG_TAG, "Server hinted at a backoff of " + backoffMillis + "ms for hostname " + this.hostname);
+    softBackoffUntilMillis = Math.max(softBackoffUntilMillis, now + backoffMillis);
+  }
+
+  /**
+   * @param now
+   *          the current time in milliseconds.
+   * @return the time left until the backoff the server hinted at expires, in
+   *         milliseconds, or 0 if there's no such backoff.
+   */
+  public synchronized long getSoftBackoffRemainingMillis(long now) {
+    return Math.max(0L, softBackoffUntilMillis - now);
+  }
+
+  /**
+   * @param backoffMillis
+   *          the time left until the backoff expires, in milliseconds.
+   * @return how long to wait for it: a little longer, at random, so the
+   *         clients backing off don't all return at the same time.
+   */
+  public long getBackoffDelayMillis(long backoffMillis) {
+    final long jitterMillis = Math.max(backoffMillis / 10, BASE_RETRY_DELAY_MILLIS);
+    return backoffMillis + nextLong(jitterMillis);
+  }
+
+  /**
+   * @param retryCount
+   *          the number of retries already made for the request.
+   * @return how long to wait before the next retry, in milliseconds.
+   */
+  public long getRetryDelayMillis(int retryCount) {
+    final long maxDelayMillis = BASE_RETRY_DELAY_MILLIS << Math.min(retryCount, 16);
+    return nextLong(Math.min(maxDelayMillis, MAX_RETRY_DELAY_MILLIS));
+  }
+
+  /**
+   * Spend the budget for one retry.
+   *
+   * @return true if the request may be retried, false if the budget is spent.
+   */
+  public synchronized boolean tryAcquireRetry() {
+    if (retryBudget < 1) {
+      Logger.info(LOG_TAG, "Retry budget spent for hostname " + this.hostname);
+      return false;
+    }
+    retryBudget -= 1;
+    return true;
+  }
+
+  /**
+   * Refill the retry budget after the host successfully responded.
+   */
+  public synchronized void onSuccess() {
+    retryBudget = Math.min(MAX_RETRY_BUDGET, retryBudget + RETRY_BUDGET_PER_SUCCESS);
+  }
+
+  private long nextLong(long bound) {
+    return (long) (random.nextDouble() * bound);
+  }
+}
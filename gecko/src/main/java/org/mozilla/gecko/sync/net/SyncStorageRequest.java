@@ -168,6 +168,13 @@ public class SyncStorageRequest implements Resource {
   public SyncStorageRequestDelegate delegate;
   protected BaseResource resource;
 
+  /**
+   * @return the resource that makes this request, e.g. so it can be aborted.
+   */
+  public BaseResource getResource() {
+    return this.resource;
+  }
+
   // Default implementation. Override this.
   protected BaseResourceDelegate makeResourceDelegate(SyncStorageRequest request) {
     return new SyncStorageResourceDelegate(request);
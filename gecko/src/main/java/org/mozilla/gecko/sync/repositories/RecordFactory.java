@@ -5,9 +5,21 @@
 package org.mozilla.gecko.sync.repositories;
 
 import org.mozilla.gecko.sync.repositories.domain.Record;
+import org.mozilla.gecko.sync.repositories.domain.RecordPayloadDecoder;
 
 // Take a record retrieved from some middleware, producing
 // some concrete record type for application to some local repository.
 public abstract class RecordFactory {
   public abstract Record createRecord(Record record);
+
+  /**
+   * Return a new decoder that creates records straight from their decrypted
+   * payloads, which is faster than parsing the payloads and calling
+   * {@link #createRecord(Record)}, or null if this factory has none.
+   *
+   * Decoders are not thread-safe: each thread should create its own.
+   */
+  public RecordPayloadDecoder newPayloadDecoder() {
+    return null;
+  }
 }
@@ -166,8 +166,19 @@ public class BookmarkRecord extends Record {
            type.equals("query");
   }
 
+  /** The payload fields read by {@link #initFromPayloadFields(PayloadFields)}. */
+  static final String[] PAYLOAD_KEYS = {
+    "type", "title", "description", "parentid", "parentName", "children",
+    "bmkUri", "keyword", "tags", "siteUri", "feedUri", "queryId", "folderName",
+    "generatorUri", "staticTitle", "pos",
+  };
+
   @Override
   protected void initFromPayload(ExtendedJSONObject payload) {
+    initFromPayloadFields(PayloadFields.of(payload));
+  }
+
+  void initFromPayloadFields(PayloadFields payload) {
     this.type        = payload.getString("type");
     this.title       = payload.getString("title");
     this.description = payload.getString("description");
@@ -22,4 +22,19 @@ public class BookmarkRecordFactory extends RecordFactory {
     return r;
   }
 
+  @Override
+  public RecordPayloadDecoder newPayloadDecoder() {
+    return new RecordPayloadDecoder(BookmarkRecord.PAYLOAD_KEYS) {
+      @Override
+      protected Record newRecord() {
+        return new BookmarkRecord();
+      }
+
+      @Override
+      void initFromPayloadFields(Record record, PayloadFields payload) {
+        ((BookmarkRecord) record).initFromPayloadFields(payload);
+      }
+    };
+  }
+
 }
@@ -84,8 +84,15 @@ public class HistoryRecord extends Record {
     payload.put("visits",  this.visits);
   }
 
+  /** The payload fields read by {@link #initFromPayloadFields(PayloadFields)}. */
+  static final String[] PAYLOAD_KEYS = { "histUri", "title", "visits" };
+
   @Override
   protected void initFromPayload(ExtendedJSONObject payload) {
+    initFromPayloadFields(PayloadFields.of(payload));
+  }
+
+  void initFromPayloadFields(PayloadFields payload) {
     this.histURI = (String) payload.get("histUri");
     this.title   = (String) payload.get("title");
     try {
@@ -22,4 +22,29 @@ public class HistoryRecordFactory extends RecordFactory {
     return r;
   }
 
+  @Override
+  public RecordPayloadDecoder newPayloadDecoder() {
+    return new PayloadDecoder();
+  }
+
+  /**
+   * Decodes history records. Subclasses can decode into subclasses of
+   * {@link HistoryRecord} by overriding {@link #newRecord()}.
+   */
+  public static class PayloadDecoder extends RecordPayloadDecoder {
+    public PayloadDecoder() {
+      super(HistoryRecord.PAYLOAD_KEYS);
+    }
+
+    @Override
+    protected HistoryRecord newRecord() {
+      return new HistoryRecord();
+    }
+
+    @Override
+    final void initFromPayloadFields(Record record, PayloadFields payload) {
+      ((HistoryRecord) record).initFromPayloadFields(payload);
+    }
+  }
+
 }
@@ -86,8 +86,18 @@ public class PasswordRecord extends Record {
     return out;
   }
 
+  /** The payload fields read by {@link #initFromPayloadFields(PayloadFields)}. */
+  static final String[] PAYLOAD_KEYS = {
+    PAYLOAD_HOSTNAME, PAYLOAD_FORM_SUBMIT_URL, PAYLOAD_HTTP_REALM, PAYLOAD_USERNAME,
+    PAYLOAD_PASSWORD, PAYLOAD_USERNAME_FIELD, PAYLOAD_PASSWORD_FIELD,
+  };
+
   @Override
   public void initFromPayload(ExtendedJSONObject payload) {
+    initFromPayloadFields(PayloadFields.of(payload));
+  }
+
+  void initFromPayloadFields(PayloadFields payload) {
     this.hostname = payload.getString(PAYLOAD_HOSTNAME);
     this.formSubmitURL = payload.getString(PAYLOAD_FORM_SUBMIT_URL);
     this.httpRealm = payload.getString(PAYLOAD_HTTP_REALM);
@@ -16,4 +16,19 @@ public class PasswordRecordFactory extends RecordFactory {
     r.initFromEnvelope((CryptoRecord) record);
     return r;
   }
+
+  @Override
+  public RecordPayloadDecoder newPayloadDecoder() {
+    return new RecordPayloadDecoder(PasswordRecord.PAYLOAD_KEYS) {
+      @Override
+      protected Record newRecord() {
+        return new PasswordRecord();
+      }
+
+      @Override
+      void initFromPayloadFields(Record record, PayloadFields payload) {
+        ((PasswordRecord) record).initFromPayloadFields(payload);
+      }
+    };
+  }
 }
@@ -0,0 +1,44 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.repositories.domain;
+
+import org.json.simple.JSONArray;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.NonArrayJSONException;
+
+/**
+ * The fields of a decrypted record payload, by name, whether they were parsed into an {@link ExtendedJSONObject} or
+ * decoded by a {@link RecordPayloadDecoder}.
+ *
+ * The getters behave like those of {@link ExtendedJSONObject} so records initialize themselves the same way from
+ * either.
+ */
+abstract class PayloadFields {
+  abstract Object get(String key);
+
+  String getString(String key) {
+    return (String) get(key);
+  }
+
+  JSONArray getArray(String key) throws NonArrayJSONException {
+    final Object o = get(key);
+    if (o == null) {
+      return null;
+    }
+    if (o instanceof JSONArray) {
+      return (JSONArray) o;
+    }
+    throw new NonArrayJSONException("key must be a JSON array: " + key);
+  }
+
+  static PayloadFields of(final ExtendedJSONObject payload) {
+    return new PayloadFields() {
+      @Override
+      Object get(String key) {
+        return payload.get(key);
+      }
+    };
+  }
+}
@@ -226,6 +226,29 @@ public abstract class Record {
 
   }
 
+  /**
+   * Like {@link #initFromEnvelope(CryptoRecord)}, but only for the fields all
+   * records have: the payload fields are given separately, e.g. by a
+   * {@link RecordPayloadDecoder}, rather than parsed into the envelope's
+   * payload, and the caller initializes the fields of the record's type.
+   *
+   * @return false if the record is deleted, in which case it has no other fields.
+   */
+  boolean initCommonFieldsFromEnvelope(CryptoRecord envelope, PayloadFields payload) {
+    this.guid = envelope.guid;
+    checkGUIDs(payload.getString("id"));
+
+    this.collection    = envelope.collection;
+    this.lastModified  = envelope.lastModified;
+
+    final Object del = payload.get("deleted");
+    if (del instanceof Boolean) {
+      this.deleted = (Boolean) del;
+      return false;
+    }
+    return true;
+  }
+
   public CryptoRecord getEnvelope() {
     CryptoRecord rec = new CryptoRecord(this);
     ExtendedJSONObject payload = new ExtendedJSONObject();
@@ -290,7 +313,10 @@ public abstract class Record {
   }
 
   protected void checkGUIDs(ExtendedJSONObject payload) {
-    String payloadGUID = (String) payload.get("id");
+    checkGUIDs((String) payload.get("id"));
+  }
+
+  private void checkGUIDs(String payloadGUID) {
     if (this.guid == null ||
         payloadGUID == null) {
       String detailMessage = "Inconsistency: either envelope or payload GUID missing.";
@@ -0,0 +1,115 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.repositories.domain;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.JSONTokenReader;
+import org.mozilla.gecko.sync.UnexpectedJSONException;
+
+/**
+ * Creates records of one type straight from their decrypted payloads.
+ *
+ * Parsing a payload with {@link org.mozilla.gecko.sync.ExtendedJSONObject} builds a map of every field, and boxes every
+ * number, before the record reads the few fields it knows about. A decoder reads the payload token by token instead:
+ * it keeps only the values of the fields its record type reads and skips the others without building them. The record
+ * then initializes itself from those values as it would from a parsed payload, so the records are the same.
+ *
+ * The decoder reuses its buffers between payloads so it is not thread-safe: each thread should use its own instance.
+ */
+public abstract class RecordPayloadDecoder {
+  private static final String KEY_ID = "id";
+  private static final String KEY_DELETED = "deleted";
+
+  private final JSONTokenReader reader = new JSONTokenReader();
+
+  /** The index of each known field in {@link #values}. */
+  private final Map<String, Integer> keyIndices = new HashMap<>();
+  private final Object[] values;
+  private final PayloadFields fields = new PayloadFields() {
+    @Override
+    Object get(String key) {
+      final Integer index = keyIndices.get(key);
+      return index == null ? null : values[index];
+    }
+  };
+
+  /**
+   * @param recordKeys the payload fields the record reads, other than the id and deleted fields all records have.
+   */
+  protected RecordPayloadDecoder(String[] recordKeys) {
+    keyIndices.put(KEY_ID, 0);
+    keyIndices.put(KEY_DELETED, 1);
+    for (final String key : recordKeys) {
+      keyIndices.put(key, keyIndices.size());
+    }
+    values = new Object[keyIndices.size()];
+  }
+
+  /** @return a new, empty record of the type this decoder creates. */
+  protected abstract Record newRecord();
+
+  /**
+   * Initialize the fields of the given record, created by {@link #newRecord()}, from the payload of a record that isn't
+   * deleted, as the record initializes itself from a parsed payload.
+   *
+   * This is package-private so the decoders of each record type are defined alongside the record.
+   */
+  abstract void initFromPayloadFields(Record record, PayloadFields payload);
+
+  /**
+   * Read the value of one of the record's fields, which is the next value of the given reader. The record reads the
+   * returned value from its fields as it would read the value of a parsed payload.
+   *
+   * Subclasses can override this to read a field in their own form, e.g. into primitive arrays, as long as they
+   * consume exactly one value.
+   */
+  protected Object readValue(String key, JSONTokenReader reader) throws UnexpectedJSONException {
+    return reader.nextValue();
+  }
+
+  /**
+   * Create a record from the given envelope and its decrypted payload, like
+   * {@link org.mozilla.gecko.sync.repositories.RecordFactory#createRecord(Record)} does from a decrypted envelope.
+   *
+   * @param envelope the envelope of the record, from which the id, collection and modified time are read.
+   * @param cleartext the UTF-8 encoded JSON payload.
+   * @throws UnexpectedJSONException if the payload is not a JSON object.
+   */
+  public Record decode(CryptoRecord envelope, byte[] cleartext) throws UnexpectedJSONException {
+    Arrays.fill(values, null);
+    reader.reset(cleartext, 0, cleartext.length);
+    try {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        final String key = reader.nextName();
+        final Integer index = keyIndices.get(key);
+        if (index == null) {
+          reader.skipValue();
+        } else {
+          // Like a parsed payload, the last value wins if a field is repeated.
+          values[index] = readValue(key, reader);
+        }
+      }
+      reader.endObject();
+      if (reader.peek() != JSONTokenReader.Token.END_DOCUMENT) {
+        throw new UnexpectedJSONException("Expected end of payload");
+      }
+
+      final Record record = newRecord();
+      if (record.initCommonFieldsFromEnvelope(envelope, fields)) {
+        initFromPayloadFields(record, fields);
+      }
+      return record;
+    } finally {
+      // Don't hold onto the values or the cleartext until the next payload.
+      Arrays.fill(values, null);
+      reader.reset(null, 0, 0);
+    }
+  }
+}
@@ -228,10 +228,17 @@ public class TokenServerClient {
 
     Logger.debug(LOG_TAG, "Successful token response: " + result.getString(JSON_KEY_ID));
 
+    // The duration is optional: consumers can still use a token without one, they just can't know when it expires.
+    Object duration = result.get(JSON_KEY_DURATION);
+    long durationInSeconds = (duration instanceof Number) ?
+        ((Number) duration).longValue() :
+        TokenServerToken.DURATION_UNKNOWN;
+
     return new TokenServerToken(result.getString(JSON_KEY_ID),
         result.getString(JSON_KEY_KEY),
         result.get(JSON_KEY_UID).toString(),
-        result.getString(JSON_KEY_API_ENDPOINT));
+        result.getString(JSON_KEY_API_ENDPOINT),
+        durationInSeconds);
   }
 
   public static class TokenFetchResourceDelegate extends BaseResourceDelegate {
@@ -276,11 +283,22 @@ public class TokenServerClient {
         client.notifyBackoff(delegate, backoffInSeconds);
       }
 
+      TokenServerToken token = null;
+      TokenServerException failure = null;
       try {
-        TokenServerToken token = client.processResponse(res);
-        client.invokeHandleSuccess(delegate, token);
+        token = client.processResponse(res);
       } catch (TokenServerException e) {
-        client.invokeHandleFailure(delegate, e);
+        failure = e;
+      } finally {
+        // Responses with an unexpected Content-Type aren't read: release the
+        // connection so the requests that follow the token request can reuse it.
+        BaseResource.consumeEntity(response);
+      }
+
+      if (failure != null) {
+        client.invokeHandleFailure(delegate, failure);
+      } else {
+        client.invokeHandleSuccess(delegate, token);
       }
     }
 
@@ -5,15 +5,26 @@
 package org.mozilla.gecko.tokenserver;
 
 public class TokenServerToken {
+  /** The duration is not known, e.g. if the server did not send one. */
+  public static final long DURATION_UNKNOWN = -1;
+
   public final String id;
   public final String key;
   public final String uid;
   public final String endpoint;
 
+  /** The number of seconds the token is valid for from when it was issued, or {@link #DURATION_UNKNOWN}. */
+  public final long durationInSeconds;
+
   public TokenServerToken(String id, String key, String uid, String endpoint) {
+    this(id, key, uid, endpoint, DURATION_UNKNOWN);
+  }
+
+  public TokenServerToken(String id, String key, String uid, String endpoint, long durationInSeconds) {
     this.id = id;
     this.key = key;
     this.uid = uid;
     this.endpoint = endpoint;
+    this.durationInSeconds = durationInSeconds;
   }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.fxa.login;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mozilla.gecko.background.fxa.FxAccountUtils;
+import org.mozilla.gecko.browserid.BrowserIDKeyPair;
+import org.mozilla.gecko.browserid.RSACryptoImplementation;
+import org.mozilla.gecko.sync.crypto.KeyBundle;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class MarriedTest {
+
+    private static BrowserIDKeyPair keyPair;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        keyPair = RSACryptoImplementation.generateKeyPair(1024);
+    }
+
+    private static Married newMarried(final byte kBFill) {
+        final byte[] kB = new byte[32];
+        Arrays.fill(kB, kBFill);
+        return new Married("test@example.com", "uid", new byte[32], new byte[32], kB, keyPair, "certificate");
+    }
+
+    private static void assertKeyBundleEquals(final KeyBundle expected, final KeyBundle actual) {
+        assertArrayEquals(expected.getEncryptionKey(), actual.getEncryptionKey());
+        assertArrayEquals(expected.getHMACKey(), actual.getHMACKey());
+    }
+
+    @Test
+    public void testRepeatedCallsReturnEqualButSeparateBundles() throws Exception {
+        final Married married = newMarried((byte) 1);
+        final KeyBundle first = married.getSyncKeyBundle();
+        final KeyBundle second = married.getSyncKeyBundle();
+
+        assertNotSame(first, second);
+        assertKeyBundleEquals(FxAccountUtils.generateSyncKeyBundle(married.kB), first);
+        assertKeyBundleEquals(first, second);
+    }
+
+    @Test
+    public void testBundleIsSharedByStatesOfTheSameAccount() throws Exception {
+        // e.g. a state restored from a stored session, then restored again.
+        final KeyBundle first = newMarried((byte) 2).getSyncKeyBundle();
+        final KeyBundle second = newMarried((byte) 2).getSyncKeyBundle();
+
+        assertNotSame(first, second);
+        assertSame(first.getEncryptionKey(), second.getEncryptionKey()); // Derived once.
+    }
+
+    @Test
+    public void testBundleIsDerivedAgainForAnotherKB() throws Exception {
+        final Married married = newMarried((byte) 3);
+        final Married otherMarried = newMarried((byte) 4);
+        married.getSyncKeyBundle();
+
+        assertKeyBundleEquals(FxAccountUtils.generateSyncKeyBundle(otherMarried.kB), otherMarried.getSyncKeyBundle());
+        assertKeyBundleEquals(FxAccountUtils.generateSyncKeyBundle(married.kB), married.getSyncKeyBundle());
+    }
+}
@@ -0,0 +1,148 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/** Tests that the parsers reused by {@link ExtendedJSONObject} produce the same results as fresh ones. */
+public class ExtendedJSONObjectTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static String jsonFor(final int index) {
+        // Vary the length so a reused parser would return leftovers of a longer, earlier input.
+        final StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < index % 17; i++) {
+            padding.append("pad");
+        }
+        return "{\"index\":" + index + ",\"text\":\"héllo 😀 " + index + "\",\"padding\":\"" + padding + "\"}";
+    }
+
+    private static void assertParsedFor(final int index, final ExtendedJSONObject parsed) {
+        assertEquals(Long.valueOf(index), parsed.getLong("index"));
+        assertEquals("héllo 😀 " + index, parsed.getString("text"));
+    }
+
+    @Test
+    public void testParseEachInputTypeOnOneThread() throws Exception {
+        for (int i = 0; i < 50; i++) {
+            assertParsedFor(i, new ExtendedJSONObject(jsonFor(i)));
+            assertParsedFor(i, new ExtendedJSONObject(new StringReader(jsonFor(i))));
+            assertParsedFor(i, ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(i).getBytes(UTF_8)));
+        }
+    }
+
+    @Test
+    public void testParseUTF8Range() throws Exception {
+        final byte[] json = ("xx" + jsonFor(3) + "yy").getBytes(UTF_8);
+        assertParsedFor(3, ExtendedJSONObject.parseUTF8AsJSONObject(json, 2, json.length - 4));
+    }
+
+    @Test
+    public void testParseAfterFailedParse() throws Exception {
+        try {
+            ExtendedJSONObject.parseUTF8AsJSONObject("{\"index\": 1, \"text\": \"unterminated".getBytes(UTF_8));
+            throw new AssertionError("Expected NonObjectJSONException");
+        } catch (final NonObjectJSONException e) {
+            // Expected.
+        }
+        assertParsedFor(2, ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(2).getBytes(UTF_8)));
+        assertParsedFor(3, new ExtendedJSONObject(jsonFor(3)));
+    }
+
+    @Test
+    public void testNestedParse() throws Exception {
+        // A Reader that parses JSON on the same thread while the outer parse is in progress.
+        final Reader nestingReader = new StringReader(jsonFor(1)) {
+            @Override
+            public int read(final char[] buffer, final int offset, final int length) throws IOException {
+                try {
+                    assertParsedFor(2, ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(2).getBytes(UTF_8)));
+                } catch (final NonObjectJSONException e) {
+                    throw new IOException(e);
+                }
+                return super.read(buffer, offset, length);
+            }
+        };
+        assertParsedFor(1, new ExtendedJSONObject(nestingReader));
+    }
+
+    @Test
+    public void testConcurrentParses() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<ExtendedJSONObject>> futures = new ArrayList<>();
+            for (int i = 0; i < 3000; i++) {
+                final int index = i;
+                futures.add(executor.submit(new Callable<ExtendedJSONObject>() {
+                    @Override
+                    public ExtendedJSONObject call() throws Exception {
+                        switch (index % 3) {
+                            case 0: return new ExtendedJSONObject(jsonFor(index));
+                            case 1: return new ExtendedJSONObject(new StringReader(jsonFor(index)));
+                            default: return ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(index).getBytes(UTF_8));
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                assertParsedFor(i, futures.get(i).get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** @return the length of the buffer of this thread's reused parser's lexer, which is private to json-simple. */
+    private static int getReusedParserBufferLength() throws Exception {
+        final Field reusableParsersField = ExtendedJSONObject.class.getDeclaredField("reusableParsers");
+        reusableParsersField.setAccessible(true);
+        final Object reusableParser = ((ThreadLocal<?>) reusableParsersField.get(null)).get();
+
+        final Field parserField = reusableParser.getClass().getDeclaredField("parser");
+        parserField.setAccessible(true);
+        final Field lexerField = JSONParser.class.getDeclaredField("lexer");
+        lexerField.setAccessible(true);
+        final Object lexer = lexerField.get(parserField.get(reusableParser));
+        final Field bufferField = lexer.getClass().getDeclaredField("zzBuffer");
+        bufferField.setAccessible(true);
+        return ((char[]) bufferField.get(lexer)).length;
+    }
+
+    @Test
+    public void testLargeInputsDoNotGrowReusedParserBuffer() throws Exception {
+        ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(1).getBytes(UTF_8));
+        final int initialBufferLength = getReusedParserBufferLength();
+
+        // A single token longer than the buffer, like the ciphertext of a large record.
+        final StringBuilder largeText = new StringBuilder();
+        for (int i = 0; i < 3 * initialBufferLength; i++) {
+            largeText.append('a');
+        }
+        final String largeJSON = "{\"text\":\"" + largeText + "\"}";
+        assertEquals(largeText.toString(), new ExtendedJSONObject(largeJSON).getString("text"));
+        assertEquals(largeText.toString(), ExtendedJSONObject.parseUTF8AsJSONObject(largeJSON.getBytes(UTF_8)).getString("text"));
+        assertEquals(largeText.toString(), new ExtendedJSONObject(new StringReader(largeJSON)).getString("text"));
+
+        assertEquals(initialBufferLength, getReusedParserBufferLength());
+        assertParsedFor(2, ExtendedJSONObject.parseUTF8AsJSONObject(jsonFor(2).getBytes(UTF_8)));
+    }
+}
@@ -0,0 +1,109 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import org.json.simple.parser.JSONParser;
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JSONTokenReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final JSONTokenReader reader = new JSONTokenReader();
+
+    private void reset(final String json) {
+        final byte[] bytes = json.getBytes(UTF_8);
+        reader.reset(bytes, 0, bytes.length);
+    }
+
+    private void assertSyntaxError(final String json) {
+        reset(json);
+        try {
+            reader.nextValue();
+            reader.peek();
+            throw new AssertionError("Expected UnexpectedJSONException for " + json);
+        } catch (final UnexpectedJSONException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testNextValueMatchesJSONParser() throws Exception {
+        final String[] documents = {
+                "{}",
+                "[]",
+                "{\"a\": 1, \"b\": -2.5e3, \"c\": [true, false, null], \"d\": {\"e\": \"f\"}}",
+                " [ 0 , 1.0 , -0 , 12E-1, 9223372036854775807 ] ",
+                "\"escapes: \\\" \\\\ \\/ \\b \\f \\n \\r \\t \\u00e9 \\ud83d\\ude00\"",
+                "\"unicode: h\u00e9llo \ud83d\ude00\"",
+        };
+        for (final String json : documents) {
+            reset(json);
+            assertEquals(json, new JSONParser().parse(json), reader.nextValue());
+            assertEquals(JSONTokenReader.Token.END_DOCUMENT, reader.peek());
+        }
+    }
+
+    @Test
+    public void testLongStringsSpanningBuffers() throws Exception {
+        final StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            longString.append(i % 100 == 0 ? "\\n" : "\u00e9");
+        }
+        final String json = "[\"" + longString + "\", 123]";
+        reset(json);
+        assertEquals(new JSONParser().parse(json), reader.nextValue());
+    }
+
+    @Test
+    public void testReadFieldsAndSkipOthers() throws Exception {
+        reset("{\"skipped\": {\"nested\": [1, \"}\", {\"x\": null}]}, \"id\": \"abc\", \"count\": 42, \"ok\": true}");
+        reader.beginObject();
+        assertEquals("skipped", reader.nextName());
+        reader.skipValue();
+        assertEquals("id", reader.nextName());
+        assertEquals("abc", reader.nextString());
+        assertEquals("count", reader.nextName());
+        assertEquals(42L, reader.nextLong());
+        assertEquals("ok", reader.nextName());
+        assertTrue(reader.nextBoolean());
+        assertFalse(reader.hasNext());
+        reader.endObject();
+        assertEquals(JSONTokenReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void testResetBetweenDocuments() throws Exception {
+        reset("{\"a\": [1, 2, 3");
+        reader.beginObject();
+        reader.nextName();
+        reader.beginArray();
+
+        reset("[\"b\"]");
+        assertEquals(new JSONParser().parse("[\"b\"]"), reader.nextValue());
+    }
+
+    @Test
+    public void testSyntaxErrors() {
+        assertSyntaxError("");
+        assertSyntaxError("{");
+        assertSyntaxError("{\"a\" 1}");
+        assertSyntaxError("{\"a\": 1,}");
+        assertSyntaxError("[1 2]");
+        assertSyntaxError("[1,]");
+        assertSyntaxError("\"unterminated");
+        assertSyntaxError("\"bad escape \\x\"");
+        assertSyntaxError("tru");
+        assertSyntaxError("1.");
+        assertSyntaxError("-");
+        assertSyntaxError("{} {}");
+    }
+}
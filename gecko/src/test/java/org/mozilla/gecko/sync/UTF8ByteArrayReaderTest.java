@@ -0,0 +1,132 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+
+public class UTF8ByteArrayReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Buffer sizes that split multi-byte sequences and surrogate pairs across reads, and one that doesn't. */
+    private static final int[] BUFFER_SIZES = {1, 2, 3, 1024};
+
+    private final UTF8ByteArrayReader reader = new UTF8ByteArrayReader();
+
+    private String readAll(final byte[] bytes, final int offset, final int length, final int bufferSize) {
+        reader.reset(bytes, offset, length);
+        final char[] buffer = new char[bufferSize];
+        final StringBuilder text = new StringBuilder();
+        int readCount;
+        while ((readCount = reader.read(buffer, 0, bufferSize)) != -1) {
+            text.append(buffer, 0, readCount);
+        }
+        return text.toString();
+    }
+
+    private void assertReadsAs(final String expected, final byte[] bytes) {
+        for (final int bufferSize : BUFFER_SIZES) {
+            assertEquals("buffer size " + bufferSize, expected, readAll(bytes, 0, bytes.length, bufferSize));
+        }
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testReadMatchesStringDecoding() {
+        final String[] texts = {
+                "",
+                "ascii {\"key\": [1, 2]}",
+                "latin-1 héllo",
+                "BMP € ☃ ￮",
+                "supplementary 😀👍",
+                "😀",
+                "a😀",
+                "ab😀c𐀀􏿿",
+        };
+        for (final String text : texts) {
+            final byte[] bytes = text.getBytes(UTF_8);
+            assertReadsAs(new String(bytes, UTF_8), bytes);
+        }
+    }
+
+    @Test
+    public void testSurrogatePairSplitAcrossReads() {
+        final byte[] bytes = "😀x".getBytes(UTF_8);
+        reader.reset(bytes, 0, bytes.length);
+        final char[] buffer = new char[1];
+
+        assertEquals(1, reader.read(buffer, 0, 1));
+        assertEquals('\ud83d', buffer[0]);
+        assertEquals(1, reader.read(buffer, 0, 1)); // The pending low surrogate.
+        assertEquals('\ude00', buffer[0]);
+        assertEquals(1, reader.read(buffer, 0, 1));
+        assertEquals('x', buffer[0]);
+        assertEquals(-1, reader.read(buffer, 0, 1));
+    }
+
+    @Test
+    public void testResetDiscardsPendingLowSurrogate() {
+        final byte[] bytes = "😀".getBytes(UTF_8);
+        reader.reset(bytes, 0, bytes.length);
+        reader.read(new char[1], 0, 1);
+
+        final byte[] nextBytes = "next".getBytes(UTF_8);
+        assertEquals("next", readAll(nextBytes, 0, nextBytes.length, 2));
+    }
+
+    @Test
+    public void testReadsOnlyTheGivenRange() {
+        final byte[] bytes = "xxé😀yy".getBytes(UTF_8);
+        for (final int bufferSize : BUFFER_SIZES) {
+            assertEquals("é😀", readAll(bytes, 2, bytes.length - 4, bufferSize));
+        }
+    }
+
+    @Test
+    public void testTruncatedRangeEndsWithReplacementChar() {
+        final byte[] bytes = "€".getBytes(UTF_8); // 3 bytes.
+        for (final int bufferSize : BUFFER_SIZES) {
+            assertEquals("�", readAll(bytes, 0, 2, bufferSize));
+        }
+    }
+
+    @Test
+    public void testOverlongSequencesAreReplaced() {
+        assertReadsAs("��x", bytes(0xC0, 0xAF, 'x')); // '/' in 2 bytes: C0 is never valid.
+        assertReadsAs("���x", bytes(0xE0, 0x80, 0xAF, 'x')); // '/' in 3 bytes.
+        assertReadsAs("����x", bytes(0xF0, 0x80, 0x80, 0xAF, 'x')); // '/' in 4 bytes.
+    }
+
+    @Test
+    public void testTruncatedSequencesAreReplaced() {
+        assertReadsAs("�x", bytes(0xC3, 'x'));
+        assertReadsAs("�x", bytes(0xE2, 0x82, 'x'));
+        assertReadsAs("�x", bytes(0xF0, 0x9F, 0x98, 'x'));
+        assertReadsAs("x�", bytes('x', 0xF0, 0x9F, 0x98));
+    }
+
+    @Test
+    public void testEncodedSurrogatesAreReplaced() {
+        // U+D83D and U+DE00 encoded separately, as CESU-8 does, rather than as one 4-byte sequence.
+        assertReadsAs("������x", bytes(0xED, 0xA0, 0xBD, 0xED, 0xB8, 0x80, 'x'));
+    }
+
+    @Test
+    public void testInvalidBytesAreReplaced() {
+        assertReadsAs("�x�", bytes(0x80, 'x', 0xFF)); // A lone continuation byte and a never-valid byte.
+        assertReadsAs("����", bytes(0xF4, 0x90, 0x80, 0x80)); // Past U+10FFFF.
+    }
+}
@@ -0,0 +1,240 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.crypto;
+
+import org.junit.Test;
+import org.mozilla.apache.commons.codec.binary.Base64;
+import org.mozilla.gecko.sync.Utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EncodedTextDecoderTest {
+
+    private final Random random = new Random(42);
+
+    private static byte[] decodeBase64(final String in) {
+        final byte[] out = new byte[EncodedTextDecoder.maxBase64DecodedLength(in.length())];
+        return Arrays.copyOf(out, EncodedTextDecoder.decodeBase64(in, out));
+    }
+
+    private static byte[] decodeHex(final String in) {
+        final byte[] out = new byte[EncodedTextDecoder.hexDecodedLength(in.length())];
+        return Arrays.copyOf(out, EncodedTextDecoder.decodeHex(in, out));
+    }
+
+    /** The implementation of Utils.hex2Byte before it used EncodedTextDecoder. */
+    private static byte[] legacyHex2Byte(String str) {
+        if (str.length() % 2 == 1) {
+            str = "0" + str;
+        }
+
+        byte[] bytes = new byte[str.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(str.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private void assertBase64MatchesCommonsCodec(final String in) {
+        assertArrayEquals(in, Base64.decodeBase64(in), decodeBase64(in));
+    }
+
+    private byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testDecodeBase64MatchesCommonsCodecForCanonicalText() {
+        for (int length = 0; length < 100; length++) {
+            assertBase64MatchesCommonsCodec(Base64.encodeBase64String(randomBytes(length)));
+        }
+    }
+
+    @Test
+    public void testDecodeBase64MatchesCommonsCodecWithoutPadding() {
+        for (int length = 0; length < 100; length++) {
+            assertBase64MatchesCommonsCodec(Base64.encodeBase64String(randomBytes(length)).replace("=", ""));
+        }
+    }
+
+    @Test
+    public void testDecodeBase64MatchesCommonsCodecForURLSafeAlphabet() {
+        for (int length = 0; length < 100; length++) {
+            final String urlSafe = Base64.encodeBase64URLSafeString(randomBytes(length));
+            assertBase64MatchesCommonsCodec(urlSafe);
+            assertArrayEquals(Base64.decodeBase64(urlSafe.replace('-', '+').replace('_', '/')), decodeBase64(urlSafe));
+        }
+    }
+
+    @Test
+    public void testDecodeBase64MatchesCommonsCodecWithEmbeddedJunk() {
+        final String[] inputs = {
+                "SGVs bG8=",
+                "SGVs\r\nbG8=",
+                "\tSGVsbG8=\n",
+                "SG!Vs*bG8",
+                "SGVsbG8=junk after padding",
+                "SGVs=bG8=",
+                "éSGV☃sbG8😀",
+                "!!!!",
+                "",
+        };
+        for (final String in : inputs) {
+            assertBase64MatchesCommonsCodec(in);
+        }
+    }
+
+    @Test
+    public void testDecodeBase64MatchesCommonsCodecForTrailingPartialQuanta() {
+        final String[] inputs = {"S", "SG", "SGV", "SGVsb", "SGVsbG", "SGVsbG8", "S=", "SG=", "SGV=", "SG==", "SGVsb==="};
+        for (final String in : inputs) {
+            assertBase64MatchesCommonsCodec(in);
+        }
+    }
+
+    @Test
+    public void testDecodeBase64WritesAtMostMaxDecodedLength() {
+        for (int length = 0; length < 20; length++) {
+            final String in = Base64.encodeBase64String(randomBytes(length)).replace("=", "");
+            // An exactly sized buffer: the decoder would throw if it wrote past the end.
+            final byte[] out = new byte[EncodedTextDecoder.maxBase64DecodedLength(in.length())];
+            assertEquals(length, EncodedTextDecoder.decodeBase64(in, out));
+        }
+    }
+
+    private static boolean copyBase64Text(final String in) {
+        final byte[] out = new byte[in.length()];
+        final boolean isCanonical = EncodedTextDecoder.copyBase64Text(in, out);
+        for (int i = 0; i < in.length(); i++) {
+            assertEquals((byte) in.charAt(i), out[i]);
+        }
+        return isCanonical;
+    }
+
+    @Test
+    public void testCopyBase64TextIsCanonicalOnlyForTextThatReEncodesToItself() throws Exception {
+        for (int length = 0; length < 20; length++) {
+            final String canonical = new String(Base64.encodeBase64(randomBytes(length)), "US-ASCII");
+            final String[] inputs = {
+                    canonical,
+                    canonical.replace("=", ""),
+                    canonical.replace('+', '-').replace('/', '_'),
+                    canonical + "\n",
+                    " " + canonical,
+                    canonical + "=",
+                    canonical + "A===",
+                    canonical.isEmpty() ? "" : canonical.substring(1) + "\u00e9",
+            };
+            for (final String in : inputs) {
+                final boolean reEncodesToItself = new String(Base64.encodeBase64(Base64.decodeBase64(in)), "US-ASCII").equals(in);
+                assertEquals(in, reEncodesToItself, copyBase64Text(in));
+            }
+        }
+    }
+
+    @Test
+    public void testCopyBase64TextIsNotCanonicalWithNonZeroUnusedBits() {
+        assertTrue(copyBase64Text("SGVsbG8="));
+        assertFalse(copyBase64Text("SGVsbG9=")); // Decodes to the same bytes as the above.
+        assertTrue(copyBase64Text("SGk="));
+        assertTrue(copyBase64Text("SA=="));
+        assertFalse(copyBase64Text("SB=="));
+        assertFalse(copyBase64Text("S==="));
+    }
+
+    @Test
+    public void testDecodeHexMatchesLegacyHex2Byte() {
+        for (int length = 0; length < 40; length++) {
+            final String hex = Utils.byte2Hex(randomBytes(length));
+            assertArrayEquals(hex, legacyHex2Byte(hex), decodeHex(hex));
+            assertArrayEquals(hex, legacyHex2Byte(hex.toUpperCase()), decodeHex(hex.toUpperCase()));
+        }
+    }
+
+    @Test
+    public void testDecodeHexMatchesLegacyHex2ByteForOddLengths() {
+        final String[] inputs = {"0", "f", "abc", "12345", "fedcba987"};
+        for (final String hex : inputs) {
+            assertArrayEquals(hex, legacyHex2Byte(hex), decodeHex(hex));
+        }
+    }
+
+    @Test
+    public void testDecodeHexThrowsForInvalidHexLikeLegacyHex2Byte() {
+        final String[] inputs = {"zz", "0g", "g", "12 4", "abc\n", "ée", "0x12"};
+        for (final String hex : inputs) {
+            try {
+                legacyHex2Byte(hex);
+                fail("Expected legacy hex2Byte to throw for " + hex);
+            } catch (final NumberFormatException e) {
+                // Expected.
+            }
+            try {
+                decodeHex(hex);
+                fail("Expected NumberFormatException for " + hex);
+            } catch (final NumberFormatException e) {
+                // Expected.
+            }
+        }
+    }
+
+    @Test
+    public void testKeyBundleDecrypterMatchesCryptoInfo() throws Exception {
+        final KeyBundle keys = KeyBundle.withRandomKeys();
+        final KeyBundleDecrypter decrypter = new KeyBundleDecrypter(keys);
+        for (int length = 0; length < 100; length += 7) {
+            final CryptoInfo encrypted = CryptoInfo.encrypt(randomBytes(length), keys);
+            final String base64Ciphertext = Base64.encodeBase64String(encrypted.getMessage());
+            final String base64IV = Base64.encodeBase64String(encrypted.getIV());
+            final String hexHMAC = Utils.byte2Hex(encrypted.getHMAC());
+
+            final byte[] expected = CryptoInfo.decrypt(Base64.decodeBase64(base64Ciphertext), Base64.decodeBase64(base64IV),
+                    legacyHex2Byte(hexHMAC), keys).getMessage();
+            // CryptoInfo HMACs the re-encoded ciphertext so text that isn't in canonical form must also decrypt.
+            final String[] ciphertextForms = {
+                    base64Ciphertext,
+                    base64Ciphertext.replace("=", ""),
+                    base64Ciphertext.replace('+', '-').replace('/', '_'),
+                    base64Ciphertext.substring(0, base64Ciphertext.length() / 2) + "\r\n" +
+                            base64Ciphertext.substring(base64Ciphertext.length() / 2),
+            };
+            for (final String ciphertextForm : ciphertextForms) {
+                assertArrayEquals(ciphertextForm, expected, decrypter.decrypt(ciphertextForm, base64IV, hexHMAC));
+            }
+        }
+    }
+
+    @Test
+    public void testKeyBundleDecrypterRejectsTamperedHMACLikeCryptoInfo() throws Exception {
+        final KeyBundle keys = KeyBundle.withRandomKeys();
+        final CryptoInfo encrypted = CryptoInfo.encrypt(randomBytes(32), keys);
+        final String base64Ciphertext = Base64.encodeBase64String(encrypted.getMessage());
+        final String base64IV = Base64.encodeBase64String(encrypted.getIV());
+        final byte[] tamperedHMAC = encrypted.getHMAC().clone();
+        tamperedHMAC[0] ^= 1;
+
+        try {
+            CryptoInfo.decrypt(encrypted.getMessage(), encrypted.getIV(), tamperedHMAC, keys);
+            fail("Expected CryptoInfo to throw HMACVerificationException");
+        } catch (final HMACVerificationException e) {
+            // Expected.
+        }
+        try {
+            new KeyBundleDecrypter(keys).decrypt(base64Ciphertext, base64IV, Utils.byte2Hex(tamperedHMAC));
+            fail("Expected HMACVerificationException");
+        } catch (final HMACVerificationException e) {
+            // Expected.
+        }
+    }
+}
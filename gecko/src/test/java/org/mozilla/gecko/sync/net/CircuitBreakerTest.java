@@ -0,0 +1,85 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long NOW = 1000000L;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("example.com");
+
+    private void failRepeatedly(final int failureCount) {
+        for (int i = 0; i < failureCount; i++) {
+            assertTrue(breaker.allowRequest(NOW));
+            breaker.onFailure(NOW);
+        }
+    }
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD - 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure(NOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(NOW + 1));
+        assertEquals(CircuitBreaker.MIN_OPEN_MILLIS - 1, breaker.getRetryAfterMillis(NOW + 1));
+    }
+
+    @Test
+    public void testSuccessResetsTheFailureCount() {
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD - 1);
+        breaker.onSuccess();
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD - 1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenAllowsOneProbe() {
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD);
+
+        final long probeTime = NOW + CircuitBreaker.MIN_OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(probeTime));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(probeTime + 1));
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(probeTime + 1));
+    }
+
+    @Test
+    public void testFailedProbeReopensForLonger() {
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD);
+
+        long probeTime = NOW + CircuitBreaker.MIN_OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(probeTime));
+        breaker.onFailure(probeTime);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2 * CircuitBreaker.MIN_OPEN_MILLIS, breaker.getRetryAfterMillis(probeTime));
+
+        for (int i = 0; i < 10; i++) {
+            probeTime += breaker.getRetryAfterMillis(probeTime);
+            assertTrue(breaker.allowRequest(probeTime));
+            breaker.onFailure(probeTime);
+        }
+        assertEquals(CircuitBreaker.MAX_OPEN_MILLIS, breaker.getRetryAfterMillis(probeTime));
+    }
+
+    @Test
+    public void testLostProbeIsReplaced() {
+        failRepeatedly(CircuitBreaker.FAILURE_THRESHOLD);
+
+        final long probeTime = NOW + CircuitBreaker.MIN_OPEN_MILLIS;
+        assertTrue(breaker.allowRequest(probeTime)); // Never reports back, e.g. it's aborted.
+        assertTrue(breaker.allowRequest(probeTime + CircuitBreaker.MIN_OPEN_MILLIS));
+    }
+}
@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import org.junit.Test;
+
+import ch.boye.httpclientandroidlib.HttpConnection;
+import ch.boye.httpclientandroidlib.HttpConnectionMetrics;
+import ch.boye.httpclientandroidlib.HttpResponse;
+import ch.boye.httpclientandroidlib.HttpVersion;
+import ch.boye.httpclientandroidlib.client.methods.HttpGet;
+import ch.boye.httpclientandroidlib.impl.HttpConnectionMetricsImpl;
+import ch.boye.httpclientandroidlib.message.BasicHttpResponse;
+import ch.boye.httpclientandroidlib.protocol.BasicHttpContext;
+import ch.boye.httpclientandroidlib.protocol.ExecutionContext;
+import ch.boye.httpclientandroidlib.protocol.HttpContext;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConnectionReuseCounterTest {
+
+    private static class FakeConnection implements HttpConnection {
+        final HttpConnectionMetricsImpl metrics = new HttpConnectionMetricsImpl(null, null);
+
+        @Override public void close() {}
+        @Override public boolean isOpen() { return true; }
+        @Override public boolean isStale() { return false; }
+        @Override public void setSocketTimeout(final int timeout) {}
+        @Override public int getSocketTimeout() { return 0; }
+        @Override public void shutdown() {}
+        @Override public HttpConnectionMetrics getMetrics() { return metrics; }
+    }
+
+    private final ConnectionReuseCounter counter = new ConnectionReuseCounter();
+
+    private void executeOn(final FakeConnection connection, final String uri) throws Exception {
+        connection.metrics.incrementRequestCount();
+
+        final HttpContext context = new BasicHttpContext();
+        context.setAttribute(ExecutionContext.HTTP_CONNECTION, connection);
+        final HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+        ConnectionReuseCounter.CONNECTION_REUSE_INTERCEPTOR.process(response, context);
+        counter.observeHttpResponse(new HttpGet(uri), response, context);
+    }
+
+    @Test
+    public void testCountsOpenedAndReusedConnections() throws Exception {
+        final FakeConnection tokenServerConnection = new FakeConnection();
+        final FakeConnection storageConnection = new FakeConnection();
+        executeOn(tokenServerConnection, "https://token.example.com/1.0/sync/1.5");
+        executeOn(storageConnection, "https://storage.example.com/1.5/1/info/collections");
+        executeOn(storageConnection, "https://storage.example.com/1.5/1/storage/crypto/keys");
+
+        assertEquals(2, counter.getConnectionsOpened());
+        assertEquals(1, counter.getConnectionsReused());
+        assertEquals(2, counter.getTLSHandshakes());
+    }
+
+    @Test
+    public void testPlainHTTPConnectionsDoNotHandshake() throws Exception {
+        executeOn(new FakeConnection(), "http://localhost:8080/");
+
+        assertEquals(1, counter.getConnectionsOpened());
+        assertEquals(0, counter.getTLSHandshakes());
+    }
+
+    @Test
+    public void testIgnoresResponsesWithoutConnection() throws Exception {
+        counter.observeHttpResponse(new HttpGet("https://example.com/"),
+                new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK"), new BasicHttpContext());
+
+        assertEquals(0, counter.getConnectionsOpened());
+        assertEquals(0, counter.getConnectionsReused());
+    }
+}
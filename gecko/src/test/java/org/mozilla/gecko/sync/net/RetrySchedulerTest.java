@@ -0,0 +1,84 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.net;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetrySchedulerTest {
+
+    private static class FixedRandom extends Random {
+        private final double value;
+
+        FixedRandom(final double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+    @Test
+    public void testRetryDelayGrowsExponentiallyUpToTheMaximum() {
+        final RetryScheduler scheduler = new RetryScheduler("example.com", new FixedRandom(0.5));
+        assertEquals(500, scheduler.getRetryDelayMillis(0));
+        assertEquals(1000, scheduler.getRetryDelayMillis(1));
+        assertEquals(2000, scheduler.getRetryDelayMillis(2));
+        assertEquals(RetryScheduler.MAX_RETRY_DELAY_MILLIS / 2, scheduler.getRetryDelayMillis(10));
+        assertEquals(RetryScheduler.MAX_RETRY_DELAY_MILLIS / 2, scheduler.getRetryDelayMillis(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRetryDelayIsJittered() {
+        assertEquals(0, new RetryScheduler("example.com", new FixedRandom(0)).getRetryDelayMillis(3));
+
+        final RetryScheduler scheduler = new RetryScheduler("example.com");
+        for (int i = 0; i < 100; i++) {
+            final long delayMillis = scheduler.getRetryDelayMillis(3);
+            assertTrue(delayMillis >= 0 && delayMillis < 8000);
+        }
+    }
+
+    @Test
+    public void testBackoffDelayIsNeverShorterThanTheBackoff() {
+        assertEquals(30 * 1000, new RetryScheduler("example.com", new FixedRandom(0)).getBackoffDelayMillis(30 * 1000));
+        assertEquals(33 * 1000, new RetryScheduler("example.com", new FixedRandom(1)).getBackoffDelayMillis(30 * 1000));
+        assertEquals(2 * 1000, new RetryScheduler("example.com", new FixedRandom(1)).getBackoffDelayMillis(1000));
+    }
+
+    @Test
+    public void testSuccessesRefillTheRetryBudget() {
+        final RetryScheduler scheduler = new RetryScheduler("example.com");
+        for (int i = 0; i < RetryScheduler.MAX_RETRY_BUDGET; i++) {
+            assertTrue(scheduler.tryAcquireRetry());
+        }
+        for (int i = 0; i < 11; i++) {
+            scheduler.onSuccess();
+        }
+        assertTrue(scheduler.tryAcquireRetry());
+    }
+
+    @Test
+    public void testNoBackoffByDefault() {
+        assertEquals(0, new RetryScheduler("example.com").getBackoffRemainingMillis(System.currentTimeMillis()));
+    }
+
+    @Test
+    public void testSoftBackoffIsRecordedApartFromTheBackoff() {
+        final RetryScheduler scheduler = new RetryScheduler("example.com");
+        scheduler.setSoftBackoff(60 * 1000, 1000);
+        scheduler.setSoftBackoff(10 * 1000, 1000); // Doesn't shorten it.
+
+        assertEquals(0, scheduler.getBackoffRemainingMillis(1000));
+        assertEquals(60 * 1000, scheduler.getSoftBackoffRemainingMillis(1000));
+        assertEquals(0, scheduler.getSoftBackoffRemainingMillis(61 * 1000));
+    }
+}
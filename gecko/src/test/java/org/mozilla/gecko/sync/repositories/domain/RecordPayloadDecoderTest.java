@@ -0,0 +1,114 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.gecko.sync.repositories.domain;
+
+import org.junit.Test;
+import org.mozilla.gecko.sync.CryptoRecord;
+import org.mozilla.gecko.sync.ExtendedJSONObject;
+import org.mozilla.gecko.sync.UnexpectedJSONException;
+import org.mozilla.gecko.sync.repositories.RecordFactory;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/** Tests that records created by {@link RecordPayloadDecoder}s are the same as those created from parsed payloads. */
+public class RecordPayloadDecoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static CryptoRecord newEnvelope(final String payload) throws Exception {
+        final CryptoRecord envelope = new CryptoRecord(new ExtendedJSONObject(payload));
+        envelope.guid = "guid-1";
+        envelope.collection = "collection";
+        envelope.lastModified = 1234L;
+        return envelope;
+    }
+
+    /** @return the records created from the given payload by the factory, then by its decoder. */
+    private static Record[] createRecords(final RecordFactory factory, final String payload) throws Exception {
+        final Record parsedRecord = factory.createRecord(newEnvelope(payload));
+        final Record decodedRecord = factory.newPayloadDecoder().decode(newEnvelope("{}"), payload.getBytes(UTF_8));
+
+        assertEquals(parsedRecord.guid, decodedRecord.guid);
+        assertEquals(parsedRecord.collection, decodedRecord.collection);
+        assertEquals(parsedRecord.lastModified, decodedRecord.lastModified);
+        assertEquals(parsedRecord.deleted, decodedRecord.deleted);
+        return new Record[] { parsedRecord, decodedRecord };
+    }
+
+    @Test
+    public void testHistoryRecord() throws Exception {
+        final Record[] records = createRecords(new HistoryRecordFactory(), "{\"id\": \"guid-1\", \"unknown\": {\"a\": [1]}, " +
+                "\"histUri\": \"https://example.com/é\", \"title\": \"Title \\\"1\\\"\", " +
+                "\"visits\": [{\"date\": 1500000000000000, \"type\": 1}, {\"date\": 1400000000000000, \"type\": 2}]}");
+        final HistoryRecord parsed = (HistoryRecord) records[0];
+        final HistoryRecord decoded = (HistoryRecord) records[1];
+        assertEquals(parsed.histURI, decoded.histURI);
+        assertEquals(parsed.title, decoded.title);
+        assertEquals(parsed.visits, decoded.visits);
+        assertEquals(Long.class, ((Map<?, ?>) decoded.visits.get(0)).get("date").getClass());
+    }
+
+    @Test
+    public void testBookmarkRecords() throws Exception {
+        final String[] payloads = {
+                "{\"id\": \"guid-1\", \"type\": \"bookmark\", \"title\": \"Title\", \"parentid\": \"menu\", " +
+                        "\"parentName\": \"Menu\", \"bmkUri\": \"https://example.com/\", \"keyword\": \"ex\", \"tags\": [\"a\", \"b\"]}",
+                "{\"children\": [\"guid-2\", \"guid-3\"], \"id\": \"guid-1\", \"type\": \"folder\", \"title\": \"Folder\", \"parentid\": \"places\"}",
+                "{\"id\": \"guid-1\", \"type\": \"livemark\", \"siteUri\": \"https://example.com/\", \"feedUri\": \"https://example.com/feed\"}",
+                "{\"id\": \"guid-1\", \"type\": \"separator\", \"pos\": 3}",
+        };
+        for (final String payload : payloads) {
+            final Record[] records = createRecords(new BookmarkRecordFactory(), payload);
+            final BookmarkRecord parsed = (BookmarkRecord) records[0];
+            final BookmarkRecord decoded = (BookmarkRecord) records[1];
+            assertEquals(payload, parsed.type, decoded.type);
+            assertEquals(payload, parsed.title, decoded.title);
+            assertEquals(payload, parsed.parentID, decoded.parentID);
+            assertEquals(payload, parsed.parentName, decoded.parentName);
+            assertEquals(payload, parsed.bookmarkURI, decoded.bookmarkURI);
+            assertEquals(payload, parsed.keyword, decoded.keyword);
+            assertEquals(payload, parsed.tags, decoded.tags);
+            assertEquals(payload, parsed.children, decoded.children);
+            assertEquals(payload, parsed.androidPosition, decoded.androidPosition);
+        }
+    }
+
+    @Test
+    public void testPasswordRecord() throws Exception {
+        final Record[] records = createRecords(new PasswordRecordFactory(), "{\"id\": \"guid-1\", " +
+                "\"hostname\": \"https://example.com\", \"formSubmitURL\": \"https://example.com/login\", " +
+                "\"username\": \"user\", \"password\": \"hunter2\", \"usernameField\": \"u\", \"passwordField\": \"p\"}");
+        final PasswordRecord parsed = (PasswordRecord) records[0];
+        final PasswordRecord decoded = (PasswordRecord) records[1];
+        assertEquals(parsed.hostname, decoded.hostname);
+        assertEquals(parsed.formSubmitURL, decoded.formSubmitURL);
+        assertNull(decoded.httpRealm);
+        assertEquals(parsed.encryptedUsername, decoded.encryptedUsername);
+        assertEquals(parsed.encryptedPassword, decoded.encryptedPassword);
+        assertEquals(parsed.usernameField, decoded.usernameField);
+        assertEquals(parsed.passwordField, decoded.passwordField);
+    }
+
+    @Test
+    public void testDeletedRecord() throws Exception {
+        final Record[] records = createRecords(new HistoryRecordFactory(), "{\"id\": \"guid-1\", \"deleted\": true}");
+        assertTrue(records[1].deleted);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMismatchedGUIDs() throws Exception {
+        new HistoryRecordFactory().newPayloadDecoder().decode(newEnvelope("{}"), "{\"id\": \"guid-2\"}".getBytes(UTF_8));
+    }
+
+    @Test(expected = UnexpectedJSONException.class)
+    public void testNonObjectPayload() throws Exception {
+        new HistoryRecordFactory().newPayloadDecoder().decode(newEnvelope("{}"), "[\"guid-1\"]".getBytes(UTF_8));
+    }
+}